@@ -44,9 +44,16 @@ import github.scarsz.discordsrv.modules.alerts.AlertListener;
 import github.scarsz.discordsrv.modules.requirelink.RequireLinkModule;
 import github.scarsz.discordsrv.modules.voice.VoiceModule;
 import github.scarsz.discordsrv.objects.CancellationDetector;
-import github.scarsz.discordsrv.objects.ConsoleMessage;
+import github.scarsz.discordsrv.objects.ChatMessageBatcher;
+import github.scarsz.discordsrv.objects.ConsoleMessageQueue;
 import github.scarsz.discordsrv.objects.Lag;
+import github.scarsz.discordsrv.objects.MessageDeletionScheduler;
 import github.scarsz.discordsrv.objects.MessageFormat;
+import github.scarsz.discordsrv.objects.MessageSnapshot;
+import github.scarsz.discordsrv.objects.MessageTemplate;
+import github.scarsz.discordsrv.objects.OnlinePlayerSnapshot;
+import github.scarsz.discordsrv.objects.TotalPlayerCounter;
+import github.scarsz.discordsrv.objects.WebhookDeliveryQueue;
 import github.scarsz.discordsrv.objects.log4j.ConsoleAppender;
 import github.scarsz.discordsrv.objects.log4j.JdaFilter;
 import github.scarsz.discordsrv.objects.managers.AccountLinkManager;
@@ -150,6 +157,9 @@ public class DiscordSRV extends JavaPlugin {
     public static boolean invalidBotToken = false;
     private static boolean offlineUuidAvatarUrlNagged = false;
     public static String version = "";
+    private static final MessageTemplate.Parser CHAT_TO_DISCORD_TEMPLATES = new MessageTemplate.Parser(
+            "time", "date", "channelname", "primarygroup", "username", "usernamenoescapes", "world", "worldalias"
+    );
 
     // Managers
     @Getter private AccountLinkManager accountLinkManager;
@@ -163,6 +173,8 @@ public class DiscordSRV extends JavaPlugin {
     @Getter private PresenceUpdater presenceUpdater;
     @Getter private ServerWatchdog serverWatchdog;
     @Getter private ScheduledExecutorService updateChecker = null;
+    @Getter private OnlinePlayerListener onlinePlayerListener = null;
+    @Getter private TotalPlayerCounter totalPlayerCounter = null;
 
     // Modules
     @Getter private AlertListener alertListener = null;
@@ -178,7 +190,7 @@ public class DiscordSRV extends JavaPlugin {
     private final DynamicConfig config;
 
     // Console
-    @Getter private final Deque<ConsoleMessage> consoleMessageQueue = new LinkedList<>();
+    @Getter private ConsoleMessageQueue consoleMessageQueue;
     @Getter private ConsoleAppender consoleAppender;
 
     @Getter private final long startTime = System.currentTimeMillis();
@@ -188,6 +200,9 @@ public class DiscordSRV extends JavaPlugin {
     @Getter private CancellationDetector<?> modernCancellationDetector = null;
     @Getter private boolean modernChatEventAvailable = false;
     @Getter private final Set<PluginHook> pluginHooks = new HashSet<>();
+    @Getter private final MessageDeletionScheduler messageDeletionScheduler = new MessageDeletionScheduler();
+    @Getter private final ChatMessageBatcher chatMessageBatcher = new ChatMessageBatcher();
+    @Getter private final WebhookDeliveryQueue webhookDeliveryQueue = new WebhookDeliveryQueue();
 
     // Files
     @Getter private final File configFile = new File(getDataFolder(), "config.yml");
@@ -217,6 +232,9 @@ public class DiscordSRV extends JavaPlugin {
         } catch (IOException | ParseException e) {
             throw new RuntimeException("Failed to load config", e);
         }
+        PluginUtil.invalidatePluginStates(); // DisabledPluginHooks might have changed
+        MessageSnapshot.invalidate();
+        if (requireLinkModule != null) requireLinkModule.reload();
     }
     public void reloadChannels() {
         synchronized (channels) {
@@ -405,6 +423,7 @@ public class DiscordSRV extends JavaPlugin {
                     )
                     .findFirst().ifPresent(config::setLanguage);
         }
+        MessageSnapshot.invalidate(); // in case any messages were needed before the config was loaded
 
         // Make discordsrv.sync.x & discordsrv.sync.deny.x permissions denied by default
         try {
@@ -599,6 +618,14 @@ public class DiscordSRV extends JavaPlugin {
 
         requireLinkModule = new RequireLinkModule();
 
+        // count the players that have played before in the background, it takes a while on big servers
+        if (totalPlayerCounter != null) totalPlayerCounter.shutdown();
+        totalPlayerCounter = new TotalPlayerCounter(Bukkit.getWorlds().size() > 0
+                ? new File(Bukkit.getWorlds().get(0).getWorldFolder(), "playerdata")
+                : null);
+        Bukkit.getPluginManager().registerEvents(totalPlayerCounter, this);
+        totalPlayerCounter.start();
+
         // start the update checker (will skip if disabled)
         if (!isUpdateCheckDisabled()) {
             if (updateChecker == null) {
@@ -979,6 +1006,14 @@ public class DiscordSRV extends JavaPlugin {
                     ? LangUtil.InternalMessage.CONSOLE_FORWARDING_ASSIGNED_TO_CHANNEL + " " + getConsoleChannel()
                     : LangUtil.InternalMessage.NOT_FORWARDING_CONSOLE_OUTPUT.toString());
 
+            // the queue outlives reloads, lines queued before one are still sent after it
+            if (consoleMessageQueue == null) {
+                consoleMessageQueue = new ConsoleMessageQueue(
+                        config().getIntElse("DiscordConsoleChannelQueueSize", 4096),
+                        ConsoleMessageQueue.OverflowPolicy.parse(config().getString("DiscordConsoleChannelQueueOverflowPolicy"), ConsoleMessageQueue.OverflowPolicy.COALESCE)
+                );
+            }
+
             // attach appender to queue console messages
             consoleAppender = new ConsoleAppender();
 
@@ -998,6 +1033,9 @@ public class DiscordSRV extends JavaPlugin {
         reloadRegexes();
         reloadRoleAliases();
 
+        // look up the webhooks for the linked channels now instead of when the first chat message is delivered
+        if (config().getBoolean("Experiment_WebhookChatMessageDelivery")) WebhookUtil.loadWebhooks();
+
         // warn if the console channel is connected to a chat channel
         if (getMainTextChannel() != null && getConsoleChannel() != null && getMainTextChannel().getId().equals(getConsoleChannel().getId())) DiscordSRV.warning(LangUtil.InternalMessage.CONSOLE_CHANNEL_ASSIGNED_TO_LINKED_CHANNEL);
 
@@ -1058,6 +1096,7 @@ public class DiscordSRV extends JavaPlugin {
 
         // register events
         new PlayerBanListener();
+        new PluginStateListener();
         new PlayerDeathListener();
         new PlayerJoinLeaveListener();
         try {
@@ -1170,6 +1209,9 @@ public class DiscordSRV extends JavaPlugin {
                 return true;
             }
         });
+
+        // after the vanish hooks, so players online already get their vanished states right away
+        onlinePlayerListener = new OnlinePlayerListener();
         if (PluginUtil.pluginHookIsEnabled("PlaceholderAPI", false)) {
             try {
                 DiscordSRV.info(LangUtil.InternalMessage.PLUGIN_HOOK_ENABLING.toString().replace("{plugin}", "PlaceholderAPI"));
@@ -1236,7 +1278,7 @@ public class DiscordSRV extends JavaPlugin {
                     }
                 }
             }}));
-            bStats.addCustomChart(new SingleLineChart("atleast_1player_online", () -> PlayerUtil.getOnlinePlayers().isEmpty() ? 0 : 1));
+            bStats.addCustomChart(new SingleLineChart("atleast_1player_online", () -> PlayerUtil.getOnlinePlayerSnapshot().size() == 0 ? 0 : 1));
             bStats.addCustomChart(new SimplePie("better_online_mode", () -> {
                 boolean onlineMode = Bukkit.getOnlineMode();
                 try {
@@ -1349,20 +1391,17 @@ public class DiscordSRV extends JavaPlugin {
             executor.invokeAll(Collections.singletonList(() -> {
                 // set server shutdown topics if enabled
                 if (config().getBoolean("ChannelTopicUpdaterChannelTopicsAtShutdownEnabled")) {
-                    String time = TimeUtil.timeStamp();
                     String serverVersion = Bukkit.getBukkitVersion();
                     String totalPlayers = Integer.toString(getTotalPlayerCount());
                     DiscordUtil.setTextChannelTopic(
                             getMainTextChannel(),
-                            LangUtil.Message.CHAT_CHANNEL_TOPIC_AT_SERVER_SHUTDOWN.toString()
-                                    .replaceAll("%time%|%date%", time)
+                            TimeUtil.replaceTimePlaceholders(LangUtil.Message.CHAT_CHANNEL_TOPIC_AT_SERVER_SHUTDOWN.toString())
                                     .replace("%serverversion%", serverVersion)
                                     .replace("%totalplayers%", totalPlayers)
                     );
                     DiscordUtil.setTextChannelTopic(
                             getConsoleChannel(),
-                            LangUtil.Message.CONSOLE_CHANNEL_TOPIC_AT_SERVER_SHUTDOWN.toString()
-                                    .replaceAll("%time%|%date%", time)
+                            TimeUtil.replaceTimePlaceholders(LangUtil.Message.CONSOLE_CHANNEL_TOPIC_AT_SERVER_SHUTDOWN.toString())
                                     .replace("%serverversion%", serverVersion)
                                     .replace("%totalplayers%", totalPlayers)
                     );
@@ -1376,6 +1415,8 @@ public class DiscordSRV extends JavaPlugin {
 
                 // shutdown scheduler tasks
                 Bukkit.getScheduler().cancelTasks(this);
+                // nothing keeps the online players up to date anymore
+                OnlinePlayerSnapshot.set(null);
                 for (BukkitWorker activeWorker : Bukkit.getScheduler().getActiveWorkers()) {
                     if (activeWorker.getOwner().equals(this)) {
                         List<String> stackTrace = Arrays.stream(activeWorker.getThread().getStackTrace()).map(StackTraceElement::toString).collect(Collectors.toList());
@@ -1390,6 +1431,15 @@ public class DiscordSRV extends JavaPlugin {
                 // shut down voice module
                 if (voiceModule != null) voiceModule.shutdown();
 
+                // stop keeping count of the total players
+                if (totalPlayerCounter != null) totalPlayerCounter.shutdown();
+
+                // stop the group sync command resyncs
+                groupSynchronizationManager.shutdown();
+
+                // stop looking up linked accounts of players logging in
+                if (requireLinkModule != null) requireLinkModule.shutdown();
+
                 // kill channel topic updater
                 if (channelTopicUpdater != null) channelTopicUpdater.interrupt();
 
@@ -1409,7 +1459,10 @@ public class DiscordSRV extends JavaPlugin {
                 if (updateChecker != null) updateChecker.shutdown();
 
                 // serialize account links to disk
-                if (accountLinkManager != null) accountLinkManager.save();
+                if (accountLinkManager != null) {
+                    accountLinkManager.save();
+                    accountLinkManager.shutdown();
+                }
 
                 // close cancellation detectors
                 if (legacyCancellationDetector != null) legacyCancellationDetector.close();
@@ -1463,6 +1516,15 @@ public class DiscordSRV extends JavaPlugin {
                 // Clear JDA listeners
                 if (jda != null) jda.getEventManager().getRegisteredListeners().forEach(listener -> jda.getEventManager().unregister(listener));
 
+                // send batched chat messages that are still waiting
+                chatMessageBatcher.shutdown();
+
+                // stop delivering webhook messages
+                webhookDeliveryQueue.shutdown();
+
+                // delete expiring messages while JDA can still do it
+                messageDeletionScheduler.shutdown();
+
                 // send server shutdown message
                 DiscordUtil.sendMessageBlocking(getOptionalTextChannel("status"), finalShutdownFormat, true);
 
@@ -1664,16 +1726,34 @@ public class DiscordSRV extends JavaPlugin {
         String username = player.getName();
         if (!reserializer) username = DiscordUtil.escapeMarkdown(username);
 
-        String discordMessage = (hasGoodGroup
+        final String channelName = channel;
+        final String primaryGroup = userPrimaryGroup;
+        final String finalUsername = username;
+        // %displayname% & %message% are kept for after PlaceholderAPI, their content mustn't be parsed by it
+        String discordMessage = CHAT_TO_DISCORD_TEMPLATES.get(hasGoodGroup
                 ? LangUtil.Message.CHAT_TO_DISCORD.toString()
-                : LangUtil.Message.CHAT_TO_DISCORD_NO_PRIMARY_GROUP.toString())
-                .replaceAll("%time%|%date%", TimeUtil.timeStamp())
-                .replace("%channelname%", channel != null ? channel.substring(0, 1).toUpperCase() + channel.substring(1) : "")
-                .replace("%primarygroup%", userPrimaryGroup)
-                .replace("%username%", username)
-                .replace("%usernamenoescapes%", MessageUtil.strip(player.getName()))
-                .replace("%world%", player.getWorld().getName())
-                .replace("%worldalias%", MessageUtil.strip(MultiverseCoreHook.getWorldAlias(player.getWorld().getName())));
+                : LangUtil.Message.CHAT_TO_DISCORD_NO_PRIMARY_GROUP.toString()
+        ).render(placeholder -> {
+            switch (placeholder) {
+                case "time":
+                case "date":
+                    return TimeUtil.timeStamp();
+                case "channelname":
+                    return channelName != null ? channelName.substring(0, 1).toUpperCase() + channelName.substring(1) : "";
+                case "primarygroup":
+                    return primaryGroup;
+                case "username":
+                    return finalUsername;
+                case "usernamenoescapes":
+                    return MessageUtil.strip(player.getName());
+                case "world":
+                    return player.getWorld().getName();
+                case "worldalias":
+                    return MessageUtil.strip(MultiverseCoreHook.getWorldAlias(player.getWorld().getName()));
+                default:
+                    return null;
+            }
+        });
         discordMessage = PlaceholderUtil.replacePlaceholdersToDiscord(discordMessage, player);
 
         String displayName = MessageUtil.strip(player.getDisplayName());
@@ -1716,10 +1796,13 @@ public class DiscordSRV extends JavaPlugin {
         discordMessage = postEvent.getProcessedMessage(); // update message from event in case any listeners modified it
 
         if (!config().getBoolean("Experiment_WebhookChatMessageDelivery")) {
-            if (channel == null) {
-                DiscordUtil.sendMessage(getOptionalTextChannel("global"), discordMessage);
+            TextChannel destinationChannel = channel == null
+                    ? getOptionalTextChannel("global")
+                    : getDestinationTextChannelForGameChannelName(channel);
+            if (config().getBooleanElse("DiscordChatChannelMessageBatching", false)) {
+                chatMessageBatcher.queue(destinationChannel, discordMessage);
             } else {
-                DiscordUtil.sendMessage(getDestinationTextChannelForGameChannelName(channel), discordMessage);
+                DiscordUtil.sendMessage(destinationChannel, discordMessage);
             }
         } else {
             if (channel == null) channel = getOptionalChannel("global");
@@ -1810,8 +1893,7 @@ public class DiscordSRV extends JavaPlugin {
 
         BiFunction<String, Boolean, String> translator = (content, needsEscape) -> {
             if (content == null) return null;
-            content = content
-                    .replaceAll("%time%|%date%", TimeUtil.timeStamp())
+            content = TimeUtil.replaceTimePlaceholders(content)
                     .replace("%message%", MessageUtil.strip(needsEscape ? DiscordUtil.escapeMarkdown(message) : message))
                     .replace("%username%", needsEscape ? DiscordUtil.escapeMarkdown(name) : name)
                     .replace("%displayname%", needsEscape ? DiscordUtil.escapeMarkdown(displayName) : displayName)
@@ -1871,8 +1953,7 @@ public class DiscordSRV extends JavaPlugin {
 
         BiFunction<String, Boolean, String> translator = (content, needsEscape) -> {
             if (content == null) return null;
-            content = content
-                    .replaceAll("%time%|%date%", TimeUtil.timeStamp())
+            content = TimeUtil.replaceTimePlaceholders(content)
                     .replace("%message%", MessageUtil.strip(needsEscape ? DiscordUtil.escapeMarkdown(message) : message))
                     .replace("%username%", MessageUtil.strip(needsEscape ? DiscordUtil.escapeMarkdown(name) : name))
                     .replace("%displayname%", needsEscape ? DiscordUtil.escapeMarkdown(displayName) : displayName)
@@ -1901,7 +1982,7 @@ public class DiscordSRV extends JavaPlugin {
     }
 
     public MessageFormat getMessageFromConfiguration(String key) {
-        return MessageFormatResolver.getMessageFromConfiguration(config(), key);
+        return MessageSnapshot.get().getMessageFormat(key);
     }
 
     @CheckReturnValue
@@ -2090,14 +2171,13 @@ public class DiscordSRV extends JavaPlugin {
         return responses;
     }
 
-    private static File playerDataFolder = null;
+    /**
+     * @return the amount of players that have ever played on the server
+     * @see TotalPlayerCounter
+     */
     public static int getTotalPlayerCount() {
-        if (playerDataFolder == null && Bukkit.getWorlds().size() > 0) {
-            playerDataFolder = new File(Bukkit.getWorlds().get(0).getWorldFolder().getAbsolutePath(), "/playerdata");
-        }
-
-        File[] playerFiles = playerDataFolder.listFiles(f -> f.getName().endsWith(".dat"));
-        return playerFiles != null ? playerFiles.length : 0;
+        TotalPlayerCounter counter = getPlugin().getTotalPlayerCounter();
+        return counter != null ? (int) Math.min(counter.getCount(), Integer.MAX_VALUE) : 0;
     }
 
     /**
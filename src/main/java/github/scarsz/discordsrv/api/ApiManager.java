@@ -29,12 +29,14 @@ import github.scarsz.discordsrv.util.LangUtil;
 import net.dv8tion.jda.api.requests.GatewayIntent;
 import net.dv8tion.jda.api.utils.cache.CacheFlag;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.Method;
-import java.util.EnumSet;
-import java.util.List;
-import java.util.Set;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
@@ -57,7 +59,10 @@ import java.util.concurrent.CopyOnWriteArrayList;
 @SuppressWarnings("unused")
 public class ApiManager {
 
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
     private List<Object> apiListeners = new CopyOnWriteArrayList<>();
+    private volatile DispatchIndex dispatchIndex = new DispatchIndex(new RegisteredSubscriber[0]);
     private boolean anyHooked = false;
 
     private final EnumSet<GatewayIntent> intents = EnumSet.of(
@@ -92,7 +97,17 @@ public class ApiManager {
                 .replace("{listenername}", listener.getClass().getName())
                 .replace("{methodcount}", String.valueOf(methodsAnnotatedSubscribe))
         );
-        if (!apiListeners.contains(listener)) apiListeners.add(listener);
+        addListener(listener);
+    }
+
+    /**
+     * Subscribe the given instance to DiscordSRV events without checking or logging it
+     */
+    void addListener(Object listener) {
+        synchronized (apiListeners) {
+            if (!apiListeners.contains(listener)) apiListeners.add(listener);
+            rebuildSubscribers();
+        }
         anyHooked = true;
     }
 
@@ -105,7 +120,11 @@ public class ApiManager {
         DiscordSRV.info(LangUtil.InternalMessage.API_LISTENER_UNSUBSCRIBED.toString()
                 .replace("{listenername}", listener.getClass().getName())
         );
-        return apiListeners.remove(listener);
+        synchronized (apiListeners) {
+            boolean removed = apiListeners.remove(listener);
+            if (removed) rebuildSubscribers();
+            return removed;
+        }
     }
 
     /**
@@ -114,44 +133,94 @@ public class ApiManager {
      * @return the event that was called
      */
     public <E extends Event> E callEvent(E event) {
+        // dispatch tables are built lazily per event class and thrown away whenever listeners change
+        RegisteredSubscriber[] dispatchTable = dispatchIndex.getDispatchTable(event.getClass());
+        for (RegisteredSubscriber subscriber : dispatchTable) {
+            try {
+                subscriber.handle.invokeExact(subscriber.listener, (Event) event);
+            } catch (Throwable t) {
+                DiscordSRV.error(
+                        LangUtil.InternalMessage.API_LISTENER_THREW_ERROR.toString()
+                                .replace("{listenername}", subscriber.listener.getClass().getName()),
+                        t);
+            }
+        }
+
+        return event;
+    }
+
+    /**
+     * Collects every {@link Subscribe} method of every listener in the order they should be invoked:
+     * by priority, then by subscription order, then by method order
+     */
+    private void rebuildSubscribers() {
+        List<RegisteredSubscriber> subscribers = new ArrayList<>();
         for (ListenerPriority listenerPriority : ListenerPriority.values()) {
             for (Object apiListener : apiListeners) {
                 for (Method method : apiListener.getClass().getMethods()) {
-                    if (method.getParameters().length != 1) continue; // api listener methods always take one parameter
-                    if (!method.getParameters()[0].getType().isAssignableFrom(event.getClass())) continue; // make sure the event wants this event
-                    if (!method.isAnnotationPresent(Subscribe.class)) continue; // make sure method has a subscribe annotation somewhere
-
-                    for (Annotation annotation : method.getAnnotations()) {
-                        if (!(annotation instanceof Subscribe)) continue; // go through all the annotations until we get one of ours
-
-                        Subscribe subscribeAnnotation = (Subscribe) annotation;
-                        if (subscribeAnnotation.priority() != listenerPriority) continue; // this priority isn't being called right now
-
-                        // make sure method is accessible
-                        if (!method.isAccessible()) method.setAccessible(true);
-
-                        try {
-                            method.invoke(apiListener, event);
-                        } catch (InvocationTargetException e) {
-                            DiscordSRV.error(
-                                    LangUtil.InternalMessage.API_LISTENER_THREW_ERROR.toString()
-                                            .replace("{listenername}", apiListener.getClass().getName()),
-                                    e.getCause());
-                        } catch (IllegalAccessException e) {
-                            // this should never happen
-                            DiscordSRV.error(
-                                    LangUtil.InternalMessage.API_LISTENER_METHOD_NOT_ACCESSIBLE.toString()
-                                            .replace("{listenername}", apiListener.getClass().getName())
-                                            .replace("{methodname}", method.toString()),
-                                    e
-                            );
-                        }
+                    if (method.getParameterCount() != 1) continue; // api listener methods always take one parameter
+                    if (method.getParameterTypes()[0].isPrimitive()) continue; // can never receive an event
+
+                    Subscribe subscribeAnnotation = method.getAnnotation(Subscribe.class);
+                    if (subscribeAnnotation == null) continue; // make sure method has a subscribe annotation
+                    if (subscribeAnnotation.priority() != listenerPriority) continue; // this priority isn't being collected right now
+
+                    // make sure method is accessible
+                    if (!method.isAccessible()) method.setAccessible(true);
+
+                    try {
+                        MethodHandle handle = LOOKUP.unreflect(method);
+                        // static methods don't take the listener, invoked the same way as the others
+                        if (Modifier.isStatic(method.getModifiers())) handle = MethodHandles.dropArguments(handle, 0, Object.class);
+                        handle = handle.asType(MethodType.methodType(void.class, Object.class, Event.class));
+                        subscribers.add(new RegisteredSubscriber(apiListener, method.getParameterTypes()[0], handle));
+                    } catch (IllegalAccessException | WrongMethodTypeException e) {
+                        // this should never happen
+                        DiscordSRV.error(
+                                LangUtil.InternalMessage.API_LISTENER_METHOD_NOT_ACCESSIBLE.toString()
+                                        .replace("{listenername}", apiListener.getClass().getName())
+                                        .replace("{methodname}", method.toString()),
+                                e
+                        );
                     }
                 }
             }
         }
 
-        return event;
+        this.dispatchIndex = new DispatchIndex(subscribers.toArray(new RegisteredSubscriber[0]));
+    }
+
+    private static class DispatchIndex {
+
+        private final RegisteredSubscriber[] subscribers;
+        private final Map<Class<?>, RegisteredSubscriber[]> dispatchTables = new ConcurrentHashMap<>();
+
+        private DispatchIndex(RegisteredSubscriber[] subscribers) {
+            this.subscribers = subscribers;
+        }
+
+        private RegisteredSubscriber[] getDispatchTable(Class<?> eventClass) {
+            RegisteredSubscriber[] dispatchTable = dispatchTables.get(eventClass);
+            if (dispatchTable != null) return dispatchTable;
+            return dispatchTables.computeIfAbsent(eventClass, clazz -> Arrays.stream(subscribers)
+                    .filter(subscriber -> subscriber.eventType.isAssignableFrom(clazz)) // make sure the method wants this event
+                    .toArray(RegisteredSubscriber[]::new));
+        }
+
+    }
+
+    private static class RegisteredSubscriber {
+
+        private final Object listener;
+        private final Class<?> eventType;
+        private final MethodHandle handle;
+
+        private RegisteredSubscriber(Object listener, Class<?> eventType, MethodHandle handle) {
+            this.listener = listener;
+            this.eventType = eventType;
+            this.handle = handle;
+        }
+
     }
 
     /**
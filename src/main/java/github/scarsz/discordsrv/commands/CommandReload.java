@@ -45,6 +45,7 @@ public class CommandReload {
         DiscordSRV.getPlugin().reloadRegexes();
         DiscordSRV.getPlugin().reloadRoleAliases();
         if (DiscordSRV.getPlugin().getAlertListener() != null) DiscordSRV.getPlugin().getAlertListener().reloadAlerts();
+        if (DiscordSRV.getPlugin().getConsoleAppender() != null) DiscordSRV.getPlugin().getConsoleAppender().reload();
 
         DiscordSRV.getPlugin().getPluginHooks().stream()
                 .filter(hook -> hook instanceof TownyChatHook)
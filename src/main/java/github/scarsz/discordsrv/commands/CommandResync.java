@@ -46,7 +46,13 @@ public class CommandResync {
         Bukkit.getScheduler().runTaskAsynchronously(DiscordSRV.getPlugin(), () -> {
             MessageUtil.sendMessage(sender, ChatColor.AQUA + "Full group synchronization triggered.");
             long time = System.currentTimeMillis();
-            DiscordSRV.getPlugin().getGroupSynchronizationManager().resyncEveryone(GroupSynchronizationManager.SyncCause.MANUAL);
+            DiscordSRV.getPlugin().getGroupSynchronizationManager().resyncEveryone(
+                    GroupSynchronizationManager.SyncDirection.AUTHORITATIVE,
+                    GroupSynchronizationManager.SyncCause.MANUAL,
+                    progress -> {
+                        if (!progress.isFinished()) MessageUtil.sendMessage(sender, ChatColor.AQUA + "Group synchronization progress: " + progress);
+                    }
+            );
             time = System.currentTimeMillis() - time;
             int seconds = Math.toIntExact(TimeUnit.MILLISECONDS.toSeconds(time));
             MessageUtil.sendMessage(sender, ChatColor.AQUA + "Full group synchronization finished, taking " + seconds + " seconds.");
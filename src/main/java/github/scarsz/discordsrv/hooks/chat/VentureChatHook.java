@@ -109,10 +109,9 @@ public class VentureChatHook implements ChatHook {
 
         String channel = chatChannel.getName();
 
-        String discordMessage = (hasGoodGroup
+        String discordMessage = TimeUtil.replaceTimePlaceholders(hasGoodGroup
                 ? LangUtil.Message.CHAT_TO_DISCORD.toString()
                 : LangUtil.Message.CHAT_TO_DISCORD_NO_PRIMARY_GROUP.toString())
-                .replaceAll("%time%|%date%", TimeUtil.timeStamp())
                 .replace("%channelname%", channel != null ? channel.substring(0, 1).toUpperCase() + channel.substring(1) : "")
                 .replace("%primarygroup%", userPrimaryGroup)
                 .replace("%username%", username);
@@ -27,6 +27,7 @@ import de.myzelyam.api.vanish.PostPlayerShowEvent;
 import de.myzelyam.api.vanish.VanishAPI;
 import de.myzelyam.supervanish.SuperVanish;
 import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.listeners.OnlinePlayerListener;
 import github.scarsz.discordsrv.objects.MessageFormat;
 import github.scarsz.discordsrv.util.GamePermissionUtil;
 import github.scarsz.discordsrv.util.LangUtil;
@@ -42,6 +43,8 @@ public class SuperVanishHook implements VanishHook {
 
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerShow(PostPlayerShowEvent event) {
+        refreshOnlinePlayer(event.getPlayer());
+
         SuperVanish plugin = (SuperVanish) getPlugin();
         if (!plugin.getSettings().getBoolean("MessageOptions.FakeJoinQuitMessages.BroadcastFakeJoinOnReappear") ||
                 event.isSilent()) {
@@ -76,6 +79,8 @@ public class SuperVanishHook implements VanishHook {
 
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerHide(PostPlayerHideEvent event) {
+        refreshOnlinePlayer(event.getPlayer());
+
         SuperVanish plugin = (SuperVanish) getPlugin();
         if (!plugin.getSettings().getBoolean("MessageOptions.FakeJoinQuitMessages.BroadcastFakeQuitOnVanish") ||
                 event.isSilent()) {
@@ -106,6 +111,12 @@ public class SuperVanishHook implements VanishHook {
                 () -> DiscordSRV.getPlugin().sendLeaveMessage(event.getPlayer(), joinMessage));
     }
 
+    private void refreshOnlinePlayer(Player player) {
+        // don't wait for the online players to be checked to notice
+        OnlinePlayerListener listener = DiscordSRV.getPlugin().getOnlinePlayerListener();
+        if (listener != null) listener.refresh(player);
+    }
+
     @Override
     public boolean isVanished(Player player) {
         return VanishAPI.isInvisible(player);
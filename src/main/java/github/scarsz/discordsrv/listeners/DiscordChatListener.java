@@ -30,6 +30,7 @@ import github.scarsz.discordsrv.api.events.DiscordGuildMessageReceivedEvent;
 import github.scarsz.discordsrv.hooks.DynmapHook;
 import github.scarsz.discordsrv.hooks.VaultHook;
 import github.scarsz.discordsrv.hooks.world.MultiverseCoreHook;
+import github.scarsz.discordsrv.objects.MessageTemplate;
 import github.scarsz.discordsrv.objects.SingleCommandSender;
 import github.scarsz.discordsrv.util.*;
 import net.dv8tion.jda.api.entities.Message;
@@ -55,6 +56,10 @@ import static github.scarsz.discordsrv.util.MessageFormatResolver.getMessageForm
 
 public class DiscordChatListener extends ListenerAdapter {
 
+    private static final MessageTemplate.Parser PLACEHOLDER_TEMPLATES = new MessageTemplate.Parser(
+            "channelname", "name", "username", "toprole", "toproleinitial", "toprolealias", "allroles", "message"
+    );
+
     @Override
     public void onGuildMessageReceived(GuildMessageReceivedEvent event) {
         // if message is from null author or self do not process
@@ -94,16 +99,28 @@ public class DiscordChatListener extends ListenerAdapter {
                 return;
             }
 
-            boolean hasLinkedAccount = DiscordSRV.getPlugin().getAccountLinkManager().getUuid(event.getAuthor().getId()) != null;
-            if (!hasLinkedAccount && !event.getAuthor().isBot()) {
-                event.getAuthor().openPrivateChannel().queue(privateChannel -> privateChannel.sendMessage(LangUtil.Message.LINKED_ACCOUNT_REQUIRED.toString()
-                        .replace("%message%", event.getMessage().getContentRaw())
-                ).queue());
-                DiscordUtil.deleteMessage(event.getMessage());
-                return;
-            }
+            // continues synchronously when the link is cached, otherwise once the link backend answers
+            DiscordSRV.getPlugin().getAccountLinkManager().getUuidAsync(event.getAuthor().getId()).thenAccept(uuid -> {
+                boolean hasLinkedAccount = uuid != null;
+                if (!hasLinkedAccount && !event.getAuthor().isBot()) {
+                    event.getAuthor().openPrivateChannel().queue(privateChannel -> privateChannel.sendMessage(LangUtil.Message.LINKED_ACCOUNT_REQUIRED.toString()
+                            .replace("%message%", event.getMessage().getContentRaw())
+                    ).queue());
+                    DiscordUtil.deleteMessage(event.getMessage());
+                    return;
+                }
+                processMessage(event, message);
+            }).exceptionally(throwable -> {
+                DiscordSRV.error("Failed to check linked account of " + event.getAuthor(), throwable);
+                return null;
+            });
+            return;
         }
 
+        processMessage(event, message);
+    }
+
+    private void processMessage(GuildMessageReceivedEvent event, String message) {
         // block bots
         if (DiscordSRV.config().getBoolean("DiscordChatChannelBlockBots") && event.getAuthor().isBot()) {
             DiscordSRV.debug("Received Discord message from bot " + event.getAuthor() + " but DiscordChatChannelBlockBots is on");
@@ -293,35 +310,54 @@ public class DiscordChatListener extends ListenerAdapter {
         Function<String, String> escape = MessageUtil.isLegacy(input)
                 ? str -> str
                 : str -> str.replaceAll("([<>])", "\\\\$1");
+        Role topRole = !selectedRoles.isEmpty() ? selectedRoles.get(0) : null;
 
-        return input.replace("%channelname%", event.getChannel().getName())
-                .replace("%name%", escape.apply(MessageUtil.strip(event.getMember().getEffectiveName())))
-                .replace("%username%", escape.apply(MessageUtil.strip(event.getMember().getUser().getName())))
-                .replace("%toprole%", escape.apply(DiscordUtil.getRoleName(!selectedRoles.isEmpty() ? selectedRoles.get(0) : null)))
-                .replace("%toproleinitial%", !selectedRoles.isEmpty() ? escape.apply(DiscordUtil.getRoleName(selectedRoles.get(0)).substring(0, 1)) : "")
-                .replace("%toprolealias%", escape.apply(getTopRoleAlias(!selectedRoles.isEmpty() ? selectedRoles.get(0) : null)))
-                .replace("%allroles%", escape.apply(DiscordUtil.getFormattedRoles(selectedRoles)))
-                .replace("\\~", "~") // get rid of escaped characters, since Minecraft doesn't use markdown
-                .replace("\\*", "") // get rid of escaped characters, since Minecraft doesn't use markdown
-                .replace("\\_", "_") // get rid of escaped characters, since Minecraft doesn't use markdown
-                .replace("%message%", message);
+        // get rid of escaped characters everywhere but in the message, since Minecraft doesn't use markdown
+        return PLACEHOLDER_TEMPLATES.get(unescapeMarkdown(input)).render(placeholder -> {
+            switch (placeholder) {
+                case "channelname":
+                    return unescapeMarkdown(event.getChannel().getName());
+                case "name":
+                    return unescapeMarkdown(escape.apply(MessageUtil.strip(event.getMember().getEffectiveName())));
+                case "username":
+                    return unescapeMarkdown(escape.apply(MessageUtil.strip(event.getMember().getUser().getName())));
+                case "toprole":
+                    return unescapeMarkdown(escape.apply(DiscordUtil.getRoleName(topRole)));
+                case "toproleinitial":
+                    return topRole != null ? unescapeMarkdown(escape.apply(DiscordUtil.getRoleName(topRole).substring(0, 1))) : "";
+                case "toprolealias":
+                    return unescapeMarkdown(escape.apply(getTopRoleAlias(topRole)));
+                case "allroles":
+                    return unescapeMarkdown(escape.apply(DiscordUtil.getFormattedRoles(selectedRoles)));
+                case "message":
+                    return message;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private static String unescapeMarkdown(String text) {
+        if (text.indexOf('\\') == -1) return text;
+        return text.replace("\\~", "~").replace("\\*", "").replace("\\_", "_");
     }
 
     private boolean processPlayerListCommand(GuildMessageReceivedEvent event, String message) {
         if (!DiscordSRV.config().getBoolean("DiscordChatChannelListCommandEnabled")) return false;
         if (!StringUtils.trimToEmpty(message).equalsIgnoreCase(DiscordSRV.config().getString("DiscordChatChannelListCommandMessage"))) return false;
 
-        if (PlayerUtil.getOnlinePlayers(true).size() == 0) {
+        List<Player> onlinePlayers = PlayerUtil.getOnlinePlayerSnapshot().getPlayers(true);
+        if (onlinePlayers.size() == 0) {
             DiscordUtil.sendMessage(event.getChannel(), LangUtil.Message.PLAYER_LIST_COMMAND_NO_PLAYERS.toString(), DiscordSRV.config().getInt("DiscordChatChannelListCommandExpiration") * 1000);
         } else {
             String playerListMessage = "";
-            playerListMessage += LangUtil.Message.PLAYER_LIST_COMMAND.toString().replace("%playercount%", PlayerUtil.getOnlinePlayers(true).size() + "/" + Bukkit.getMaxPlayers());
+            playerListMessage += LangUtil.Message.PLAYER_LIST_COMMAND.toString().replace("%playercount%", onlinePlayers.size() + "/" + Bukkit.getMaxPlayers());
             playerListMessage += "\n```\n";
 
             StringJoiner players = new StringJoiner(LangUtil.Message.PLAYER_LIST_COMMAND_ALL_PLAYERS_SEPARATOR.toString());
 
             List<String> playerList = new LinkedList<>();
-            for (Player player : PlayerUtil.getOnlinePlayers(true)) {
+            for (Player player : onlinePlayers) {
                 String userPrimaryGroup = VaultHook.getPrimaryGroup(player);
                 boolean hasGoodGroup = StringUtils.isNotBlank(userPrimaryGroup);
                 // capitalize the first letter of the user's primary group to look neater
@@ -352,12 +388,7 @@ public class DiscordChatListener extends ListenerAdapter {
 
         // expire message after specified time
         if (DiscordSRV.config().getInt("DiscordChatChannelListCommandExpiration") > 0 && DiscordSRV.config().getBoolean("DiscordChatChannelListCommandExpirationDeleteRequest")) {
-            new Thread(() -> {
-                try {
-                    Thread.sleep(DiscordSRV.config().getInt("DiscordChatChannelListCommandExpiration") * 1000L);
-                } catch (InterruptedException ignored) {}
-                DiscordUtil.deleteMessage(event.getMessage());
-            }).start();
+            DiscordUtil.deleteMessageLater(event.getMessage(), DiscordSRV.config().getInt("DiscordChatChannelListCommandExpiration") * 1000L);
         }
         return true;
     }
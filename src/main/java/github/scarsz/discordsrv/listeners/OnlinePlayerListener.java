@@ -0,0 +1,144 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.listeners;
+
+import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.objects.OnlinePlayerSnapshot;
+import github.scarsz.discordsrv.util.PlayerUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.*;
+
+/**
+ * <p>Keeps the {@link OnlinePlayerSnapshot} up to date as players join & quit.</p>
+ * <p>Most vanish plugins don't tell anyone when a player vanishes or reappears, and display names can be changed by
+ * anything, so the vanished states & display names of the online players are also checked every second.</p>
+ */
+public class OnlinePlayerListener implements Listener {
+
+    private static final long REFRESH_INTERVAL_TICKS = 20;
+
+    // only touched from the main thread
+    private final Map<UUID, Player> players = new LinkedHashMap<>();
+    private final Set<UUID> vanished = new HashSet<>();
+    private final Map<UUID, String> displayNames = new HashMap<>();
+    private boolean loaded = false;
+
+    public OnlinePlayerListener() {
+        // created off the main thread during startup, the players are read on the main thread's first refresh
+        Bukkit.getPluginManager().registerEvents(this, DiscordSRV.getPlugin());
+        Bukkit.getScheduler().runTaskTimer(DiscordSRV.getPlugin(), this::refresh, 0, REFRESH_INTERVAL_TICKS);
+    }
+
+    /**
+     * Read the players that are online already (if we were reloaded), before anything else is published
+     */
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+        for (Player player : OnlinePlayerSnapshot.getServerOnlinePlayers()) update(player);
+        publish();
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        load();
+        // early so the player is counted by everything handling the join
+        update(event.getPlayer());
+        publish();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoinMonitor(PlayerJoinEvent event) {
+        load();
+        // vanish plugins hide players while the join is being handled
+        if (update(event.getPlayer())) publish();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        load();
+        UUID uuid = event.getPlayer().getUniqueId();
+        if (players.remove(uuid) == null) return;
+        vanished.remove(uuid);
+        displayNames.remove(uuid);
+        publish();
+    }
+
+    /**
+     * Check the given player's vanished state & display name now instead of waiting for the next refresh,
+     * for vanish hooks that are told when a player vanishes or reappears. Must be called on the main thread.
+     */
+    public void refresh(Player player) {
+        load();
+        if (players.containsKey(player.getUniqueId()) && update(player)) publish();
+    }
+
+    private void refresh() {
+        if (!loaded) {
+            load();
+            return;
+        }
+
+        boolean changed = false;
+        for (Player player : new ArrayList<>(players.values())) {
+            if (!player.isOnline()) {
+                // missed the quit somehow
+                UUID uuid = player.getUniqueId();
+                players.remove(uuid);
+                vanished.remove(uuid);
+                displayNames.remove(uuid);
+                changed = true;
+                continue;
+            }
+            changed |= update(player);
+        }
+        if (changed) publish();
+    }
+
+    /**
+     * @return whether anything about the player changed
+     */
+    private boolean update(Player player) {
+        UUID uuid = player.getUniqueId();
+        boolean changed = players.put(uuid, player) != player;
+
+        boolean isVanished = PlayerUtil.isVanished(player);
+        changed |= isVanished ? vanished.add(uuid) : vanished.remove(uuid);
+
+        String displayName = player.getDisplayName();
+        changed |= !Objects.equals(displayNames.put(uuid, displayName), displayName);
+        return changed;
+    }
+
+    private void publish() {
+        OnlinePlayerSnapshot.set(new OnlinePlayerSnapshot(players.values(), vanished, displayNames));
+    }
+
+}
@@ -0,0 +1,59 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.listeners;
+
+import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.util.PluginUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.event.server.PluginEnableEvent;
+
+/**
+ * Keeps the plugin & plugin hook states cached by {@link PluginUtil} up to date as plugins are enabled & disabled
+ */
+public class PluginStateListener implements Listener {
+
+    public PluginStateListener() {
+        Bukkit.getPluginManager().registerEvents(this, DiscordSRV.getPlugin());
+        // plugins might have been enabled before we were listening
+        PluginUtil.invalidatePluginStates();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginEnable(PluginEnableEvent event) {
+        PluginUtil.invalidatePluginStates();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginDisable(PluginDisableEvent event) {
+        PluginUtil.invalidatePluginStates();
+        // the event is called before the plugin is actually marked as disabled, check again once it is
+        if (DiscordSRV.getPlugin().isEnabled()) {
+            Bukkit.getScheduler().runTask(DiscordSRV.getPlugin(), PluginUtil::invalidatePluginStates);
+        }
+    }
+
+}
@@ -23,9 +23,7 @@
 package github.scarsz.discordsrv.modules.alerts;
 
 import alexh.weak.Dynamic;
-import alexh.weak.Weak;
 import github.scarsz.discordsrv.DiscordSRV;
-import github.scarsz.discordsrv.objects.ExpiringDualHashBidiMap;
 import github.scarsz.discordsrv.objects.Lag;
 import github.scarsz.discordsrv.objects.MessageFormat;
 import github.scarsz.discordsrv.util.*;
@@ -34,7 +32,6 @@ import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.events.GenericEvent;
 import net.dv8tion.jda.api.hooks.EventListener;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.math.NumberUtils;
 import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
@@ -44,7 +41,6 @@ import org.bukkit.event.player.PlayerEvent;
 import org.bukkit.event.server.ServerCommandEvent;
 import org.bukkit.plugin.RegisteredListener;
 import org.jetbrains.annotations.NotNull;
-import org.springframework.expression.ParseException;
 import org.springframework.expression.spel.SpelEvaluationException;
 
 import java.lang.reflect.Field;
@@ -52,31 +48,30 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
-import java.util.function.Function;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 public class AlertListener implements Listener, EventListener {
 
-    private static final Pattern VALID_CLASS_NAME_PATTERN = Pattern.compile("([\\p{L}_$][\\p{L}\\p{N}_$]*\\.)*[\\p{L}_$][\\p{L}\\p{N}_$]*");
     private static final List<String> BLACKLISTED_CLASS_NAMES = Arrays.asList(
             // Causes issues with logins with some plugins
             "com.destroystokyo.paper.event.player.PlayerHandshakeEvent",
             // Causes server to on to the main thread & breaks team color on Paper
             "org.bukkit.event.player.PlayerChatEvent"
     );
-    private static final List<String> SYNC_EVENT_NAMES = Arrays.asList(
-            // Needs to be sync because block data will be stale by time async task runs
-            "BlockBreakEvent"
-    );
 
     private static final List<Class<?>> BLACKLISTED_CLASSES = new ArrayList<>();
 
-    private final Map<String, String> validClassNameCache = new ExpiringDualHashBidiMap<>(TimeUnit.MINUTES.toMillis(1));
-    private final Set<String> activeTriggers = new HashSet<>();
+    private static final ClassValue<Optional<Method>> PLAYER_GETTERS = new ClassValue<Optional<Method>>() {
+        @Override
+        protected Optional<Method> computeValue(Class<?> type) {
+            try {
+                Method getPlayerMethod = type.getMethod("getPlayer");
+                return getPlayerMethod.getReturnType().equals(Player.class) ? Optional.of(getPlayerMethod) : Optional.empty();
+            } catch (Exception e) {
+                return Optional.empty();
+            }
+        }
+    };
 
     static {
         for (String className : BLACKLISTED_CLASS_NAMES) {
@@ -88,6 +83,7 @@ public class AlertListener implements Listener, EventListener {
 
     private final RegisteredListener listener;
     private final List<Dynamic> alerts = new ArrayList<>();
+    private volatile AlertRoutes routes = new AlertRoutes(Collections.emptyList());
     private boolean registered = false;
 
     public AlertListener() {
@@ -174,8 +170,6 @@ public class AlertListener implements Listener, EventListener {
     }
 
     public void reloadAlerts() {
-        validClassNameCache.clear();
-        activeTriggers.clear();
         alerts.clear();
         Optional<List<Map<?, ?>>> optionalAlerts = DiscordSRV.config().getOptional("Alerts");
         boolean any = optionalAlerts.isPresent() && !optionalAlerts.get().isEmpty();
@@ -186,17 +180,25 @@ public class AlertListener implements Listener, EventListener {
             DiscordSRV.info(optionalAlerts.get().size() + " alert" + (count > 1 ? "s" : "") + " registered");
 
             for (Map<?, ?> map : optionalAlerts.get()) {
-                Dynamic alert = Dynamic.from(map);
-                alerts.add(alert);
-                activeTriggers.addAll(getTriggers(alert));
+                alerts.add(Dynamic.from(map));
             }
         }
+
+        List<CompiledAlert> compiled = new ArrayList<>();
+        for (int i = 0; i < alerts.size(); i++) {
+            compiled.add(CompiledAlert.compile(i, alerts.get(i)));
+        }
+        routes = new AlertRoutes(compiled);
     }
 
     public List<Dynamic> getAlerts() {
         return alerts;
     }
 
+    public List<CompiledAlert> getCompiledAlerts() {
+        return routes.getAlerts();
+    }
+
     public void unregister() {
         HandlerList.unregisterAll(this);
         registered = false;
@@ -208,107 +210,43 @@ public class AlertListener implements Listener, EventListener {
     }
 
     private void runAlertsForEvent(Object event) {
-        boolean command = event instanceof PlayerCommandPreprocessEvent || event instanceof ServerCommandEvent;
-
-        boolean active = false;
-        String eventName = getEventName(event);
-        for (String trigger : activeTriggers) {
-            if (command && trigger.startsWith("/")) {
-                active = true;
-                break;
-            } else if (trigger.equals(eventName.toLowerCase())) {
-                active = true;
-                break;
+        // a miss is one lookup, this runs for every event on the server
+        AlertRoutes.Route route = routes.get(event.getClass());
+        if (route.isEmpty()) {
+            // subclasses of an event can share its list, only leave it if no alert triggers on any of them
+            if (!route.isKeepingHandlerList() && event instanceof Event && routes.canLeaveHandlerList(event.getClass())) {
+                ((Event) event).getHandlers().unregister(this);
             }
-        }
-        if (!active) {
-            // remove us from HandlerLists that we don't need (we can do this here, since we have the full class name)
-            if (event instanceof Event) ((Event) event).getHandlers().unregister(this);
             return;
         }
 
-        for (int i = 0; i < alerts.size(); i++) {
-            Dynamic alert = alerts.get(i);
-            Set<String> triggers = getTriggers(alert);
-            boolean async = true;
-
-            Dynamic asyncDynamic = alert.get("Async");
-            if (asyncDynamic.isPresent()) {
-                if (asyncDynamic.convert().intoString().equalsIgnoreCase("false")
-                        || asyncDynamic.convert().intoString().equalsIgnoreCase("no")) {
-                    async = false;
-                }
-            }
-
-            outer:
-            for (String syncName : SYNC_EVENT_NAMES) {
-                for (String trigger : triggers) {
-                    if (trigger.equalsIgnoreCase(syncName)) {
-                        async = false;
-                        break outer;
-                    }
-                }
-            }
-
-            if (async) {
-                int alertIndex = i;
-                Bukkit.getScheduler().runTaskAsynchronously(DiscordSRV.getPlugin(), () -> process(event, alert, triggers, alertIndex));
+        for (int i = 0; i < route.size(); i++) {
+            CompiledAlert alert = route.getAlert(i);
+            String eventTrigger = route.getEventTrigger(i);
+            if (alert.isAsync()) {
+                Bukkit.getScheduler().runTaskAsynchronously(DiscordSRV.getPlugin(), () -> process(event, alert, eventTrigger));
             } else {
-                process(event, alert, triggers, i);
+                process(event, alert, eventTrigger);
             }
         }
     }
 
-    private Set<String> getTriggers(Dynamic alert) {
-        Set<String> triggers = new HashSet<>();
-        Dynamic triggerDynamic = alert.get("Trigger");
-        if (triggerDynamic.isList()) {
-            triggers.addAll(triggerDynamic.children()
-                    .map(Weak::asString)
-                    .map(String::toLowerCase)
-                    .collect(Collectors.toSet())
-            );
-        } else if (triggerDynamic.isString()) {
-            triggers.add(triggerDynamic.asString().toLowerCase());
-        }
-
-        Set<String> finalTriggers = new HashSet<>();
-        for (String trigger : triggers) {
-            if (!trigger.startsWith("/")) {
-                String className = validClassNameCache.get(trigger);
-                if (className == null) {
-                    // event trigger, make sure it's a valid class name
-                    Matcher matcher = VALID_CLASS_NAME_PATTERN.matcher(trigger);
-                    if (matcher.find()) {
-                        // valid class name found
-                        className = matcher.group();
-                    }
-                    validClassNameCache.put(trigger, className);
-                }
-                finalTriggers.add(className);
-                continue;
-            }
-            finalTriggers.add(trigger);
-        }
-        return finalTriggers;
-    }
-
     private String getEventName(Object event) {
         return event instanceof Event ? ((Event) event).getEventName() : event.getClass().getSimpleName();
     }
 
-    private void process(Object event, Dynamic alert, Set<String> triggers, int alertIndex) {
+    private void process(Object event, CompiledAlert alert, String eventTrigger) {
         Player player = event instanceof PlayerEvent ? ((PlayerEvent) event).getPlayer() : null;
         if (player == null) {
             // some things that do deal with players are not properly marked as a player event
             // this will check to see if a #getPlayer() method exists on events coming through
-            try {
-                Method getPlayerMethod = event.getClass().getMethod("getPlayer");
-                if (getPlayerMethod.getReturnType().equals(Player.class)) {
-                    player = (Player) getPlayerMethod.invoke(event);
+            Optional<Method> getPlayerMethod = PLAYER_GETTERS.get(event.getClass());
+            if (getPlayerMethod.isPresent()) {
+                try {
+                    player = (Player) getPlayerMethod.get().invoke(event);
+                } catch (Exception ignored) {
+                    // we tried ¯\_(ツ)_/¯
                 }
-            } catch (Exception ignored) {
-                // we tried ¯\_(ツ)_/¯
             }
         }
 
@@ -334,124 +272,74 @@ public class AlertListener implements Listener, EventListener {
             command = commandBase + (split.length == 2 ? (" " + split[1]) : "");
         }
 
-        MessageFormat messageFormat = DiscordSRV.getPlugin().getMessageFromConfiguration("Alerts." + alertIndex);
+        MessageFormat messageFormat = alert.getMessageFormat();
+        String eventName = getEventName(event);
+        String commandName = StringUtils.isNotBlank(command) ? command.toLowerCase().split("\\s+|$", 2)[0] : null;
 
-        for (String trigger : triggers) {
-            String eventName = getEventName(event);
+        for (String trigger : alert.getTriggers()) {
             if (trigger.startsWith("/")) {
-                if (StringUtils.isBlank(command) || !command.toLowerCase().split("\\s+|$", 2)[0].equals(trigger.substring(1))) continue;
+                if (commandName == null || !commandName.equals(trigger.substring(1))) continue;
             } else {
                 // make sure the called event matches what this alert is supposed to trigger on
-                if (!eventName.equalsIgnoreCase(trigger)) continue;
+                if (!trigger.equals(eventTrigger)) continue;
             }
 
             // make sure alert should run even if event is cancelled
-            if (event instanceof Cancellable && ((Cancellable) event).isCancelled()) {
-                Dynamic ignoreCancelledDynamic = alert.get("IgnoreCancelled");
-                boolean ignoreCancelled = ignoreCancelledDynamic.isPresent() ? ignoreCancelledDynamic.as(Boolean.class) : true;
-                if (ignoreCancelled) {
-                    DiscordSRV.debug("Not running alert for event " + eventName + ": event was cancelled");
-                    return;
-                }
+            if (event instanceof Cancellable && ((Cancellable) event).isCancelled() && alert.isIgnoreCancelled()) {
+                DiscordSRV.debug("Not running alert for event " + eventName + ": event was cancelled");
+                return;
             }
 
-            Dynamic textChannelsDynamic = alert.get("Channel");
-            if (textChannelsDynamic == null) {
+            if (alert.getChannels().isEmpty()) {
                 DiscordSRV.debug("Not running alert for trigger " + trigger + ": no target channel was defined");
                 return;
             }
-            Set<String> channels = new HashSet<>();
-            if (textChannelsDynamic.isList()) {
-                textChannelsDynamic.children()
-                        .map(Weak::asString)
-                        .filter(Objects::nonNull)
-                        .forEach(channels::add);
-            } else if (textChannelsDynamic.isString()) {
-                channels.add(textChannelsDynamic.asString());
-            }
-            Function<Function<String, Collection<TextChannel>>, Set<TextChannel>> channelResolver = converter -> {
-                Set<TextChannel> textChannels = new HashSet<>();
-                channels.forEach(channel -> textChannels.addAll(converter.apply(channel)));
-                textChannels.removeIf(Objects::isNull);
-                return textChannels;
-            };
-
-            Set<TextChannel> textChannels = channelResolver.apply(s -> {
-                TextChannel target = DiscordSRV.getPlugin().getDestinationTextChannelForGameChannelName(s);
-                return Collections.singleton(target);
-            });
-            if (textChannels.isEmpty()) {
-                textChannels.addAll(channelResolver.apply(s ->
-                        DiscordUtil.getJda().getTextChannelsByName(s, false)
-                ));
-            }
-            if (textChannels.isEmpty()) {
-                textChannels.addAll(channelResolver.apply(s -> NumberUtils.isDigits(s) ?
-                        Collections.singleton(DiscordUtil.getJda().getTextChannelById(s)) : null));
-            }
-
+            Set<TextChannel> textChannels = alert.getTextChannels();
             if (textChannels.size() == 0) {
-                DiscordSRV.debug("Not running alert for trigger " + trigger + ": no target channel was defined/found (channels: " + channels + ")");
+                DiscordSRV.debug("Not running alert for trigger " + trigger + ": no target channel was defined/found (channels: " + alert.getChannels() + ")");
                 return;
             }
 
+            Map<String, Object> variables = new HashMap<>();
+            variables.put("event", event);
+            variables.put("server", Bukkit.getServer());
+            variables.put("discordsrv", DiscordSRV.getPlugin());
+            variables.put("player", player);
+            variables.put("sender", sender);
+            variables.put("command", command);
+            variables.put("args", args);
+            variables.put("allArgs", String.join(" ", args));
+            variables.put("jda", DiscordUtil.getJda());
+
             for (TextChannel textChannel : textChannels) {
+                variables.put("channel", textChannel);
+
                 // check alert conditions
                 boolean allConditionsMet = true;
-                Dynamic conditionsDynamic = alert.dget("Conditions");
-                if (conditionsDynamic.isPresent()) {
-                    Iterator<Dynamic> conditions = conditionsDynamic.children().iterator();
-                    while (conditions.hasNext()) {
-                        Dynamic dynamic = conditions.next();
-                        String expression = dynamic.convert().intoString();
-                        try {
-                            Boolean value = new SpELExpressionBuilder(expression)
-                                    .withPluginVariables()
-                                    .withVariable("event", event)
-                                    .withVariable("server", Bukkit.getServer())
-                                    .withVariable("discordsrv", DiscordSRV.getPlugin())
-                                    .withVariable("player", player)
-                                    .withVariable("sender", sender)
-                                    .withVariable("command", command)
-                                    .withVariable("args", args)
-                                    .withVariable("allArgs", String.join(" ", args))
-                                    .withVariable("channel", textChannel)
-                                    .withVariable("jda", DiscordUtil.getJda())
-                                    .evaluate(event, Boolean.class);
-                            DiscordSRV.debug("Condition \"" + expression + "\" -> " + value);
-                            if (value != null && !value) {
-                                allConditionsMet = false;
-                                break;
-                            }
-                        } catch (ParseException e) {
-                            DiscordSRV.error("Error while parsing expression \"" + expression + "\" for trigger \"" + trigger + "\" -> " + e.getMessage());
-                        } catch (SpelEvaluationException e) {
-                            DiscordSRV.error("Error while evaluating expression \"" + expression + "\" for trigger \"" + trigger + "\" -> " + e.getMessage());
+                for (CompiledAlert.Condition condition : alert.getConditions()) {
+                    try {
+                        Boolean value = new SpELExpressionBuilder(condition.getExpression())
+                                .withPluginVariables()
+                                .withVariables(variables)
+                                .evaluate(event, Boolean.class);
+                        DiscordSRV.debug("Condition \"" + condition.getSource() + "\" -> " + value);
+                        if (value != null && !value) {
+                            allConditionsMet = false;
+                            break;
                         }
+                    } catch (SpelEvaluationException e) {
+                        DiscordSRV.error("Error while evaluating expression \"" + condition.getSource() + "\" for trigger \"" + trigger + "\" -> " + e.getMessage());
                     }
-                    if (!allConditionsMet) continue;
                 }
-
-                CommandSender finalSender = sender;
-                String finalCommand = command;
+                if (!allConditionsMet) continue;
 
                 Player finalPlayer = player;
+                Map<String, Object> channelVariables = new HashMap<>(variables);
                 BiFunction<String, Boolean, String> translator = (content, needsEscape) -> {
                     if (content == null) return null;
 
                     // evaluate any SpEL expressions
-                    Map<String, Object> variables = new HashMap<>();
-                    variables.put("event", event);
-                    variables.put("server", Bukkit.getServer());
-                    variables.put("discordsrv", DiscordSRV.getPlugin());
-                    variables.put("player", finalPlayer);
-                    variables.put("sender", finalSender);
-                    variables.put("command", finalCommand);
-                    variables.put("args", args);
-                    variables.put("allArgs", String.join(" ", args));
-                    variables.put("channel", textChannel);
-                    variables.put("jda", DiscordUtil.getJda());
-                    content = NamedValueFormatter.formatExpressions(content, event, variables);
+                    content = NamedValueFormatter.formatExpressions(content, event, channelVariables);
 
                     // replace any normal placeholders
                     content = NamedValueFormatter.format(content, key -> {
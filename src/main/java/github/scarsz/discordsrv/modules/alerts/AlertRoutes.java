@@ -0,0 +1,209 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.modules.alerts;
+
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.server.ServerCommandEvent;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * <p>Which of the loaded alerts run for which event class, worked out the first time an event class is seen.</p>
+ * <p>An alert triggers on an event if it has a trigger for the event's class or one of its superclasses (by simple or
+ * full name, the way Bukkit calls listeners of an event for subclasses sharing its handler list), or if it has a
+ * command trigger and the event is a command event. Looking up a class that was seen before is a single identity
+ * map read without allocating anything, which is all it costs for the events no alert is interested in.</p>
+ * <p>Triggers are only names, so the classes they stand for are learned from the event classes seen. Once every
+ * trigger was seen, a handler list whose events no alert triggers on can be left: that is when none of the classes
+ * the triggers stand for is a subclass of the class owning the list, as only those could share the list. That's
+ * decided once per event class, a class whose list has to be kept gets a route saying so.</p>
+ */
+public class AlertRoutes {
+
+    private static final Route NO_ALERTS = new Route(new CompiledAlert[0], new String[0], false);
+    private static final Route NO_ALERTS_KEEP_HANDLER_LIST = new Route(new CompiledAlert[0], new String[0], true);
+
+    private final List<CompiledAlert> alerts;
+    // copied on write, so it can be read without locking
+    private volatile Map<Class<?>, Route> routes = new IdentityHashMap<>();
+    private final Set<String> unseenTriggers = new HashSet<>(); // guarded by this
+    private final Set<Class<?>> triggerClasses = new HashSet<>(); // guarded by this
+    private volatile boolean triggersSeen;
+
+    public AlertRoutes(List<CompiledAlert> alerts) {
+        this.alerts = Collections.unmodifiableList(new ArrayList<>(alerts));
+        for (CompiledAlert alert : alerts) {
+            unseenTriggers.addAll(alert.getEventTriggers());
+            if (!alert.getCommandTriggers().isEmpty()) {
+                triggerClasses.add(PlayerCommandPreprocessEvent.class);
+                triggerClasses.add(ServerCommandEvent.class);
+            }
+        }
+        triggersSeen = unseenTriggers.isEmpty();
+    }
+
+    public List<CompiledAlert> getAlerts() {
+        return alerts;
+    }
+
+    public Route get(Class<?> eventClass) {
+        Route route = routes.get(eventClass);
+        return route != null ? route : compute(eventClass);
+    }
+
+    private synchronized Route compute(Class<?> eventClass) {
+        Route route = routes.get(eventClass);
+        if (route != null) return route;
+
+        route = build(eventClass, alerts);
+        if (!triggersSeen) {
+            for (Class<?> type = eventClass; type != null && type != Object.class; type = type.getSuperclass()) {
+                boolean simpleName = unseenTriggers.remove(type.getSimpleName().toLowerCase());
+                boolean name = unseenTriggers.remove(type.getName().toLowerCase());
+                if (simpleName || name) triggerClasses.add(type);
+            }
+            triggersSeen = unseenTriggers.isEmpty();
+        }
+        Map<Class<?>, Route> copy = new IdentityHashMap<>(routes);
+        copy.put(eventClass, route);
+        routes = copy;
+        return route;
+    }
+
+    /**
+     * @param eventClass the class of an event no alert triggers on
+     * @return whether or not no alert can trigger on any event sharing the handler list of the given event class,
+     * false if that can't be told (yet)
+     */
+    public boolean canLeaveHandlerList(Class<?> eventClass) {
+        // the trigger classes don't change anymore once every trigger was seen, so neither does the answer
+        if (!triggersSeen) return false;
+        Class<?> owner = getHandlerListOwner(eventClass);
+        synchronized (this) {
+            boolean keep = owner == null;
+            for (Class<?> triggerClass : triggerClasses) {
+                if (keep) break;
+                keep = owner.isAssignableFrom(triggerClass);
+            }
+            if (!keep) return true;
+
+            if (routes.get(eventClass) == NO_ALERTS) {
+                Map<Class<?>, Route> copy = new IdentityHashMap<>(routes);
+                copy.put(eventClass, NO_ALERTS_KEEP_HANDLER_LIST);
+                routes = copy;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @return the class declaring the static getHandlerList method the given event class uses, or null if none does
+     */
+    static Class<?> getHandlerListOwner(Class<?> eventClass) {
+        for (Class<?> type = eventClass; type != null && type != Object.class; type = type.getSuperclass()) {
+            for (Method method : type.getDeclaredMethods()) {
+                if (method.getName().equals("getHandlerList") && method.getParameterCount() == 0
+                        && Modifier.isStatic(method.getModifiers())) {
+                    return type;
+                }
+            }
+        }
+        return null;
+    }
+
+    static Route build(Class<?> eventClass, List<CompiledAlert> alerts) {
+        boolean commandEvent = PlayerCommandPreprocessEvent.class.isAssignableFrom(eventClass)
+                || ServerCommandEvent.class.isAssignableFrom(eventClass);
+
+        // most specific first, so an alert triggering on a class & its superclass matches the class
+        List<String> names = new ArrayList<>();
+        for (Class<?> type = eventClass; type != null && type != Object.class; type = type.getSuperclass()) {
+            names.add(type.getSimpleName().toLowerCase());
+            names.add(type.getName().toLowerCase());
+        }
+
+        List<CompiledAlert> routedAlerts = new ArrayList<>();
+        List<String> eventTriggers = new ArrayList<>();
+        for (CompiledAlert alert : alerts) {
+            String eventTrigger = null;
+            for (String name : names) {
+                if (alert.getEventTriggers().contains(name)) {
+                    eventTrigger = name;
+                    break;
+                }
+            }
+            if (eventTrigger == null && !(commandEvent && !alert.getCommandTriggers().isEmpty())) continue;
+
+            routedAlerts.add(alert);
+            eventTriggers.add(eventTrigger);
+        }
+
+        return routedAlerts.isEmpty()
+                ? NO_ALERTS
+                : new Route(routedAlerts.toArray(new CompiledAlert[0]), eventTriggers.toArray(new String[0]), true);
+    }
+
+    public static class Route {
+
+        private final CompiledAlert[] alerts;
+        private final String[] eventTriggers;
+        private final boolean keepHandlerList;
+
+        private Route(CompiledAlert[] alerts, String[] eventTriggers, boolean keepHandlerList) {
+            this.alerts = alerts;
+            this.eventTriggers = eventTriggers;
+            this.keepHandlerList = keepHandlerList;
+        }
+
+        public boolean isEmpty() {
+            return alerts.length == 0;
+        }
+
+        /**
+         * @return whether or not it's already known that the event's handler list can't be left
+         */
+        public boolean isKeepingHandlerList() {
+            return keepHandlerList;
+        }
+
+        public int size() {
+            return alerts.length;
+        }
+
+        public CompiledAlert getAlert(int index) {
+            return alerts[index];
+        }
+
+        /**
+         * @return the event trigger of the alert at the given index that matched the event class,
+         * or null if the alert only runs for the event's command
+         */
+        public String getEventTrigger(int index) {
+            return eventTriggers[index];
+        }
+
+    }
+
+}
@@ -0,0 +1,284 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.modules.alerts;
+
+import alexh.weak.Dynamic;
+import alexh.weak.Weak;
+import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.objects.MessageFormat;
+import github.scarsz.discordsrv.util.DiscordUtil;
+import github.scarsz.discordsrv.util.SpELExpressionBuilder;
+import net.dv8tion.jda.api.entities.TextChannel;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ParseException;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An alert from the config, read & validated once when alerts are (re)loaded instead of every time it triggers
+ */
+public class CompiledAlert {
+
+    private static final Pattern VALID_CLASS_NAME_PATTERN = Pattern.compile("([\\p{L}_$][\\p{L}\\p{N}_$]*\\.)*[\\p{L}_$][\\p{L}\\p{N}_$]*");
+    private static final List<String> SYNC_EVENT_NAMES = Collections.singletonList(
+            // Needs to be sync because block data will be stale by time async task runs
+            "blockbreakevent"
+    );
+
+    private final int index;
+    private final Set<String> triggers;
+    private final Set<String> eventTriggers;
+    private final Set<String> commandTriggers;
+    private final boolean async;
+    private final boolean ignoreCancelled;
+    private final List<String> channels;
+    private final List<Condition> conditions;
+    private volatile long[] channelIds; // resolved the first time the alert runs, JDA might not be ready before
+
+    private CompiledAlert(int index, Set<String> triggers, Set<String> eventTriggers, Set<String> commandTriggers,
+                          boolean async, boolean ignoreCancelled, List<String> channels, List<Condition> conditions) {
+        this.index = index;
+        this.triggers = triggers;
+        this.eventTriggers = eventTriggers;
+        this.commandTriggers = commandTriggers;
+        this.async = async;
+        this.ignoreCancelled = ignoreCancelled;
+        this.channels = channels;
+        this.conditions = conditions;
+    }
+
+    public static CompiledAlert compile(int index, Dynamic alert) {
+        Set<String> rawTriggers = new LinkedHashSet<>();
+        Dynamic triggerDynamic = alert.get("Trigger");
+        if (triggerDynamic.isList()) {
+            triggerDynamic.children()
+                    .map(Weak::asString)
+                    .filter(Objects::nonNull)
+                    .map(String::toLowerCase)
+                    .forEach(rawTriggers::add);
+        } else if (triggerDynamic.isString()) {
+            rawTriggers.add(triggerDynamic.asString().toLowerCase());
+        }
+
+        Set<String> triggers = new LinkedHashSet<>();
+        Set<String> eventTriggers = new HashSet<>();
+        Set<String> commandTriggers = new HashSet<>();
+        for (String trigger : rawTriggers) {
+            if (trigger.startsWith("/")) {
+                triggers.add(trigger);
+                commandTriggers.add(trigger.substring(1));
+                continue;
+            }
+
+            // event trigger, make sure it's a valid class name
+            Matcher matcher = VALID_CLASS_NAME_PATTERN.matcher(trigger);
+            if (!matcher.find()) {
+                DiscordSRV.debug("Alert #" + index + " has an invalid trigger \"" + trigger + "\", ignoring it");
+                continue;
+            }
+            triggers.add(matcher.group());
+            eventTriggers.add(matcher.group());
+        }
+
+        boolean async = true;
+        Dynamic asyncDynamic = alert.get("Async");
+        if (asyncDynamic.isPresent()) {
+            String value = asyncDynamic.convert().intoString();
+            if (value.equalsIgnoreCase("false") || value.equalsIgnoreCase("no")) async = false;
+        }
+        for (String syncName : SYNC_EVENT_NAMES) {
+            if (eventTriggers.contains(syncName)) {
+                async = false;
+                break;
+            }
+        }
+
+        Dynamic ignoreCancelledDynamic = alert.get("IgnoreCancelled");
+        boolean ignoreCancelled = !ignoreCancelledDynamic.isPresent() || ignoreCancelledDynamic.as(Boolean.class);
+
+        List<String> channels = new ArrayList<>();
+        Dynamic textChannelsDynamic = alert.get("Channel");
+        if (textChannelsDynamic.isList()) {
+            textChannelsDynamic.children()
+                    .map(Weak::asString)
+                    .filter(Objects::nonNull)
+                    .forEach(channels::add);
+        } else if (textChannelsDynamic.isString()) {
+            channels.add(textChannelsDynamic.asString());
+        }
+
+        List<Condition> conditions = new ArrayList<>();
+        Dynamic conditionsDynamic = alert.dget("Conditions");
+        if (conditionsDynamic.isPresent()) {
+            Iterator<Dynamic> iterator = conditionsDynamic.children().iterator();
+            while (iterator.hasNext()) {
+                String expression = iterator.next().convert().intoString();
+                try {
+                    conditions.add(new Condition(expression, SpELExpressionBuilder.parse(expression)));
+                } catch (ParseException e) {
+                    DiscordSRV.error("Error while parsing expression \"" + expression + "\" for alert #" + index + " -> " + e.getMessage());
+                }
+            }
+        }
+
+        return new CompiledAlert(index,
+                Collections.unmodifiableSet(triggers),
+                Collections.unmodifiableSet(eventTriggers),
+                Collections.unmodifiableSet(commandTriggers),
+                async, ignoreCancelled,
+                Collections.unmodifiableList(channels),
+                Collections.unmodifiableList(conditions));
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the lower case event names & /commands this alert triggers on
+     */
+    public Set<String> getTriggers() {
+        return triggers;
+    }
+
+    /**
+     * @return the lower case names of the events this alert triggers on
+     */
+    public Set<String> getEventTriggers() {
+        return eventTriggers;
+    }
+
+    /**
+     * @return the lower case commands (without the /) this alert triggers on
+     */
+    public Set<String> getCommandTriggers() {
+        return commandTriggers;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public boolean isIgnoreCancelled() {
+        return ignoreCancelled;
+    }
+
+    public List<String> getChannels() {
+        return channels;
+    }
+
+    public List<Condition> getConditions() {
+        return conditions;
+    }
+
+    /**
+     * @return a copy of this alert's message format for sending it now, parsed once per config (re)load by the
+     * message snapshot, which also gives it the current time if its timestamp is enabled
+     */
+    public MessageFormat getMessageFormat() {
+        return DiscordSRV.getPlugin().getMessageFromConfiguration("Alerts." + index);
+    }
+
+    /**
+     * @return the channels this alert is sent to, resolved from the configured game channel names, channel names
+     * or ids until every one of them could be found
+     */
+    public Set<TextChannel> getTextChannels() {
+        long[] ids = channelIds;
+        if (ids == null) {
+            Map<String, Set<TextChannel>> resolved = resolveTextChannels();
+            Set<TextChannel> textChannels = new HashSet<>();
+            resolved.values().forEach(textChannels::addAll);
+            // some might not be available yet, try them again next time
+            if (textChannels.isEmpty() || resolved.values().stream().anyMatch(Set::isEmpty)) return textChannels;
+
+            channelIds = textChannels.stream().mapToLong(TextChannel::getIdLong).toArray();
+            return textChannels;
+        }
+
+        Set<TextChannel> textChannels = new HashSet<>();
+        for (long id : ids) {
+            TextChannel textChannel = DiscordUtil.getJda().getTextChannelById(id);
+            if (textChannel != null) textChannels.add(textChannel);
+        }
+        return textChannels;
+    }
+
+    /**
+     * @return the channels each configured channel resolved to, the first way of resolving them that found any
+     */
+    private Map<String, Set<TextChannel>> resolveTextChannels() {
+        if (DiscordUtil.getJda() == null) return Collections.emptyMap();
+
+        Function<Function<String, Collection<TextChannel>>, Map<String, Set<TextChannel>>> channelResolver = converter -> {
+            Map<String, Set<TextChannel>> textChannels = new HashMap<>();
+            boolean any = false;
+            for (String channel : channels) {
+                Set<TextChannel> converted = new HashSet<>();
+                Collection<TextChannel> found = converter.apply(channel);
+                if (found != null) converted.addAll(found);
+                converted.removeIf(Objects::isNull);
+                textChannels.put(channel, converted);
+                any |= !converted.isEmpty();
+            }
+            return any ? textChannels : null;
+        };
+
+        Map<String, Set<TextChannel>> textChannels = channelResolver.apply(s ->
+                Collections.singleton(DiscordSRV.getPlugin().getDestinationTextChannelForGameChannelName(s)));
+        if (textChannels == null) {
+            textChannels = channelResolver.apply(s -> DiscordUtil.getJda().getTextChannelsByName(s, false));
+        }
+        if (textChannels == null) {
+            textChannels = channelResolver.apply(s -> NumberUtils.isDigits(s)
+                    ? Collections.singleton(DiscordUtil.getJda().getTextChannelById(s))
+                    : null);
+        }
+        return textChannels != null ? textChannels : Collections.emptyMap();
+    }
+
+    public static class Condition {
+
+        private final String source;
+        private final Expression expression;
+
+        private Condition(String source, Expression expression) {
+            this.source = source;
+            this.expression = expression;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public Expression getExpression() {
+            return expression;
+        }
+
+    }
+
+}
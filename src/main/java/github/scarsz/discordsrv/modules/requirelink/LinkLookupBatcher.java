@@ -0,0 +1,163 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.modules.requirelink;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>Looks up the Discord ids of players logging in, in batches. While a batch is being looked up, the players
+ * logging in after it wait for the next one, so a login storm turns into a handful of backend queries instead of one
+ * per player. Players logging in more than once at the same time share one lookup.</p>
+ * <p>Players that turned out not to be linked are remembered for a short while, as they're likely to try again
+ * right away. {@link #invalidate(UUID)} forgets that when they link.</p>
+ */
+public class LinkLookupBatcher {
+
+    public static final int MAX_BATCH_SIZE = 128;
+
+    private final Function<Set<UUID>, Map<UUID, String>> backend;
+    private final Executor executor;
+    private final long negativeCacheMillis;
+    private final LongSupplier clock;
+
+    private final Map<UUID, CompletableFuture<String>> lookups = new ConcurrentHashMap<>();
+    private final Map<UUID, Long> unlinkedUntil = new ConcurrentHashMap<>();
+    private final Deque<UUID> queued = new ArrayDeque<>(); // guarded by this
+    private boolean running = false; // guarded by this
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param backend looks up the Discord ids of the given players, leaving out the ones that aren't linked,
+     *                returning null if it failed
+     * @param executor the executor batches are looked up on
+     * @param negativeCacheMillis how long to remember that a player isn't linked
+     * @param clock the current time in milliseconds
+     */
+    public LinkLookupBatcher(Function<Set<UUID>, Map<UUID, String>> backend, Executor executor, long negativeCacheMillis, LongSupplier clock) {
+        this.backend = backend;
+        this.executor = executor;
+        this.negativeCacheMillis = negativeCacheMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @return a future for the player's Discord id, or {@code null} if they aren't linked
+     */
+    public CompletableFuture<String> getDiscordId(UUID uuid) {
+        Long until = unlinkedUntil.get(uuid);
+        if (until != null) {
+            if (until > clock.getAsLong()) return CompletableFuture.completedFuture(null);
+            unlinkedUntil.remove(uuid, until);
+        }
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> existing = lookups.putIfAbsent(uuid, future);
+        if (existing != null) return existing;
+
+        boolean start;
+        synchronized (this) {
+            queued.add(uuid);
+            start = !running;
+            running = true;
+        }
+        if (start) {
+            try {
+                executor.execute(this::run);
+            } catch (Throwable t) {
+                Set<UUID> all;
+                synchronized (this) {
+                    running = false;
+                    all = new LinkedHashSet<>(queued);
+                    queued.clear();
+                }
+                fail(all, t);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Forget that the given player wasn't linked, for when they just linked
+     */
+    public void invalidate(UUID uuid) {
+        invalidations.incrementAndGet();
+        unlinkedUntil.remove(uuid);
+    }
+
+    private void run() {
+        while (true) {
+            Set<UUID> batch;
+            synchronized (this) {
+                if (queued.isEmpty()) {
+                    running = false;
+                    return;
+                }
+                batch = drain();
+            }
+
+            long invalidationsBefore = invalidations.get();
+            Map<UUID, String> results;
+            try {
+                results = backend.apply(batch);
+                if (results == null) throw new IllegalStateException("Failed to look up linked accounts");
+            } catch (Throwable t) {
+                fail(batch, t);
+                continue;
+            }
+
+            // an account linked during the lookup may have been missed, don't remember it as not linked
+            boolean cacheUnlinked = invalidationsBefore == invalidations.get();
+            long now = clock.getAsLong();
+            long until = now + negativeCacheMillis;
+            unlinkedUntil.values().removeIf(time -> time <= now);
+            for (UUID uuid : batch) {
+                String discordId = results.get(uuid);
+                if (discordId == null && cacheUnlinked) unlinkedUntil.put(uuid, until);
+                CompletableFuture<String> future = lookups.remove(uuid);
+                if (future != null) future.complete(discordId);
+            }
+        }
+    }
+
+    private Set<UUID> drain() {
+        Set<UUID> batch = new LinkedHashSet<>();
+        synchronized (this) {
+            while (!queued.isEmpty() && batch.size() < MAX_BATCH_SIZE) batch.add(queued.poll());
+        }
+        return batch;
+    }
+
+    private void fail(Set<UUID> batch, Throwable t) {
+        for (UUID uuid : batch) {
+            CompletableFuture<String> future = lookups.remove(uuid);
+            if (future != null) future.completeExceptionally(t);
+        }
+    }
+
+}
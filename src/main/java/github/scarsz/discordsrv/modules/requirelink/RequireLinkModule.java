@@ -23,6 +23,7 @@
 package github.scarsz.discordsrv.modules.requirelink;
 
 import alexh.weak.Dynamic;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import github.scarsz.discordsrv.DiscordSRV;
 import github.scarsz.discordsrv.util.DiscordUtil;
 import github.scarsz.discordsrv.util.MessageUtil;
@@ -37,51 +38,111 @@ import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
 import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.server.ServerCommandEvent;
 
 import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 
 public class RequireLinkModule implements Listener {
 
+    private static final long NEGATIVE_LINK_CACHE_MILLIS = TimeUnit.SECONDS.toMillis(3);
+    private static final long LINK_LOOKUP_TIMEOUT_SECONDS = 30;
+    private static final long ACCESS_LIST_REFRESH_TICKS = 20 * 60;
+    private static final Set<String> ACCESS_LIST_COMMANDS = new HashSet<>(Arrays.asList(
+            "whitelist", "ban", "ban-ip", "banip", "ipban", "tempban", "tempbanip",
+            "pardon", "pardon-ip", "unban", "unbanip", "ipunban"
+    ));
+
+    private volatile Settings settings;
+    private volatile AccessLists accessLists;
+    private final AtomicLong accessListRefreshes = new AtomicLong();
+    private final ThreadPoolExecutor linkLookupExecutor = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+            .setNameFormat("DiscordSRV - Link Lookup")
+            .setDaemon(true)
+            .build());
+    private final LinkLookupBatcher linkLookups = new LinkLookupBatcher(
+            uuids -> DiscordSRV.getPlugin().getAccountLinkManager().getManyDiscordIdsBypassCache(uuids),
+            linkLookupExecutor,
+            NEGATIVE_LINK_CACHE_MILLIS,
+            System::currentTimeMillis
+    );
+
     public RequireLinkModule() {
+        reload();
         Bukkit.getPluginManager().registerEvents(this, DiscordSRV.getPlugin());
+        // plugins can change the whitelist & bans without going through a command we'd notice,
+        // read off the main thread since going through every ban is slow on servers with a lot of them
+        Bukkit.getScheduler().runTaskTimerAsynchronously(DiscordSRV.getPlugin(), () -> {
+            try {
+                refreshAccessLists();
+            } catch (RuntimeException e) {
+                // changed while they were read, read again next time
+                DiscordSRV.debug("Failed to refresh the whitelist & bans: " + e);
+            }
+        }, ACCESS_LIST_REFRESH_TICKS, ACCESS_LIST_REFRESH_TICKS);
     }
 
-    private void check(String eventType, EventPriority priority, String playerName, UUID playerUuid, String ip, BiConsumer<String, String> disallow) {
-        if (!isEnabled()) return;
-        if (!eventType.equals(DiscordSRV.config().getString("Require linked account to play.Listener event"))) return;
+    /**
+     * Read the settings from the config & the whitelist & bans from the server again
+     */
+    public void reload() {
+        settings = new Settings();
+        refreshAccessLists();
+    }
+
+    /**
+     * Stop looking up linked accounts, lookups already running are finished & new ones fail
+     */
+    public void shutdown() {
+        linkLookupExecutor.shutdown();
+    }
+
+    private void refreshAccessLists() {
+        AccessLists refreshed = new AccessLists(accessListRefreshes.incrementAndGet());
+        synchronized (this) {
+            // a slower refresh that started earlier doesn't replace a newer one
+            AccessLists current = accessLists;
+            if (current == null || current.refresh < refreshed.refresh) accessLists = refreshed;
+        }
+    }
 
-        String requestedPriority = DiscordSRV.config().getString("Require linked account to play.Listener priority");
-        EventPriority targetPriority = Arrays.stream(EventPriority.values())
-                .filter(p -> p.name().equalsIgnoreCase(requestedPriority))
-                .findFirst().orElse(EventPriority.LOWEST);
-        if (priority != targetPriority) return;
+    private void check(String eventType, EventPriority priority, String playerName, UUID playerUuid, String ip, BiConsumer<String, String> disallow) {
+        Settings settings = this.settings;
+        if (!settings.enabled) return;
+        if (!eventType.equals(settings.listenerEvent)) return;
+        if (priority != settings.listenerPriority) return;
 
         try {
-            if (getBypassNames().contains(playerName)) {
+            if (settings.bypassNames.contains(playerName)) {
                 DiscordSRV.debug("Player " + playerName + " is on the bypass list, bypassing linking checks");
                 return;
             }
 
-            if (checkWhitelist()) {
-                boolean whitelisted = Bukkit.getServer().getWhitelistedPlayers().stream().map(OfflinePlayer::getUniqueId).anyMatch(u -> u.equals(playerUuid));
+            AccessLists accessLists = this.accessLists;
+            if (settings.checkWhitelist) {
+                boolean whitelisted = accessLists.whitelistedPlayers.contains(playerUuid);
                 if (whitelisted) {
                     DiscordSRV.debug("Player " + playerName + " is bypassing link requirement, player is whitelisted");
                     return;
                 }
             }
-            boolean onlyCheckBannedPlayers = onlyCheckBannedPlayers();
-            if (!checkBannedPlayers() || onlyCheckBannedPlayers) {
+            boolean onlyCheckBannedPlayers = settings.onlyCheckBannedPlayers;
+            if (!settings.checkBannedPlayers || onlyCheckBannedPlayers) {
                 boolean banned = false;
-                if (Bukkit.getServer().getBannedPlayers().stream().anyMatch(p -> p.getUniqueId().equals(playerUuid))) {
+                if (accessLists.bannedPlayers.contains(playerUuid)) {
                     if (!onlyCheckBannedPlayers) {
                         DiscordSRV.debug("Player " + playerName + " is banned, skipping linked check");
                         return;
                     }
                     banned = true;
                 }
-                if (!banned && Bukkit.getServer().getIPBans().stream().anyMatch(ip::equals)) {
+                if (!banned && accessLists.bannedIps.contains(ip)) {
                     if (!onlyCheckBannedPlayers) {
                         DiscordSRV.debug("Player " + playerName + " connecting with banned IP " + ip + ", skipping linked check");
                         return;
@@ -100,7 +161,8 @@ public class RequireLinkModule implements Listener {
                 return;
             }
 
-            String discordId = DiscordSRV.getPlugin().getAccountLinkManager().getDiscordIdBypassCache(playerUuid);
+            // looked up together with the other players logging in at the same time
+            String discordId = linkLookups.getDiscordId(playerUuid).get(LINK_LOOKUP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
             if (discordId == null) {
                 Member botMember = DiscordSRV.getPlugin().getMainGuild().getSelfMember();
                 String botName = botMember.getEffectiveName() + "#" + botMember.getUser().getDiscriminator();
@@ -204,18 +266,24 @@ public class RequireLinkModule implements Listener {
         }
     }
 
+    public void noticePlayerLink(UUID uuid) {
+        linkLookups.invalidate(uuid);
+    }
+
     public void noticePlayerUnlink(Player player) {
-        if (!isEnabled()) return;
-        if (getBypassNames().contains(player.getName())) return;
-        if (checkWhitelist()) {
-            boolean whitelisted = Bukkit.getServer().getWhitelistedPlayers().stream().map(OfflinePlayer::getUniqueId).anyMatch(u -> u.equals(player.getUniqueId()));
+        Settings settings = this.settings;
+        if (!settings.enabled) return;
+        if (settings.bypassNames.contains(player.getName())) return;
+        AccessLists accessLists = this.accessLists;
+        if (settings.checkWhitelist) {
+            boolean whitelisted = accessLists.whitelistedPlayers.contains(player.getUniqueId());
             if (whitelisted) {
                 DiscordSRV.debug("Player " + player.getName() + " is bypassing link requirement, player is whitelisted");
                 return;
             }
         }
         String ip = player.getAddress().getAddress().getHostAddress();
-        if (onlyCheckBannedPlayers() && !Bukkit.getServer().getBannedPlayers().stream().anyMatch(p -> p.getUniqueId().equals(player.getUniqueId())) && !Bukkit.getServer().getIPBans().stream().anyMatch(ip::equals)) {
+        if (settings.onlyCheckBannedPlayers && !accessLists.bannedPlayers.contains(player.getUniqueId()) && !accessLists.bannedIps.contains(ip)) {
             DiscordSRV.debug("Player " + player.getName() + " is bypassing link requirement because \"Only check banned players\" is enabled");
             return;
         }
@@ -224,27 +292,12 @@ public class RequireLinkModule implements Listener {
         Bukkit.getScheduler().runTask(DiscordSRV.getPlugin(), () -> player.kickPlayer(MessageUtil.translateLegacy(getUnlinkedKickMessage())));
     }
 
-    private boolean checkWhitelist() {
-        return DiscordSRV.config().getBoolean("Require linked account to play.Whitelisted players bypass check");
-    }
-    private boolean checkBannedPlayers() {
-        return DiscordSRV.config().getBoolean("Require linked account to play.Check banned players");
-    }
-    private boolean onlyCheckBannedPlayers() {
-        return DiscordSRV.config().getBoolean("Require linked account to play.Only check banned players");
-    }
     private boolean getAllSubRolesRequired() {
         return DiscordSRV.config().getBoolean("Require linked account to play.Subscriber role.Require all of the listed roles");
     }
-    private boolean isEnabled() {
-        return DiscordSRV.config().getBoolean("Require linked account to play.Enabled");
-    }
     private boolean isSubRoleRequired() {
         return DiscordSRV.config().getBoolean("Require linked account to play.Subscriber role.Require subscriber role to join");
     }
-    private Set<String> getBypassNames() {
-        return new HashSet<>(DiscordSRV.config().getStringList("Require linked account to play.Bypass names"));
-    }
     private String getDiscordSRVStillStartingKickMessage() {
         return DiscordSRV.config().getString("Require linked account to play.Messages.DiscordSRV still starting");
     }
@@ -261,6 +314,23 @@ public class RequireLinkModule implements Listener {
         return DiscordSRV.config().getString("Require linked account to play.Messages.Kicked for unlinking");
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerCommand(PlayerCommandPreprocessEvent event) {
+        noticeCommand(event.getMessage());
+    }
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onServerCommand(ServerCommandEvent event) {
+        noticeCommand(event.getCommand());
+    }
+    private void noticeCommand(String command) {
+        String label = StringUtils.removeStart(command.trim(), "/").split(" ", 2)[0].toLowerCase();
+        label = label.substring(label.indexOf(':') + 1); // minecraft:ban, essentials:ban etc.
+        if (!ACCESS_LIST_COMMANDS.contains(label)) return;
+
+        // the command runs after its event, see what it changed once it's done
+        Bukkit.getScheduler().runTask(DiscordSRV.getPlugin(), this::refreshAccessLists);
+    }
+
     @EventHandler(priority = EventPriority.LOWEST)
     public void onEventLowest(AsyncPlayerPreLoginEvent event) {
         if (!event.getLoginResult().equals(AsyncPlayerPreLoginEvent.Result.ALLOWED)) {
@@ -343,4 +413,44 @@ public class RequireLinkModule implements Listener {
         check(event.getClass().getSimpleName(), EventPriority.HIGHEST, event.getPlayer().getName(), event.getPlayer().getUniqueId(), event.getAddress().getHostAddress(), (result, message) -> event.disallow(PlayerLoginEvent.Result.valueOf(result), message));
     }
 
+    /**
+     * The settings read for every login, as they were when the config was (re)loaded
+     */
+    private static class Settings {
+
+        private final boolean enabled = DiscordSRV.config().getBoolean("Require linked account to play.Enabled");
+        private final String listenerEvent = DiscordSRV.config().getString("Require linked account to play.Listener event");
+        private final EventPriority listenerPriority;
+        private final Set<String> bypassNames = new HashSet<>(DiscordSRV.config().getStringList("Require linked account to play.Bypass names"));
+        private final boolean checkWhitelist = DiscordSRV.config().getBoolean("Require linked account to play.Whitelisted players bypass check");
+        private final boolean checkBannedPlayers = DiscordSRV.config().getBoolean("Require linked account to play.Check banned players");
+        private final boolean onlyCheckBannedPlayers = DiscordSRV.config().getBoolean("Require linked account to play.Only check banned players");
+
+        private Settings() {
+            String requestedPriority = DiscordSRV.config().getString("Require linked account to play.Listener priority");
+            listenerPriority = Arrays.stream(EventPriority.values())
+                    .filter(p -> p.name().equalsIgnoreCase(requestedPriority))
+                    .findFirst().orElse(EventPriority.LOWEST);
+        }
+
+    }
+
+    /**
+     * The whitelisted & banned players and banned IPs as they were when they were last read from the server
+     */
+    private static class AccessLists {
+
+        private final long refresh;
+        private final Set<UUID> whitelistedPlayers = new HashSet<>();
+        private final Set<UUID> bannedPlayers = new HashSet<>();
+        private final Set<String> bannedIps = new HashSet<>(Bukkit.getServer().getIPBans());
+
+        private AccessLists(long refresh) {
+            this.refresh = refresh;
+            for (OfflinePlayer player : Bukkit.getServer().getWhitelistedPlayers()) whitelistedPlayers.add(player.getUniqueId());
+            for (OfflinePlayer player : Bukkit.getServer().getBannedPlayers()) bannedPlayers.add(player.getUniqueId());
+        }
+
+    }
+
 }
@@ -41,6 +41,14 @@ public class Network {
         this.channel = channel;
     }
 
+    /**
+     * A network of the given players in an existing channel, or without one if it's null
+     */
+    Network(Set<UUID> players, String channel) {
+        this.players = players;
+        this.channel = channel;
+    }
+
     public Network(Set<UUID> players) {
         this.players = players;
 
@@ -71,7 +79,6 @@ public class Network {
     }
 
     public Network engulf(Network network) {
-        DiscordSRV.debug("Network " + this + " is engulfing " + network);
         players.addAll(network.players);
         network.players.clear();
         return this;
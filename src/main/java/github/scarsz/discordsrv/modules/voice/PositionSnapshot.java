@@ -0,0 +1,176 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.modules.voice;
+
+import java.util.*;
+
+/**
+ * <p>Where the online players were when a voice tick started, taken on the main thread for the tick to use
+ * asynchronously without touching any live {@link org.bukkit.Location}s.</p>
+ * <p>Players are numbered from 0 in the order they were added, their coordinates are kept in one flat array
+ * & their worlds as numbers, so comparing positions doesn't chase any references.</p>
+ */
+public class PositionSnapshot {
+
+    public static final PositionSnapshot EMPTY = new Builder(0).build();
+
+    private final int size;
+    private final UUID[] uuids;
+    private final String[] names;
+    private final int[] worlds;
+    private final String[] worldNames;
+    private final double[] coordinates; // x, y, z of each player after each other
+    private final boolean[] dead;
+    private final Map<UUID, Integer> indexes;
+
+    private PositionSnapshot(Builder builder) {
+        this.size = builder.size;
+        this.uuids = Arrays.copyOf(builder.uuids, size);
+        this.names = Arrays.copyOf(builder.names, size);
+        this.worlds = Arrays.copyOf(builder.worlds, size);
+        this.worldNames = builder.worldIds.keySet().toArray(new String[0]);
+        this.coordinates = Arrays.copyOf(builder.coordinates, size * 3);
+        this.dead = Arrays.copyOf(builder.dead, size);
+        this.indexes = new HashMap<>(builder.indexes);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the index of the player with the given uuid, or -1 if they weren't online
+     */
+    public int indexOf(UUID uuid) {
+        Integer index = indexes.get(uuid);
+        return index != null ? index : -1;
+    }
+
+    public UUID getUniqueId(int index) {
+        return uuids[index];
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * @return the number of the player's world, the same for every player in the same world
+     */
+    public int getWorld(int index) {
+        return worlds[index];
+    }
+
+    public String getWorldName(int index) {
+        return worldNames[worlds[index]];
+    }
+
+    public double getX(int index) {
+        return coordinates[index * 3];
+    }
+
+    public double getY(int index) {
+        return coordinates[index * 3 + 1];
+    }
+
+    public double getZ(int index) {
+        return coordinates[index * 3 + 2];
+    }
+
+    public boolean isDead(int index) {
+        return dead[index];
+    }
+
+    /**
+     * @return whether the two players are in the same world & within both distances of each other
+     */
+    public boolean isInRange(int index1, int index2, double horizontal, double vertical) {
+        if (worlds[index1] != worlds[index2]) return false;
+
+        double dx = coordinates[index1 * 3] - coordinates[index2 * 3];
+        double dy = coordinates[index1 * 3 + 1] - coordinates[index2 * 3 + 1];
+        double dz = coordinates[index1 * 3 + 2] - coordinates[index2 * 3 + 2];
+        return Math.sqrt(dy * dy) <= vertical && Math.sqrt(dx * dx + dz * dz) <= horizontal;
+    }
+
+    public static class Builder {
+
+        private int size = 0;
+        private UUID[] uuids;
+        private String[] names;
+        private int[] worlds;
+        private double[] coordinates;
+        private boolean[] dead;
+        private final Map<String, Integer> worldIds = new LinkedHashMap<>();
+        private final Map<UUID, Integer> indexes = new HashMap<>();
+
+        /**
+         * @param expectedSize how many players are expected to be added, more can be
+         */
+        public Builder(int expectedSize) {
+            int capacity = Math.max(1, expectedSize);
+            uuids = new UUID[capacity];
+            names = new String[capacity];
+            worlds = new int[capacity];
+            coordinates = new double[capacity * 3];
+            dead = new boolean[capacity];
+        }
+
+        /**
+         * Add a player, replacing them if they were added before
+         */
+        public Builder add(UUID uuid, String name, String world, double x, double y, double z, boolean isDead) {
+            Integer existing = indexes.get(uuid);
+            int index = existing != null ? existing : size;
+            if (existing == null) {
+                if (size == uuids.length) grow();
+                indexes.put(uuid, index);
+                size++;
+            }
+
+            uuids[index] = uuid;
+            names[index] = name;
+            worlds[index] = worldIds.computeIfAbsent(world, w -> worldIds.size());
+            coordinates[index * 3] = x;
+            coordinates[index * 3 + 1] = y;
+            coordinates[index * 3 + 2] = z;
+            dead[index] = isDead;
+            return this;
+        }
+
+        private void grow() {
+            int capacity = uuids.length * 2;
+            uuids = Arrays.copyOf(uuids, capacity);
+            names = Arrays.copyOf(names, capacity);
+            worlds = Arrays.copyOf(worlds, capacity);
+            coordinates = Arrays.copyOf(coordinates, capacity * 3);
+            dead = Arrays.copyOf(dead, capacity);
+        }
+
+        public PositionSnapshot build() {
+            return new PositionSnapshot(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,117 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.modules.voice;
+
+import java.util.*;
+
+/**
+ * <p>The players of a {@link PositionSnapshot}, bucketed per world into square columns of a fixed size so the
+ * players near someone can be found without measuring the distance to everyone else.</p>
+ * <p>Looking for players within a horizontal distance no larger than the cell size only has to look at the cell the
+ * player is in & the eight around it.</p>
+ */
+public class ProximityGrid {
+
+    private static final int[] NONE = new int[0];
+
+    private final PositionSnapshot positions;
+    private final double cellSize;
+    private final List<Map<Long, Cell>> cells = new ArrayList<>(); // by world
+
+    /**
+     * @param positions the positions of the players
+     * @param cellSize the width & length of the cells, should be the largest horizontal distance looked for
+     */
+    public ProximityGrid(PositionSnapshot positions, double cellSize) {
+        if (!(cellSize > 0)) throw new IllegalArgumentException("Cell size must be positive, got " + cellSize);
+        this.positions = positions;
+        this.cellSize = cellSize;
+
+        for (int index = 0; index < positions.size(); index++) {
+            int world = positions.getWorld(index);
+            while (cells.size() <= world) cells.add(new HashMap<>());
+            cells.get(world)
+                    .computeIfAbsent(key(cell(positions.getX(index)), cell(positions.getZ(index))), key -> new Cell())
+                    .add(index);
+        }
+    }
+
+    public PositionSnapshot getPositions() {
+        return positions;
+    }
+
+    /**
+     * @param index the index of the player in the snapshot to look around
+     * @param horizontal the maximum horizontal distance
+     * @param vertical the maximum vertical distance
+     * @return the indexes of the other players in the same world within both distances of the given player
+     */
+    public int[] getNearby(int index, double horizontal, double vertical) {
+        int world = positions.getWorld(index);
+        Map<Long, Cell> worldCells = world < cells.size() ? cells.get(world) : null;
+        if (worldCells == null) return NONE;
+
+        // one cell in every direction is enough unless looking further than the cells are wide
+        int reach = Math.max(1, (int) Math.ceil(horizontal / cellSize));
+        long cellX = cell(positions.getX(index));
+        long cellZ = cell(positions.getZ(index));
+
+        int[] nearby = NONE;
+        int count = 0;
+        for (long x = cellX - reach; x <= cellX + reach; x++) {
+            for (long z = cellZ - reach; z <= cellZ + reach; z++) {
+                Cell cell = worldCells.get(key(x, z));
+                if (cell == null) continue;
+
+                for (int i = 0; i < cell.size; i++) {
+                    int other = cell.players[i];
+                    if (other == index || !positions.isInRange(index, other, horizontal, vertical)) continue;
+                    if (count == nearby.length) nearby = Arrays.copyOf(nearby, Math.max(4, count * 2));
+                    nearby[count++] = other;
+                }
+            }
+        }
+        return count == nearby.length ? nearby : Arrays.copyOf(nearby, count);
+    }
+
+    private long cell(double coordinate) {
+        return (long) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(long cellX, long cellZ) {
+        return (cellX << 32) ^ (cellZ & 0xFFFFFFFFL);
+    }
+
+    private static class Cell {
+
+        private int[] players = new int[4];
+        private int size = 0;
+
+        private void add(int index) {
+            if (size == players.length) players = Arrays.copyOf(players, size * 2);
+            players[size++] = index;
+        }
+
+    }
+
+}
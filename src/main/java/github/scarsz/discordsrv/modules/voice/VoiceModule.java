@@ -55,6 +55,9 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class VoiceModule extends ListenerAdapter implements Listener {
@@ -63,7 +66,8 @@ public class VoiceModule extends ListenerAdapter implements Listener {
     private static final List<Permission> CATEGORY_REQUIRED_PERMISSIONS = Arrays.asList(Permission.VIEW_CHANNEL, Permission.VOICE_MOVE_OTHERS, Permission.MANAGE_PERMISSIONS, Permission.MANAGE_CHANNEL);
 
     private final ReentrantLock lock = new ReentrantLock();
-    private Set<UUID> dirtyPlayers = new HashSet<>();
+    private final Set<UUID> dirtyPlayers = ConcurrentHashMap.newKeySet();
+    private final Location location = new Location(null, 0, 0, 0); // main thread only, reused for taking positions
     @Getter
     private final Set<Network> networks = ConcurrentHashMap.newKeySet();
     @Getter
@@ -76,14 +80,11 @@ public class VoiceModule extends ListenerAdapter implements Listener {
         if (DiscordSRV.config().getBoolean("Voice enabled")) {
             DiscordSRV.getPlugin().getJda().addEventListener(this);
             Bukkit.getPluginManager().registerEvents(this, DiscordSRV.getPlugin());
-            Bukkit.getScheduler().runTaskLater(DiscordSRV.getPlugin(), () ->
-                    Bukkit.getScheduler().runTaskTimerAsynchronously(
-                            DiscordSRV.getPlugin(),
-                            this::tick,
-                            0,
-                            DiscordSRV.config().getInt("Tick speed")
-                    ),
-                    0
+            Bukkit.getScheduler().runTaskTimer(
+                    DiscordSRV.getPlugin(),
+                    this::scheduleTick,
+                    0,
+                    DiscordSRV.config().getInt("Tick speed")
             );
         }
 
@@ -106,11 +107,45 @@ public class VoiceModule extends ListenerAdapter implements Listener {
         }
     }
 
-    private void tick() {
+    /**
+     * Takes the players that moved & the positions of the online players on the main thread, where they can be read
+     * safely, and ticks with them asynchronously
+     */
+    private void scheduleTick() {
+        List<UUID> dirty = new ArrayList<>();
+        Iterator<UUID> dirtyIterator = dirtyPlayers.iterator();
+        while (dirtyIterator.hasNext()) {
+            dirty.add(dirtyIterator.next());
+            // players marked again from here on are checked next tick
+            dirtyIterator.remove();
+        }
+
+        PositionSnapshot positions = PositionSnapshot.EMPTY;
+        // the positions are only needed to check the players that moved
+        if (!dirty.isEmpty()) {
+            List<Player> players = PlayerUtil.getOnlinePlayerSnapshot().getPlayers();
+            PositionSnapshot.Builder builder = new PositionSnapshot.Builder(players.size());
+            for (Player player : players) {
+                player.getLocation(location);
+                builder.add(player.getUniqueId(), player.getName(), location.getWorld().getName(),
+                        location.getX(), location.getY(), location.getZ(), player.isDead());
+            }
+            location.setWorld(null);
+            positions = builder.build();
+        }
+
+        PositionSnapshot tickPositions = positions;
+        Bukkit.getScheduler().runTaskAsynchronously(DiscordSRV.getPlugin(), () -> tick(dirty, tickPositions));
+    }
+
+    private void tick(List<UUID> dirty, PositionSnapshot positions) {
         if (!lock.tryLock()) {
+            // check them in the next tick that does run
+            dirtyPlayers.addAll(dirty);
             DiscordSRV.debug("Skipping voice module tick, a tick is already in progress");
             return;
         }
+        boolean checkedDirtyPlayers = false;
         try {
             Category category = getCategory();
             if (category == null) {
@@ -176,31 +211,34 @@ public class VoiceModule extends ListenerAdapter implements Listener {
             // remove networks that have no voice channel
             networks.removeIf(network -> network.getChannel() == null && network.isInitialized());
 
-            Set<Player> alivePlayers = PlayerUtil.getOnlinePlayers().stream()
-                    .filter(player -> !player.isDead())
-                    .collect(Collectors.toSet());
+            double horizontalStrength = getHorizontalStrength();
+            double verticalStrength = getVerticalStrength();
+            double falloff = getFalloff();
+            double horizontalFalloffRange = Math.max(horizontalStrength, horizontalStrength + falloff);
+            // only the players within the falloff range of a player matter to them, that's all the cells have to cover
+            ProximityGrid grid = new ProximityGrid(positions, Math.max(1, horizontalFalloffRange));
 
-            Set<UUID> oldDirtyPlayers = dirtyPlayers;
-            dirtyPlayers = new HashSet<>();
-            for (UUID uuid : oldDirtyPlayers) {
-                Player player = Bukkit.getPlayer(uuid);
-                if (player == null) continue;
+            checkedDirtyPlayers = true;
+            for (UUID uuid : dirty) {
+                int player = positions.indexOf(uuid);
+                if (player == -1) continue;
+                String playerName = positions.getName(player);
 
-                Member member = getMember(player.getUniqueId());
+                Member member = getMember(uuid);
                 if (member == null) {
-                    DiscordSRV.debug("Player " + player.getName() + " isn't linked, skipping voice checks");
+                    DiscordSRV.debug("Player " + playerName + " isn't linked, skipping voice checks");
                     continue;
                 }
 
                 if (member.getVoiceState() == null || member.getVoiceState().getChannel() == null) {
-                    DiscordSRV.debug("Player " + player.getName() + " is not connected to voice");
+                    DiscordSRV.debug("Player " + playerName + " is not connected to voice");
                     continue;
                 }
 
                 VoiceChannel playerChannel = member.getVoiceState().getChannel();
                 boolean isLobby = playerChannel.getId().equals(getLobbyChannel().getId());
                 if (!isLobby && (playerChannel.getParent() == null || !playerChannel.getParent().getId().equals(getCategory().getId()))) {
-                    DiscordSRV.debug("Player " + player.getName() + " was not in the voice lobby or category");
+                    DiscordSRV.debug("Player " + playerName + " was not in the voice lobby or category");
 
                     // cancel existing moves if they changed to a different channel
                     Pair<String, CompletableFuture<Void>> pair = awaitingMoves.get(member.getId());
@@ -208,54 +246,22 @@ public class VoiceModule extends ListenerAdapter implements Listener {
                     continue;
                 }
 
-                // add player to networks that they may have came into contact with
-                // and combine multiple networks if the player is connecting them together
-                networks.stream()
-                        .filter(network -> network.isPlayerInRangeToBeAdded(player))
-                        // combine multiple networks if player is bridging both of them together
-                        .reduce((network1, network2) -> network1.size() > network2.size() ? network1.engulf(network2) : network2.engulf(network1))
-                        // add the player to the network if they aren't in it already
-                        .filter(network -> !network.contains(player.getUniqueId()))
-                        .ifPresent(network -> {
-                            DiscordSRV.debug(player.getName() + " has entered network " + network + "'s influence, connecting");
-                            network.add(player.getUniqueId());
-                        });
-
-                // remove player from networks that they lost connection to
-                networks.stream()
-                        .filter(network -> network.contains(player.getUniqueId()))
-                        .filter(network -> !network.isPlayerInRangeToStayConnected(player))
-                        .forEach(network -> {
-                            DiscordSRV.debug("Player " + player.getName() + " lost connection to " + network + ", disconnecting");
-                            network.remove(player.getUniqueId());
-                            if (network.size() == 1) network.clear();
-                        });
-
-                // create networks if two players are within activation distance
-                Set<UUID> playersWithinRange = alivePlayers.stream()
-                        .filter(p -> networks.stream().noneMatch(network -> network.contains(p)))
-                        .filter(p -> !p.equals(player))
-                        .filter(p -> p.getWorld().getName().equals(player.getWorld().getName()))
-                        .filter(p -> horizontalDistance(p.getLocation(), player.getLocation()) <= getHorizontalStrength()
-                                && verticalDistance(p.getLocation(), player.getLocation()) <= getVerticalStrength())
-                        .filter(p -> {
-                            Member m = getMember(p.getUniqueId());
+                updateNetworks(networks, positions, grid, player, horizontalStrength, verticalStrength, falloff,
+                        p -> {
+                            Member m = getMember(p);
                             return m != null && m.getVoiceState() != null
                                     && m.getVoiceState().getChannel() != null
                                     && m.getVoiceState().getChannel().getParent() != null
                                     && m.getVoiceState().getChannel().getParent().equals(category);
-                        })
-                        .map(Player::getUniqueId)
-                        .collect(Collectors.toCollection(ConcurrentHashMap::newKeySet));
-                if (playersWithinRange.size() > 0) {
-                    if (category.getChannels().size() == 50) {
-                        DiscordSRV.debug("Can't create new voice network because category " + category.getName() + " is full of channels");
-                        continue;
-                    }
-
-                    playersWithinRange.add(uuid);
-                    networks.add(new Network(playersWithinRange));
-                }
+                        },
+                        players -> {
+                            if (category.getChannels().size() == 50) {
+                                DiscordSRV.debug("Can't create new voice network because category " + category.getName() + " is full of channels");
+                                return null;
+                            }
+                            return new Network(players);
+                        },
+                        DiscordSRV::debug);
             }
 
             // handle moving players between channels
@@ -317,10 +323,80 @@ public class VoiceModule extends ListenerAdapter implements Listener {
                 }
             }
         } finally {
+            // skipped checking them, check them in the next tick
+            if (!checkedDirtyPlayers) dirtyPlayers.addAll(dirty);
             lock.unlock();
         }
     }
 
+    /**
+     * Connects the player to, disconnects them from & merges the networks of the players around them, the part of a
+     * tick that doesn't talk to Discord
+     * @param networks the networks to change
+     * @param positions the positions of the players
+     * @param grid the grid of the positions
+     * @param player the index of the player in the positions
+     * @param canConnect whether or not a player that isn't in a network can be put in a new one
+     * @param createNetwork makes a network of the given players, or returns null if it can't be made
+     * @param debug where the changes are logged to
+     */
+    static void updateNetworks(Set<Network> networks, PositionSnapshot positions, ProximityGrid grid, int player,
+                               double horizontalStrength, double verticalStrength, double falloff,
+                               Predicate<UUID> canConnect, Function<Set<UUID>, Network> createNetwork,
+                               Consumer<String> debug) {
+        UUID uuid = positions.getUniqueId(player);
+        String playerName = positions.getName(player);
+        double horizontalFalloffRange = Math.max(horizontalStrength, horizontalStrength + falloff);
+        double verticalFalloffRange = Math.max(verticalStrength, verticalStrength + falloff);
+
+        // the players close enough to stay connected to, and of those the ones close enough to connect to
+        int[] playersInFalloffRange = grid.getNearby(player, horizontalFalloffRange, verticalFalloffRange);
+        int[] playersInRange = Arrays.stream(playersInFalloffRange)
+                .filter(p -> positions.isInRange(player, p, horizontalStrength, verticalStrength))
+                .toArray();
+
+        // add player to networks that they may have came into contact with
+        // and combine multiple networks if the player is connecting them together
+        networks.stream()
+                .filter(network -> Arrays.stream(playersInRange).anyMatch(p -> network.contains(positions.getUniqueId(p))))
+                // combine multiple networks if player is bridging both of them together
+                .reduce((network1, network2) -> {
+                    Network engulfing = network1.size() > network2.size() ? network1 : network2;
+                    Network engulfed = engulfing == network1 ? network2 : network1;
+                    debug.accept("Network " + engulfing + " is engulfing " + engulfed);
+                    return engulfing.engulf(engulfed);
+                })
+                // add the player to the network if they aren't in it already
+                .filter(network -> !network.contains(uuid))
+                .ifPresent(network -> {
+                    debug.accept(playerName + " has entered network " + network + "'s influence, connecting");
+                    network.add(uuid);
+                });
+
+        // remove player from networks that they lost connection to
+        networks.stream()
+                .filter(network -> network.contains(uuid))
+                .filter(network -> Arrays.stream(playersInFalloffRange).noneMatch(p -> network.contains(positions.getUniqueId(p))))
+                .forEach(network -> {
+                    debug.accept("Player " + playerName + " lost connection to " + network + ", disconnecting");
+                    network.remove(uuid);
+                    if (network.size() == 1) network.clear();
+                });
+
+        // create networks if two players are within activation distance
+        Set<UUID> playersWithinRange = Arrays.stream(playersInRange)
+                .filter(p -> !positions.isDead(p))
+                .mapToObj(positions::getUniqueId)
+                .filter(p -> networks.stream().noneMatch(network -> network.contains(p)))
+                .filter(canConnect)
+                .collect(Collectors.toCollection(ConcurrentHashMap::newKeySet));
+        if (playersWithinRange.size() > 0) {
+            playersWithinRange.add(uuid);
+            Network network = createNetwork.apply(playersWithinRange);
+            if (network != null) networks.add(network);
+        }
+    }
+
     @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
     public void onPlayerJoin(PlayerJoinEvent event) {
         markDirty(event.getPlayer());
@@ -328,6 +404,12 @@ public class VoiceModule extends ListenerAdapter implements Listener {
 
     @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
     public void onPlayerMove(PlayerMoveEvent event) {
+        // looking around & moving within a block doesn't change anything worth checking
+        Location from = event.getFrom();
+        Location to = event.getTo();
+        if (to != null && from.getBlockX() == to.getBlockX() && from.getBlockY() == to.getBlockY()
+                && from.getBlockZ() == to.getBlockZ() && Objects.equals(from.getWorld(), to.getWorld())) return;
+
         markDirty(event.getPlayer());
     }
 
@@ -0,0 +1,312 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.util.DiscordUtil;
+import github.scarsz.discordsrv.util.MessageUtil;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.MessageBuilder;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.TextChannel;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Merges chat lines going to the same text channel into as few messages as possible, for servers with enough
+ * players talking that sending every line as its own message runs into the channel's rate limit.</p>
+ * <p>A line going to a channel with nothing waiting is sent after a short window, so lines sent right after it
+ * go along. Each channel has at most one message being sent at a time: while JDA holds it back for the rate limit
+ * bucket, new lines pile up and all go out (up to {@link Message#MAX_CONTENT_LENGTH}) as soon as it's through. Quiet
+ * channels get every line on its own after the window, busy ones get fewer, bigger messages instead of a growing
+ * backlog of requests.</p>
+ */
+public class ChatMessageBatcher {
+
+    private static final long DISCONNECTED_RETRY_MILLIS = 3000;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final Map<Long, ChannelBatch> batches = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor; // guarded by this
+    private boolean shutdown = false; // guarded by this
+
+    private final LongAdder linesSent = new LongAdder();
+    private final LongAdder messagesSent = new LongAdder();
+    private final AtomicLong largestBatch = new AtomicLong();
+    private final LongAdder totalLatencyMillis = new LongAdder();
+    private final AtomicLong highestLatencyMillis = new AtomicLong();
+    private final LongAdder linesFailed = new LongAdder();
+
+    /**
+     * Queue the given line to be sent to the given channel with the other lines queued for it
+     * @param channel the channel to send the line to
+     * @param line the line to send
+     */
+    public void queue(TextChannel channel, String line) {
+        if (channel == null) {
+            DiscordSRV.debug("Tried sending a message to a null channel");
+            return;
+        }
+        if (StringUtils.isBlank(line)) {
+            DiscordSRV.debug("Tried sending a blank message to " + channel);
+            return;
+        }
+
+        ScheduledExecutorService executor = getExecutor();
+        if (executor == null) {
+            // shutting down, don't leave the line behind
+            DiscordUtil.sendMessage(channel, line);
+            return;
+        }
+
+        // emotes are translated before merging so the merged message can't end up longer than it was measured
+        line = DiscordUtil.translateEmotes(MessageUtil.strip(line), channel.getGuild());
+        long time = System.currentTimeMillis();
+        List<String> parts = new ArrayList<>(1);
+        while (line.length() > Message.MAX_CONTENT_LENGTH) {
+            DiscordSRV.debug("Tried sending message with length of " + line.length() + " (" + (line.length() - Message.MAX_CONTENT_LENGTH) + " over limit)");
+            parts.add(line.substring(0, Message.MAX_CONTENT_LENGTH));
+            line = line.substring(Message.MAX_CONTENT_LENGTH);
+        }
+        parts.add(line);
+
+        ChannelBatch batch = batches.computeIfAbsent(channel.getIdLong(), ChannelBatch::new);
+        batch.add(parts, time, executor);
+    }
+
+    private synchronized ScheduledExecutorService getExecutor() {
+        if (shutdown) return null;
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("DiscordSRV - Chat Message Batcher")
+                    .setDaemon(true)
+                    .build());
+        }
+        return executor;
+    }
+
+    /**
+     * Send everything that's still queued & stop batching, waiting a few seconds for the messages to go through so
+     * they're sent before JDA is shut down
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            if (executor != null) executor.shutdownNow();
+        }
+
+        List<CompletableFuture<Void>> flushes = new ArrayList<>();
+        for (ChannelBatch batch : batches.values()) flushes.add(batch.drain());
+        try {
+            CompletableFuture.allOf(flushes.toArray(new CompletableFuture[0]))
+                    .get(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            DiscordSRV.debug("Not all batched chat messages were sent before shutting down");
+        }
+    }
+
+    /**
+     * @return the amount of lines waiting to be sent in all channels
+     */
+    public int getPendingCount() {
+        int pending = 0;
+        for (ChannelBatch batch : batches.values()) pending += batch.getPendingCount();
+        return pending;
+    }
+
+    /**
+     * @return how many lines went out in how many messages, how long they took from being queued to being sent & how many failed to send
+     */
+    public String getMetrics() {
+        long lines = linesSent.sum();
+        long messages = messagesSent.sum();
+        return lines + " lines in " + messages + " messages"
+                + ", avg batch " + (messages == 0 ? 0 : String.format("%.1f", (double) lines / messages))
+                + ", max batch " + largestBatch.get()
+                + ", avg latency " + (lines == 0 ? 0 : totalLatencyMillis.sum() / lines) + "ms"
+                + ", max latency " + highestLatencyMillis.get() + "ms"
+                + ", failed " + linesFailed.sum() + " lines"
+                + ", pending " + getPendingCount();
+    }
+
+    private void record(int lines, long latencyMillisSum, long oldestLatencyMillis) {
+        linesSent.add(lines);
+        messagesSent.increment();
+        largestBatch.accumulateAndGet(lines, Math::max);
+        totalLatencyMillis.add(latencyMillisSum);
+        highestLatencyMillis.accumulateAndGet(oldestLatencyMillis, Math::max);
+    }
+
+    private static long getWindowMillis() {
+        return Math.max(0, DiscordSRV.config().getIntElse("DiscordChatChannelMessageBatchingWindowMillis", 250));
+    }
+
+    private class ChannelBatch {
+
+        private final long channelId;
+        private final Deque<Line> lines = new ArrayDeque<>(); // guarded by this
+        private boolean scheduled = false; // guarded by this, a flush is scheduled or a message is being sent
+        private final StringBuilder message = new StringBuilder(); // guarded by this, reused to avoid garbage
+
+        private ChannelBatch(long channelId) {
+            this.channelId = channelId;
+        }
+
+        private synchronized void add(List<String> parts, long time, ScheduledExecutorService executor) {
+            for (String part : parts) lines.add(new Line(part, time));
+            if (scheduled) return;
+
+            scheduled = true;
+            schedule(executor, getWindowMillis());
+        }
+
+        private synchronized int getPendingCount() {
+            return lines.size();
+        }
+
+        private void schedule(ScheduledExecutorService executor, long delayMillis) {
+            try {
+                executor.schedule(() -> flush(executor), delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignored) {
+                // shutting down, what's left will be drained
+            }
+        }
+
+        private void flush(ScheduledExecutorService executor) {
+            try {
+                JDA jda = DiscordUtil.getJda();
+                if (jda == null || jda.getStatus() != JDA.Status.CONNECTED) {
+                    schedule(executor, DISCONNECTED_RETRY_MILLIS);
+                    return;
+                }
+
+                TextChannel channel = jda.getTextChannelById(channelId);
+                if (channel == null) {
+                    synchronized (this) {
+                        DiscordSRV.debug("Dropping " + lines.size() + " chat message(s), channel " + channelId + " is not available");
+                        lines.clear();
+                        scheduled = false;
+                    }
+                    return;
+                }
+
+                send(channel, executor, null);
+            } catch (Throwable t) {
+                DiscordSRV.error("Error while sending batched chat messages", t);
+                synchronized (this) {
+                    scheduled = false;
+                }
+            }
+        }
+
+        /**
+         * Sends the next message's worth of lines, then the next one as soon as that one is through
+         * @param executor the executor to schedule the next message on, or null to send it from the callback
+         * @param done completed once nothing is queued anymore, only when draining
+         */
+        private void send(TextChannel channel, ScheduledExecutorService executor, CompletableFuture<Void> done) {
+            List<Line> batch = new ArrayList<>();
+            String content;
+            synchronized (this) {
+                message.setLength(0);
+                Line line;
+                while ((line = lines.peek()) != null) {
+                    int length = message.length() == 0 ? line.text.length() : message.length() + 1 + line.text.length();
+                    if (length > Message.MAX_CONTENT_LENGTH) break;
+                    if (message.length() != 0) message.append('\n');
+                    message.append(line.text);
+                    batch.add(lines.poll());
+                }
+
+                if (batch.isEmpty()) {
+                    scheduled = false;
+                    if (done != null) done.complete(null);
+                    return;
+                }
+                content = message.toString();
+            }
+
+            Runnable next = () -> {
+                if (executor == null) {
+                    send(channel, null, done);
+                    return;
+                }
+                synchronized (this) {
+                    if (lines.isEmpty()) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                // these lines already waited for the previous message, don't make them wait any longer
+                schedule(executor, 0);
+            };
+            DiscordUtil.queueMessage(channel, new MessageBuilder().append(content).build(),
+                    sentMessage -> {
+                        long now = System.currentTimeMillis();
+                        long latencySum = 0;
+                        for (Line line : batch) latencySum += now - line.time;
+                        record(batch.size(), latencySum, now - batch.get(0).time);
+                        next.run();
+                    },
+                    throwable -> {
+                        linesFailed.add(batch.size());
+                        DiscordSRV.debug("Failed to send " + batch.size() + " batched chat lines to " + channel + ": " + throwable);
+                        next.run();
+                    }, false);
+        }
+
+        private CompletableFuture<Void> drain() {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            JDA jda = DiscordUtil.getJda();
+            TextChannel channel = jda != null ? jda.getTextChannelById(channelId) : null;
+            if (channel == null) {
+                done.complete(null);
+                return done;
+            }
+            // a message that's still being sent can't schedule the next one anymore, send what's left from here
+            send(channel, null, done);
+            return done;
+        }
+
+    }
+
+    private static class Line {
+
+        private final String text;
+        private final long time;
+
+        private Line(String text, long time) {
+            this.text = text;
+            this.time = time;
+        }
+
+    }
+
+}
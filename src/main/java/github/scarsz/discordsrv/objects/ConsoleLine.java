@@ -0,0 +1,36 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects;
+
+import lombok.Data;
+
+/**
+ * A console line as captured by the console appender, before any stripping, filtering or formatting
+ */
+@Data
+public class ConsoleLine {
+    private final long time;
+    private final String level;
+    private final String message;
+    private final int repeats; // amount of times the line was logged in a row, see ConsoleMessageQueue.OverflowPolicy#COALESCE
+}
@@ -28,16 +28,34 @@ import lombok.Data;
 
 @Data
 public class ConsoleMessage {
+
+    private static final MessageTemplate.Parser TEMPLATES = new MessageTemplate.Parser("date", "datetime", "level", "line");
+
     private final String timestamp;
     private final String level;
     private final String line;
 
     @Override
     public String toString() {
-        return PlaceholderUtil.replacePlaceholdersToDiscord(LangUtil.Message.CONSOLE_CHANNEL_LINE.toString())
-                .replace("%date%", timestamp)
-                .replace("%datetime%", timestamp)
-                .replace("%level%", level)
-                .replace("%line%", line);
+        String format = LangUtil.Message.CONSOLE_CHANNEL_LINE.toString();
+        MessageTemplate template = TEMPLATES.get(format);
+        if (template.hasOtherPlaceholders() || format.indexOf('\u00A7') != -1) {
+            // PlaceholderAPI has to run on the format before the line is inserted, the result can't be kept
+            template = MessageTemplate.parse(PlaceholderUtil.replacePlaceholdersToDiscord(format), TEMPLATES.getPlaceholders());
+        }
+
+        return template.render(placeholder -> {
+            switch (placeholder) {
+                case "date":
+                case "datetime":
+                    return timestamp;
+                case "level":
+                    return level;
+                case "line":
+                    return line;
+                default:
+                    return null;
+            }
+        });
     }
 }
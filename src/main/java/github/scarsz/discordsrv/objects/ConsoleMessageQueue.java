@@ -0,0 +1,263 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Bounded, lock-free ring buffer of console lines between the log4j threads capturing them and the
+ * console message queue worker processing & sending them to Discord.</p>
+ * <p>Every slot carries a sequence number telling producers & consumers whether it's free to write or ready
+ * to read, so any amount of threads can offer lines at once without locking. Polling is safe from any thread
+ * too, which is what lets producers evict the oldest line when the buffer is full.</p>
+ */
+public class ConsoleMessageQueue {
+
+    private static final AtomicReferenceFieldUpdater<ConsoleMessageQueue, Entry> LAST =
+            AtomicReferenceFieldUpdater.newUpdater(ConsoleMessageQueue.class, Entry.class, "last");
+
+    public enum OverflowPolicy {
+
+        /** Evict the oldest queued line to make room for the new one */
+        DROP_OLDEST,
+        /** Discard the new line */
+        DROP_NEWEST,
+        /** Count a repeat of the last queued line on that line (shown as ×N), discard the new line if it isn't one */
+        COALESCE;
+
+        public static OverflowPolicy parse(String value, OverflowPolicy fallback) {
+            if (value == null) return fallback;
+            try {
+                return valueOf(value.trim().toUpperCase().replace('-', '_').replace(' ', '_'));
+            } catch (IllegalArgumentException e) {
+                return fallback;
+            }
+        }
+
+    }
+
+    private final Entry[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final OverflowPolicy overflowPolicy;
+
+    private final AtomicLong head = new AtomicLong(); // next position to read
+    private final AtomicLong tail = new AtomicLong(); // next position to write
+    private volatile Entry last; // entry queued at the highest position so far, for coalescing
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param capacity the maximum amount of queued lines, rounded up to a power of two
+     */
+    public ConsoleMessageQueue(int capacity, OverflowPolicy overflowPolicy) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.buffer = new Entry[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+        this.mask = size - 1;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * @return the amount of lines currently queued
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, buffer.length));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the amount of lines accepted by the queue since it was created, including coalesced repeats
+     */
+    public long getEnqueuedCount() {
+        return enqueued.sum();
+    }
+
+    /**
+     * @return the amount of lines that were lost because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return the amount of lines that were merged into the line before them
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Queue the given console line, applying the overflow policy if the queue is full
+     * @return whether or not the line (or a repeat count for it) made it into the queue
+     */
+    public boolean offer(ConsoleLine line) {
+        Entry entry = new Entry(line);
+        while (!tryOffer(entry)) {
+            if (overflowPolicy == OverflowPolicy.COALESCE) {
+                if (coalesce(line)) {
+                    enqueued.increment();
+                    coalesced.increment();
+                    return true;
+                }
+                // the last line was taken or another line was queued after it, which may have freed room
+                if (!isFull()) continue;
+            }
+            if (overflowPolicy == OverflowPolicy.DROP_OLDEST && poll() != null) {
+                dropped.increment();
+                continue;
+            }
+            dropped.increment();
+            return false;
+        }
+
+        // producers can finish out of order, last only moves forward
+        Entry current;
+        do {
+            current = last;
+            if (current != null && current.position > entry.position) break;
+        } while (!LAST.compareAndSet(this, current, entry));
+        enqueued.increment();
+        return true;
+    }
+
+    private boolean isFull() {
+        return tail.get() - head.get() >= buffer.length;
+    }
+
+    /**
+     * Count the given line as a repeat of the last queued line, if it is one & nothing was queued after that line
+     */
+    private boolean coalesce(ConsoleLine line) {
+        Entry previous = last;
+        return previous != null
+                && previous.position == tail.get() - 1
+                && previous.isRepeatedBy(line)
+                && previous.repeat();
+    }
+
+    private boolean tryOffer(Entry entry) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    entry.position = position;
+                    buffer[index] = entry;
+                    sequences.set(index, position + 1); // publishes the entry to consumers
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false; // the slot hasn't been read since the last lap, full
+            } else {
+                position = tail.get(); // another producer took this slot
+            }
+        }
+    }
+
+    /**
+     * Take the oldest queued console line out of the queue
+     * @return the line, with the amount of times it was repeated if it was coalesced, or null if empty
+     */
+    public ConsoleLine poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    Entry entry = buffer[index];
+                    buffer[index] = null;
+                    sequences.set(index, position + buffer.length); // hand the slot back to producers
+                    return entry.take();
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null; // nothing written here yet, empty
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private static final AtomicIntegerFieldUpdater<Entry> REPEATS = AtomicIntegerFieldUpdater.newUpdater(Entry.class, "repeats");
+        private static final int TAKEN = -1;
+
+        private final ConsoleLine line;
+        private volatile int repeats;
+        private long position; // published by the slot's sequence & by last
+
+        private Entry(ConsoleLine line) {
+            this.line = line;
+            this.repeats = line.getRepeats();
+        }
+
+        private boolean isRepeatedBy(ConsoleLine other) {
+            return line.getMessage().equals(other.getMessage()) && line.getLevel().equals(other.getLevel());
+        }
+
+        /**
+         * @return false if the entry was already taken by a consumer, so the repeat has to be queued instead
+         */
+        private boolean repeat() {
+            int current;
+            do {
+                current = repeats;
+                if (current == TAKEN) return false;
+            } while (!REPEATS.compareAndSet(this, current, current + 1));
+            return true;
+        }
+
+        private ConsoleLine take() {
+            int count = REPEATS.getAndSet(this, TAKEN);
+            return count != line.getRepeats()
+                    ? new ConsoleLine(line.getTime(), line.getLevel(), line.getMessage(), count)
+                    : line;
+        }
+
+    }
+
+}
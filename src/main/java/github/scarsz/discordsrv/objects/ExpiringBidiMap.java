@@ -0,0 +1,413 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import github.scarsz.discordsrv.DiscordSRV;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>Thread-safe bidirectional map whose entries expire a given time after they were put.</p>
+ * <p>Lookups in either direction are lock-free reads of a {@link ConcurrentHashMap}, only changes lock the map.
+ * Expiry is driven by a hashed timing wheel with one second slots: every entry is scheduled in the slot of the
+ * second it expires in, so each tick only looks at the entries due around then instead of the whole map.
+ * Entries past their expiry time are treated as absent even before the wheel gets to them.</p>
+ * <p>Like {@link org.apache.commons.collections4.bidimap.DualHashBidiMap}, null keys and values are allowed.
+ * Maps holding mutable or non-unique values (like collections) can skip indexing their values, making it a plain
+ * expiring map.</p>
+ */
+public class ExpiringBidiMap<K, V> extends AbstractMap<K, V> {
+
+    private static final long TICK_MILLIS = 1000;
+    private static final int WHEEL_SIZE = 64; // power of two, entries further out stay in their slot for more laps
+    private static final Object NULL = new Object();
+
+    private final Map<Object, Node<K, V>> forward = new ConcurrentHashMap<>();
+    private final Map<Object, Node<K, V>> inverse = new ConcurrentHashMap<>();
+    private final Queue<Timer<K, V>>[] wheel;
+    private final long expiryDelay;
+    private final boolean indexValues;
+    private final LongSupplier clock;
+    private long processedTick; // guarded by this
+
+    private transient Set<Entry<K, V>> entrySet;
+
+    public ExpiringBidiMap(long expiryDelayMillis) {
+        this(expiryDelayMillis, true);
+    }
+
+    /**
+     * @param indexValues whether or not values are indexed for {@link #getKey(Object)}, without which values
+     *                    don't have to be unique and looking up keys by value has to search the map
+     */
+    public ExpiringBidiMap(long expiryDelayMillis, boolean indexValues) {
+        this(expiryDelayMillis, indexValues, System::currentTimeMillis);
+        Ticker.register(this);
+    }
+
+    /**
+     * Creates a map on the given clock that isn't expired in the background, only by calling {@link #expireEntries()}
+     */
+    @SuppressWarnings("unchecked")
+    ExpiringBidiMap(long expiryDelayMillis, boolean indexValues, LongSupplier clock) {
+        this.expiryDelay = expiryDelayMillis;
+        this.indexValues = indexValues;
+        this.clock = clock;
+        this.wheel = new Queue[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) wheel[i] = new ConcurrentLinkedQueue<>();
+        this.processedTick = Math.floorDiv(clock.getAsLong(), TICK_MILLIS) - 1;
+    }
+
+    public long getExpiryDelay() {
+        return expiryDelay;
+    }
+
+    private static Object mask(Object object) {
+        return object != null ? object : NULL;
+    }
+
+    private Node<K, V> live(Node<K, V> node) {
+        return node != null && !node.isExpired(clock.getAsLong()) ? node : null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> node = live(forward.get(mask(key)));
+        return node != null ? node.value : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return live(forward.get(mask(key))) != null;
+    }
+
+    public K getKey(Object value) {
+        Node<K, V> node = live(findByValue(value));
+        return node != null ? node.key : null;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return live(findByValue(value)) != null;
+    }
+
+    private Node<K, V> findByValue(Object value) {
+        if (indexValues) return inverse.get(mask(value));
+        long now = clock.getAsLong();
+        for (Node<K, V> node : forward.values()) {
+            if (!node.isExpired(now) && Objects.equals(node.value, value)) return node;
+        }
+        return null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return put(key, value, clock.getAsLong() + expiryDelay);
+    }
+
+    @SuppressWarnings("UnusedReturnValue")
+    public V putNotExpiring(K key, V value) {
+        return put(key, value, Long.MAX_VALUE);
+    }
+
+    public V putExpiring(K key, V value, long expiryTime) {
+        if (expiryTime < clock.getAsLong()) throw new IllegalArgumentException("The expiry time must be in the future");
+        return put(key, value, expiryTime);
+    }
+
+    private synchronized V put(K key, V value, long expiryTime) {
+        Node<K, V> node = new Node<>(key, value, expiryTime);
+        Node<K, V> previous = forward.put(mask(key), node);
+        Node<K, V> previousOfValue = indexValues ? inverse.put(mask(value), node) : null;
+        V previousValue = live(previous) != null ? previous.value : null;
+        if (previous != null) {
+            previous.removed = true;
+            if (indexValues && previous != previousOfValue) inverse.remove(mask(previous.value), previous);
+        }
+        if (previousOfValue != null && previousOfValue != previous) {
+            previousOfValue.removed = true;
+            forward.remove(mask(previousOfValue.key), previousOfValue);
+        }
+        schedule(node);
+        return previousValue;
+    }
+
+    @Override
+    public synchronized V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        Node<K, V> node = live(forward.get(mask(key)));
+        if (node != null && node.value != null) return node.value;
+        V value = mappingFunction.apply(key);
+        if (value != null) put(key, value);
+        return value;
+    }
+
+    @Override
+    public synchronized V remove(Object key) {
+        Node<K, V> node = forward.get(mask(key));
+        V value = live(node) != null ? node.value : null;
+        if (node != null) unlink(node);
+        return value;
+    }
+
+    public synchronized K removeValue(Object value) {
+        Node<K, V> node = findByValue(value);
+        K key = live(node) != null ? node.key : null;
+        if (node != null) unlink(node);
+        return key;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (Node<K, V> node : forward.values()) node.removed = true;
+        forward.clear();
+        inverse.clear();
+        for (Queue<Timer<K, V>> slot : wheel) slot.clear();
+    }
+
+    /**
+     * @return the time the given key expires at, {@link Long#MAX_VALUE} if it doesn't expire
+     * or -1 if the key isn't in the map
+     */
+    public long getExpiryTime(K key) {
+        Node<K, V> node = live(forward.get(mask(key)));
+        return node != null ? node.expiryTime : -1;
+    }
+
+    /**
+     * Change when the given key expires
+     * @return false if the key wasn't in the map (anymore)
+     */
+    public synchronized boolean setExpiryTime(K key, long expiryTimeMillis) {
+        Node<K, V> node = live(forward.get(mask(key)));
+        if (node == null) return false;
+        node.expiryTime = expiryTimeMillis;
+        // a later expiry is picked up when the current timer fires, only an earlier one needs a new timer
+        if (node.timer == null || tickOf(expiryTimeMillis) < node.timer.tick) schedule(node);
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return forward.size();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Set<Entry<K, V>> entrySet = this.entrySet;
+        return entrySet != null ? entrySet : (this.entrySet = new EntrySet());
+    }
+
+    /**
+     * Remove every entry that expired since the last time the map was expired, the background ticker calls this
+     * every second for maps that aren't on a custom clock
+     */
+    public synchronized void expireEntries() {
+        long now = clock.getAsLong();
+        long target = Math.floorDiv(now, TICK_MILLIS);
+        // after a long pause every slot only needs to be looked at once
+        for (long tick = Math.max(processedTick + 1, target - WHEEL_SIZE + 1); tick <= target; tick++) {
+            processedTick = tick;
+            expireSlot(tick, now);
+        }
+        processedTick = Math.max(processedTick, target);
+    }
+
+    private void expireSlot(long tick, long now) {
+        Queue<Timer<K, V>> slot = wheel[(int) (tick & (WHEEL_SIZE - 1))];
+        List<Timer<K, V>> timers = new ArrayList<>();
+        Timer<K, V> timer;
+        while ((timer = slot.poll()) != null) timers.add(timer);
+
+        for (Timer<K, V> current : timers) {
+            if (current.tick > tick) {
+                slot.add(current); // due on a later lap of the wheel
+                continue;
+            }
+            Node<K, V> node = current.node;
+            if (node.removed || node.timer != current) continue; // replaced or rescheduled
+            if (node.isExpired(now)) {
+                unlink(node);
+            } else {
+                schedule(node); // the expiry was extended
+            }
+        }
+    }
+
+    private static long tickOf(long time) {
+        // the first tick after the expiry time, where the entry is definitely expired
+        return time == Long.MAX_VALUE ? Long.MAX_VALUE : Math.floorDiv(time, TICK_MILLIS) + 1;
+    }
+
+    private void schedule(Node<K, V> node) {
+        if (node.expiryTime == Long.MAX_VALUE) {
+            node.timer = null;
+            return;
+        }
+        long tick = Math.max(tickOf(node.expiryTime), processedTick + 1);
+        Timer<K, V> timer = new Timer<>(node, tick);
+        node.timer = timer;
+        wheel[(int) (tick & (WHEEL_SIZE - 1))].add(timer);
+    }
+
+    private void unlink(Node<K, V> node) {
+        node.removed = true;
+        node.timer = null;
+        forward.remove(mask(node.key), node);
+        if (indexValues) inverse.remove(mask(node.value), node);
+    }
+
+    private static class Node<K, V> {
+
+        private final K key;
+        private final V value;
+        private volatile long expiryTime;
+        private volatile boolean removed;
+        private Timer<K, V> timer; // guarded by the map
+
+        private Node(K key, V value, long expiryTime) {
+            this.key = key;
+            this.value = value;
+            this.expiryTime = expiryTime;
+        }
+
+        private boolean isExpired(long now) {
+            return removed || expiryTime < now;
+        }
+
+    }
+
+    private static class Timer<K, V> {
+
+        private final Node<K, V> node;
+        private final long tick;
+
+        private Timer(Node<K, V> node, long tick) {
+            this.node = node;
+            this.tick = tick;
+        }
+
+    }
+
+    private class EntrySet extends AbstractSet<Entry<K, V>> {
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            Iterator<Node<K, V>> nodes = forward.values().iterator();
+            long now = clock.getAsLong();
+            return new Iterator<Entry<K, V>>() {
+                private Node<K, V> next = advance();
+                private Node<K, V> last;
+
+                private Node<K, V> advance() {
+                    while (nodes.hasNext()) {
+                        Node<K, V> node = nodes.next();
+                        if (!node.isExpired(now)) return node;
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Entry<K, V> next() {
+                    if (next == null) throw new NoSuchElementException();
+                    last = next;
+                    next = advance();
+                    return new SimpleImmutableEntry<>(last.key, last.value);
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null) throw new IllegalStateException();
+                    synchronized (ExpiringBidiMap.this) {
+                        if (forward.get(mask(last.key)) == last) unlink(last);
+                    }
+                    last = null;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return ExpiringBidiMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            ExpiringBidiMap.this.clear();
+        }
+
+    }
+
+    /**
+     * Expires every live map once per tick, shutting itself down when all of them have been garbage collected
+     */
+    private static class Ticker {
+
+        private static final Set<WeakReference<ExpiringBidiMap<?, ?>>> maps = ConcurrentHashMap.newKeySet();
+        private static ScheduledExecutorService executor; // guarded by Ticker.class
+
+        private static synchronized void register(ExpiringBidiMap<?, ?> map) {
+            maps.add(new WeakReference<>(map));
+            if (executor == null) {
+                executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                        .setNameFormat("DiscordSRV - Expiring Map Ticker")
+                        .setDaemon(true)
+                        .build());
+                executor.scheduleWithFixedDelay(Ticker::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private static void tick() {
+            for (WeakReference<ExpiringBidiMap<?, ?>> reference : maps) {
+                ExpiringBidiMap<?, ?> map = reference.get();
+                if (map == null) {
+                    maps.remove(reference);
+                    continue;
+                }
+                try {
+                    map.expireEntries();
+                } catch (Throwable t) {
+                    DiscordSRV.error("Failed to expire map entries", t);
+                }
+            }
+
+            synchronized (Ticker.class) {
+                if (maps.isEmpty() && executor != null) {
+                    executor.shutdown();
+                    executor = null;
+                }
+            }
+        }
+
+    }
+
+}
@@ -27,6 +27,10 @@ import org.apache.commons.collections4.bidimap.DualHashBidiMap;
 import java.lang.ref.WeakReference;
 import java.util.*;
 
+/**
+ * @deprecated polls every registered map from a single thread, use the concurrent {@link ExpiringBidiMap} instead
+ */
+@Deprecated
 public class ExpiringDualHashBidiMap<K, V> extends DualHashBidiMap<K, V> {
 
     private final HashMap<K, Long> expiryTimes = new HashMap<>();
@@ -0,0 +1,232 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberJoinEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRemoveEvent;
+import net.dv8tion.jda.api.events.guild.member.update.GuildMemberUpdateNicknameEvent;
+import net.dv8tion.jda.api.events.role.RoleCreateEvent;
+import net.dv8tion.jda.api.events.role.RoleDeleteEvent;
+import net.dv8tion.jda.api.events.role.update.RoleUpdateNameEvent;
+import net.dv8tion.jda.api.events.user.update.UserUpdateNameEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Case-insensitive trie of every role & member name in a guild, used to turn @name into Discord mentions
+ * in a single pass over the message. Kept up to date by listening for JDA name, member & role changes.
+ */
+public class MentionResolver extends ListenerAdapter {
+
+    private final JDA jda;
+    private final long guildId;
+    private final Node root = new Node();
+    private final Map<String, String> names = new HashMap<>(); // mentionable id -> folded name
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public MentionResolver(Guild guild) {
+        this.jda = guild.getJDA();
+        this.guildId = guild.getIdLong();
+
+        lock.writeLock().lock();
+        try {
+            for (Role role : guild.getRoles()) put(role.getId(), role.getName(), role.getAsMention());
+            for (Member member : guild.getMembers()) put(member.getId(), member.getEffectiveName(), member.getAsMention());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public JDA getJda() {
+        return jda;
+    }
+
+    /**
+     * Replace every @name in the given message that isn't already part of a mention (preceded by {@code <})
+     * with the mention of the role or member with the longest matching name
+     * @param message the message to convert
+     * @return the converted message
+     */
+    public String resolve(String message) {
+        int at = message.indexOf('@');
+        if (at == -1) return message;
+
+        StringBuilder builder = new StringBuilder(message.length() + 16);
+        builder.append(message, 0, at);
+
+        lock.readLock().lock();
+        try {
+            int i = at;
+            while (i < message.length()) {
+                char c = message.charAt(i);
+                if (c != '@' || (i > 0 && message.charAt(i - 1) == '<')) {
+                    builder.append(c);
+                    i++;
+                    continue;
+                }
+
+                Node node = root;
+                String mention = null;
+                int end = -1;
+                for (int j = i + 1; j < message.length(); j++) {
+                    node = node.children.get(fold(message.charAt(j)));
+                    if (node == null) break;
+                    if (!node.mentions.isEmpty()) {
+                        mention = node.mentions.values().iterator().next();
+                        end = j + 1;
+                    }
+                }
+
+                if (mention != null) {
+                    builder.append(mention);
+                    i = end;
+                } else {
+                    builder.append(c);
+                    i++;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return builder.toString();
+    }
+
+    private void update(String id, String name, String mention) {
+        lock.writeLock().lock();
+        try {
+            remove(id);
+            put(id, name, mention);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void delete(String id) {
+        lock.writeLock().lock();
+        try {
+            remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void put(String id, String name, String mention) {
+        if (name == null || name.isEmpty()) return;
+
+        String folded = fold(name);
+        Node node = root;
+        for (int i = 0; i < folded.length(); i++) {
+            node = node.children.computeIfAbsent(folded.charAt(i), c -> new Node());
+        }
+        node.mentions.put(id, mention);
+        names.put(id, folded);
+    }
+
+    private void remove(String id) {
+        String folded = names.remove(id);
+        if (folded == null) return;
+
+        Node[] path = new Node[folded.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < folded.length(); i++) {
+            path[i + 1] = path[i].children.get(folded.charAt(i));
+            if (path[i + 1] == null) return;
+        }
+        path[folded.length()].mentions.remove(id);
+
+        // prune branches that no longer lead to any name
+        for (int i = folded.length(); i > 0; i--) {
+            if (!path[i].mentions.isEmpty() || !path[i].children.isEmpty()) break;
+            path[i - 1].children.remove(folded.charAt(i - 1));
+        }
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static String fold(String name) {
+        char[] chars = name.toCharArray();
+        for (int i = 0; i < chars.length; i++) chars[i] = fold(chars[i]);
+        return new String(chars);
+    }
+
+    @Override
+    public void onUserUpdateName(@NotNull UserUpdateNameEvent event) {
+        Guild guild = jda.getGuildById(guildId);
+        if (guild == null) return;
+        Member member = guild.getMember(event.getUser());
+        if (member != null) update(member.getId(), member.getEffectiveName(), member.getAsMention());
+    }
+
+    @Override
+    public void onGuildMemberUpdateNickname(@NotNull GuildMemberUpdateNicknameEvent event) {
+        if (event.getGuild().getIdLong() != guildId) return;
+        update(event.getMember().getId(), event.getMember().getEffectiveName(), event.getMember().getAsMention());
+    }
+
+    @Override
+    public void onGuildMemberJoin(@NotNull GuildMemberJoinEvent event) {
+        if (event.getGuild().getIdLong() != guildId) return;
+        update(event.getMember().getId(), event.getMember().getEffectiveName(), event.getMember().getAsMention());
+    }
+
+    @Override
+    public void onGuildMemberRemove(@NotNull GuildMemberRemoveEvent event) {
+        if (event.getGuild().getIdLong() != guildId) return;
+        delete(event.getUser().getId());
+    }
+
+    @Override
+    public void onRoleUpdateName(@NotNull RoleUpdateNameEvent event) {
+        if (event.getGuild().getIdLong() != guildId) return;
+        update(event.getRole().getId(), event.getRole().getName(), event.getRole().getAsMention());
+    }
+
+    @Override
+    public void onRoleCreate(@NotNull RoleCreateEvent event) {
+        if (event.getGuild().getIdLong() != guildId) return;
+        update(event.getRole().getId(), event.getRole().getName(), event.getRole().getAsMention());
+    }
+
+    @Override
+    public void onRoleDelete(@NotNull RoleDeleteEvent event) {
+        if (event.getGuild().getIdLong() != guildId) return;
+        delete(event.getRole().getId());
+    }
+
+    private static class Node {
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private final Map<String, String> mentions = new LinkedHashMap<>(2); // id -> mention
+    }
+
+}
@@ -0,0 +1,192 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.util.DiscordUtil;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.ChannelType;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.exceptions.PermissionException;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * <p>Deletes messages once they expire, like the player list & console command responses and their requests.</p>
+ * <p>Deletions wait in a queue ordered by due time that a single thread checks every second, instead of every
+ * expiring message parking a thread for its whole lifetime. Messages due at the same time in the same channel are
+ * deleted together, with a bulk delete if the bot is allowed to. Only ids are kept, so pending deletions outlive
+ * reconnects (they're retried until JDA is connected again) and are all done right away when the plugin shuts down.</p>
+ */
+public class MessageDeletionScheduler {
+
+    private static final long TICK_MILLIS = 1000;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final PriorityQueue<PendingDeletion> pending = new PriorityQueue<>(); // guarded by itself
+    private ScheduledExecutorService executor; // guarded by this
+    private boolean shutdown = false; // guarded by this
+    private long sequence = 0; // guarded by pending
+
+    /**
+     * Delete the given message once the given delay has passed
+     */
+    public void schedule(Message message, long delayMillis) {
+        if (message.isFromType(ChannelType.PRIVATE)) return;
+        schedule(message.getChannel().getIdLong(), message.getIdLong(), delayMillis);
+    }
+
+    /**
+     * Delete the message with the given id in the given channel once the given delay has passed
+     */
+    public void schedule(long channelId, long messageId, long delayMillis) {
+        synchronized (this) {
+            if (shutdown) return;
+            if (executor == null) {
+                executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                        .setNameFormat("DiscordSRV - Message Deletion")
+                        .setDaemon(true)
+                        .build());
+                executor.scheduleWithFixedDelay(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        long time = System.currentTimeMillis() + Math.max(0, delayMillis);
+        synchronized (pending) {
+            pending.add(new PendingDeletion(time, sequence++, channelId, messageId));
+        }
+    }
+
+    /**
+     * @return the amount of messages waiting to be deleted
+     */
+    public int getPendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    private void tick() {
+        try {
+            deleteDue(System.currentTimeMillis(), true);
+        } catch (Throwable t) {
+            DiscordSRV.error("Failed to delete expired messages", t);
+        }
+    }
+
+    /**
+     * Delete every pending message now and stop accepting new ones, waiting a few seconds for the deletions to go
+     * through so they're done before JDA is shut down
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            if (executor != null) executor.shutdownNow();
+        }
+
+        List<CompletableFuture<Void>> deletions = deleteDue(Long.MAX_VALUE, false);
+        if (deletions.isEmpty()) return;
+        try {
+            CompletableFuture.allOf(deletions.toArray(new CompletableFuture[0]))
+                    .get(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+            // already logged per deletion
+        } catch (TimeoutException e) {
+            DiscordSRV.debug("Not all expiring messages were deleted before shutting down");
+        }
+    }
+
+    private List<CompletableFuture<Void>> deleteDue(long now, boolean retryWhenDisconnected) {
+        Map<Long, List<PendingDeletion>> byChannel = new LinkedHashMap<>();
+        synchronized (pending) {
+            while (!pending.isEmpty() && pending.peek().time <= now) {
+                PendingDeletion deletion = pending.poll();
+                byChannel.computeIfAbsent(deletion.channelId, id -> new ArrayList<>()).add(deletion);
+            }
+        }
+        if (byChannel.isEmpty()) return Collections.emptyList();
+
+        JDA jda = DiscordUtil.getJda();
+        boolean connected = jda != null && jda.getStatus() == JDA.Status.CONNECTED;
+        if (!connected && retryWhenDisconnected) {
+            // can't be sure a missing channel is gone, try again when we're back
+            synchronized (pending) {
+                byChannel.values().forEach(pending::addAll);
+            }
+            return Collections.emptyList();
+        }
+
+        List<CompletableFuture<Void>> deletions = new ArrayList<>();
+        for (Map.Entry<Long, List<PendingDeletion>> entry : byChannel.entrySet()) {
+            TextChannel channel = jda != null ? jda.getTextChannelById(entry.getKey()) : null;
+            if (channel == null) {
+                DiscordSRV.debug("Not deleting " + entry.getValue().size() + " expired message(s), channel " + entry.getKey() + " is not available");
+                continue;
+            }
+
+            List<String> messageIds = new ArrayList<>(entry.getValue().size());
+            for (PendingDeletion deletion : entry.getValue()) messageIds.add(Long.toUnsignedString(deletion.messageId));
+
+            try {
+                // bulk deletes recent messages if the bot can manage messages, deletes them one by one otherwise
+                for (CompletableFuture<Void> deletion : channel.purgeMessagesById(messageIds)) {
+                    deletions.add(deletion.whenComplete((v, t) -> {
+                        if (t != null) DiscordSRV.debug("Failed to delete expired message in " + channel + ": " + ExceptionUtils.getMessage(t));
+                    }));
+                }
+            } catch (PermissionException e) {
+                DiscordSRV.warning("Could not delete expired messages in channel " + channel + " because \"" + e.getMessage() + "\"");
+            }
+        }
+        return deletions;
+    }
+
+    private static class PendingDeletion implements Comparable<PendingDeletion> {
+
+        private final long time;
+        private final long sequence;
+        private final long channelId;
+        private final long messageId;
+
+        private PendingDeletion(long time, long sequence, long channelId, long messageId) {
+            this.time = time;
+            this.sequence = sequence;
+            this.channelId = channelId;
+            this.messageId = messageId;
+        }
+
+        @Override
+        public int compareTo(PendingDeletion other) {
+            int compare = Long.compare(time, other.time);
+            return compare != 0 ? compare : Long.compare(sequence, other.sequence);
+        }
+
+    }
+
+}
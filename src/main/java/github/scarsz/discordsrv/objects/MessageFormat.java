@@ -29,6 +29,7 @@ import net.dv8tion.jda.api.entities.MessageEmbed;
 
 import java.awt.Color;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 @Data
@@ -59,6 +60,16 @@ public class MessageFormat {
     private String webhookAvatarUrl;
     private String webhookName;
 
+    /**
+     * @return a copy of this format, which can be changed without affecting this one
+     */
+    public MessageFormat copy() {
+        return new MessageFormat(content, authorName, authorUrl, authorImageUrl, thumbnailUrl, title, titleUrl,
+                description, imageUrl, footerText, footerIconUrl, timestamp, color,
+                fields != null ? new ArrayList<>(fields) : null,
+                useWebhooks, webhookAvatarUrl, webhookName);
+    }
+
     public boolean isAnyContent() {
         return content != null || authorName != null || authorUrl != null || authorImageUrl != null
                 || thumbnailUrl != null || title != null || titleUrl != null || description != null
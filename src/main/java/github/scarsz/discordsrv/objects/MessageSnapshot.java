@@ -0,0 +1,188 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects;
+
+import github.scarsz.configuralize.DynamicConfig;
+import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.util.LangUtil;
+import github.scarsz.discordsrv.util.MessageFormatResolver;
+import github.scarsz.discordsrv.util.MessageUtil;
+import org.bukkit.ChatColor;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * <p>The messages & message formats from the config as they were when it was last (re)loaded, so sending a message
+ * doesn't have to look them up in the config & parse them every time.</p>
+ * <p>The {@link LangUtil.Message}s & the player message formats are read when the snapshot is made, other message
+ * formats the first time they're used. A new snapshot is made after the config is reloaded.</p>
+ */
+public class MessageSnapshot {
+
+    private static final List<String> MESSAGE_FORMAT_KEYS = Arrays.asList(
+            "MinecraftPlayerJoinMessage",
+            "MinecraftPlayerFirstJoinMessage",
+            "MinecraftPlayerLeaveMessage",
+            "MinecraftPlayerDeathMessage",
+            "MinecraftPlayerAchievementMessage"
+    );
+    private static final Object NO_MESSAGE_FORMAT = new Object();
+
+    private static volatile MessageSnapshot current;
+    private static int generation = 0; // guarded by MessageSnapshot.class
+
+    /**
+     * @return the snapshot of the currently loaded config, made now if there isn't one yet
+     */
+    public static MessageSnapshot get() {
+        return get(DiscordSRV::config);
+    }
+
+    static MessageSnapshot get(Supplier<DynamicConfig> config) {
+        MessageSnapshot snapshot = current;
+        if (snapshot != null) return snapshot;
+
+        int generation;
+        synchronized (MessageSnapshot.class) {
+            generation = MessageSnapshot.generation;
+        }
+        snapshot = new MessageSnapshot(config.get());
+        synchronized (MessageSnapshot.class) {
+            // the config was reloaded while this was made, so it might be from the old one, use it this once only
+            if (generation != MessageSnapshot.generation) return snapshot;
+            if (current != null) return current;
+            current = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Throw away the current snapshot, the next one is made from the config as it is when it's needed again
+     */
+    public static synchronized void invalidate() {
+        generation++;
+        current = null;
+    }
+
+    private final DynamicConfig config;
+    private final String[] messages;
+    private final String[] translatedMessages;
+    private final Map<String, Object> messageFormats = new ConcurrentHashMap<>();
+    private final Map<String, String> chatToMinecraftFormats = new ConcurrentHashMap<>();
+
+    private MessageSnapshot(DynamicConfig config) {
+        this.config = config;
+
+        LangUtil.Message[] values = LangUtil.Message.values();
+        messages = new String[values.length];
+        translatedMessages = new String[values.length];
+        for (LangUtil.Message message : values) {
+            try {
+                String raw = config.getString(message.getKeyName());
+                messages[message.ordinal()] = raw;
+                translatedMessages[message.ordinal()] = MessageUtil.translateLegacy(raw);
+            } catch (Exception e) {
+                // missing from the config, looked up (& failing) when used like before
+                DiscordSRV.debug("Failed to read message " + message.getKeyName() + ": " + e.getMessage());
+            }
+        }
+
+        for (String key : MESSAGE_FORMAT_KEYS) messageFormats.put(key, parseMessageFormat(key));
+    }
+
+    /**
+     * @return the given message, with its legacy color codes translated if requested
+     */
+    public String getMessage(LangUtil.Message message, boolean translateColors) {
+        String value = (translateColors ? translatedMessages : messages)[message.ordinal()];
+        if (value != null) return value;
+
+        String raw = config.getString(message.getKeyName());
+        return translateColors ? MessageUtil.translateLegacy(raw) : raw;
+    }
+
+    /**
+     * @return a copy of the message format at the given config key that can be changed freely,
+     * or null if it's disabled or doesn't have any content
+     * @see MessageFormatResolver#getMessageFromConfiguration(DynamicConfig, String)
+     */
+    public MessageFormat getMessageFormat(String key) {
+        Object cached = messageFormats.get(key);
+        if (cached == null) {
+            cached = parseMessageFormat(key);
+            messageFormats.put(key, cached);
+        }
+        if (cached == NO_MESSAGE_FORMAT) return null;
+
+        CachedMessageFormat cachedMessageFormat = (CachedMessageFormat) cached;
+        MessageFormat messageFormat = cachedMessageFormat.messageFormat.copy();
+        if (cachedMessageFormat.timestampNow) messageFormat.setTimestamp(Instant.now());
+        return messageFormat;
+    }
+
+    /**
+     * @return the Discord to Minecraft chat message format for the given game channel
+     * @see MessageFormatResolver#getMessageFormat(List, String)
+     */
+    public String getChatToMinecraftFormat(LangUtil.Message format, String channel) {
+        String key = format.getKeyName() + "_" + channel;
+        String cached = chatToMinecraftFormats.get(key);
+        if (cached == null) {
+            cached = config.getOptionalString(key)
+                    .map(s -> ChatColor.translateAlternateColorCodes('&', s))
+                    .orElseGet(() -> getMessage(format, format.isTranslateColors()));
+            chatToMinecraftFormats.put(key, cached);
+        }
+        return cached;
+    }
+
+    private Object parseMessageFormat(String key) {
+        MessageFormat messageFormat = MessageFormatResolver.getMessageFromConfiguration(config, key);
+        if (messageFormat == null) return NO_MESSAGE_FORMAT;
+
+        // "Timestamp: true" means the time the message is sent, not the time the config was loaded
+        Optional<Boolean> timestamp = messageFormat.getTimestamp() != null
+                ? config.getOptionalBoolean(key + ".Embed.Timestamp")
+                : Optional.empty();
+        return new CachedMessageFormat(messageFormat, timestamp.orElse(false));
+    }
+
+    private static class CachedMessageFormat {
+
+        private final MessageFormat messageFormat;
+        private final boolean timestampNow;
+
+        private CachedMessageFormat(MessageFormat messageFormat, boolean timestampNow) {
+            this.messageFormat = messageFormat;
+            this.timestampNow = timestampNow;
+        }
+
+    }
+
+}
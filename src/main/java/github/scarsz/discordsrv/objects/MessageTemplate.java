@@ -0,0 +1,184 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>A message format parsed into the literal text between its %placeholders%, so rendering it is a single
+ * pass of appends instead of one {@link String#replace} per placeholder.</p>
+ * <p>Only the placeholders given to the {@link Parser} are recognized, anything else (like PlaceholderAPI
+ * placeholders) stays part of the text. Values are inserted as-is, they're never searched for placeholders.</p>
+ */
+public class MessageTemplate {
+
+    private static final int MAX_BUILDER_CAPACITY = 8192;
+    private static final ThreadLocal<StringBuilder> BUILDER = new ThreadLocal<>();
+
+    @FunctionalInterface
+    public interface Resolver {
+        /**
+         * @param placeholder the name of the placeholder, without the surrounding %
+         * @return the value to insert, or null to keep the placeholder
+         */
+        String resolve(String placeholder);
+    }
+
+    /**
+     * Parses formats for a fixed set of placeholders, remembering the templates so every format is only parsed
+     * the first time it's used (after a config reload, the reloaded format is a new one)
+     */
+    public static class Parser {
+
+        private static final int MAX_CACHED_TEMPLATES = 64;
+
+        private final Set<String> placeholders;
+        private final Map<String, MessageTemplate> templates = new ConcurrentHashMap<>();
+
+        public Parser(String... placeholders) {
+            this.placeholders = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(placeholders)));
+        }
+
+        public Set<String> getPlaceholders() {
+            return placeholders;
+        }
+
+        public MessageTemplate get(String format) {
+            MessageTemplate template = templates.get(format);
+            if (template == null) {
+                template = parse(format, placeholders);
+                // formats from before a reload or built at runtime shouldn't pile up
+                if (templates.size() >= MAX_CACHED_TEMPLATES) templates.clear();
+                templates.put(format, template);
+            }
+            return template;
+        }
+
+    }
+
+    public static MessageTemplate parse(String format, Set<String> names) {
+        List<String> literals = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        boolean otherPlaceholders = false;
+
+        int literalStart = 0;
+        int index = 0;
+        while ((index = format.indexOf('%', index)) != -1) {
+            int end = index + 1;
+            while (end < format.length() && isPlaceholderCharacter(format.charAt(end))) end++;
+            if (end == index + 1 || end == format.length() || format.charAt(end) != '%') {
+                index++; // not a placeholder, the % is part of the text
+                continue;
+            }
+
+            String name = format.substring(index + 1, end);
+            if (!names.contains(name)) {
+                // the closing % could open one of ours, like in %unknown%name%
+                otherPlaceholders = true;
+                index++;
+                continue;
+            }
+
+            literals.add(format.substring(literalStart, index));
+            placeholders.add(name);
+            literalStart = index = end + 1;
+        }
+        literals.add(format.substring(literalStart));
+
+        return new MessageTemplate(format, literals.toArray(new String[0]), placeholders.toArray(new String[0]), otherPlaceholders);
+    }
+
+    private static boolean isPlaceholderCharacter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
+    }
+
+    private final String format;
+    private final String[] literals; // literals[i] comes before placeholders[i], one more literal than placeholders
+    private final String[] placeholders;
+    private final boolean otherPlaceholders;
+
+    private MessageTemplate(String format, String[] literals, String[] placeholders, boolean otherPlaceholders) {
+        this.format = format;
+        this.literals = literals;
+        this.placeholders = placeholders;
+        this.otherPlaceholders = otherPlaceholders;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public boolean hasPlaceholder(String name) {
+        for (String placeholder : placeholders) {
+            if (placeholder.equals(name)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether or not the format contains %text% that isn't one of the parser's placeholders,
+     * which usually means it uses PlaceholderAPI
+     */
+    public boolean hasOtherPlaceholders() {
+        return otherPlaceholders;
+    }
+
+    public String render(Resolver resolver) {
+        if (placeholders.length == 0) return format;
+
+        // take the builder while rendering, a resolver rendering another template on this thread gets its own
+        StringBuilder builder = BUILDER.get();
+        if (builder == null) {
+            builder = new StringBuilder(Math.max(64, format.length() * 2));
+        } else {
+            BUILDER.set(null);
+            builder.setLength(0);
+        }
+
+        appendTo(builder, resolver);
+        String result = builder.toString();
+
+        if (builder.capacity() <= MAX_BUILDER_CAPACITY) BUILDER.set(builder);
+        return result;
+    }
+
+    public void appendTo(StringBuilder builder, Resolver resolver) {
+        for (int i = 0; i < placeholders.length; i++) {
+            builder.append(literals[i]);
+            String value = resolver.resolve(placeholders[i]);
+            if (value != null) {
+                builder.append(value);
+            } else {
+                builder.append('%').append(placeholders[i]).append('%');
+            }
+        }
+        builder.append(literals[placeholders.length]);
+    }
+
+    @Override
+    public String toString() {
+        return format;
+    }
+
+}
@@ -0,0 +1,189 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects;
+
+import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.listeners.OnlinePlayerListener;
+import github.scarsz.discordsrv.util.MessageUtil;
+import github.scarsz.discordsrv.util.PlayerUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * <p>The players that were online the last time someone joined, quit, vanished or reappeared, so everything that
+ * needs the online players doesn't have to ask the server (& every vanish hook for every player) each time.</p>
+ * <p>Snapshots never change, {@link OnlinePlayerListener} publishes a new one whenever the online players do. Before
+ * it's listening, a snapshot is made from the server every time one is asked for.</p>
+ */
+public class OnlinePlayerSnapshot {
+
+    private static volatile OnlinePlayerSnapshot current;
+    private static Method getOnlinePlayersMethod;
+
+    /**
+     * @return the current snapshot, or one made from the server right now if players aren't being tracked
+     */
+    public static OnlinePlayerSnapshot get() {
+        OnlinePlayerSnapshot snapshot = current;
+        return snapshot != null ? snapshot : fromServer();
+    }
+
+    /**
+     * Replace the current snapshot, null to stop using snapshots
+     */
+    public static void set(OnlinePlayerSnapshot snapshot) {
+        current = snapshot;
+    }
+
+    private static OnlinePlayerSnapshot fromServer() {
+        List<Player> players = getServerOnlinePlayers();
+        Set<UUID> vanished = new HashSet<>();
+        Map<UUID, String> displayNames = new HashMap<>();
+        for (Player player : players) {
+            if (PlayerUtil.isVanished(player)) vanished.add(player.getUniqueId());
+            displayNames.put(player.getUniqueId(), player.getDisplayName());
+        }
+        return new OnlinePlayerSnapshot(players, vanished, displayNames);
+    }
+
+    /**
+     * Type-safe version of Bukkit::getOnlinePlayers, which returned an array on older versions
+     * @return a new list containing the players the server considers online
+     */
+    public static List<Player> getServerOnlinePlayers() {
+        List<Player> onlinePlayers = new ArrayList<>();
+
+        try {
+            Method onlinePlayerMethod = getOnlinePlayersMethod;
+            if (onlinePlayerMethod == null) {
+                onlinePlayerMethod = Server.class.getMethod("getOnlinePlayers");
+                getOnlinePlayersMethod = onlinePlayerMethod;
+            }
+            if (onlinePlayerMethod.getReturnType().equals(Collection.class)) {
+                for (Object o : ((Collection<?>) onlinePlayerMethod.invoke(Bukkit.getServer()))) {
+                    onlinePlayers.add((Player) o);
+                }
+            } else {
+                Collections.addAll(onlinePlayers, ((Player[]) onlinePlayerMethod.invoke(Bukkit.getServer())));
+            }
+        } catch (Exception e) {
+            DiscordSRV.error(e);
+        }
+
+        return onlinePlayers;
+    }
+
+    private final List<Player> players;
+    private final List<Player> visiblePlayers;
+    private final Set<UUID> vanished;
+    private final Map<UUID, String> displayNames;
+    private final Map<String, Player> playersByName = new HashMap<>();
+    private final Map<String, List<Player>> playersByDisplayName = new HashMap<>();
+
+    /**
+     * @param players the online players, in the order they joined
+     * @param vanished the uuids of the players that are vanished
+     * @param displayNames the display names of the players by their uuids, the name is used for those missing
+     */
+    public OnlinePlayerSnapshot(Collection<Player> players, Set<UUID> vanished, Map<UUID, String> displayNames) {
+        List<Player> visiblePlayers = new ArrayList<>(players.size());
+        this.vanished = new HashSet<>();
+        this.displayNames = new HashMap<>();
+        for (Player player : players) {
+            UUID uuid = player.getUniqueId();
+            if (vanished.contains(uuid)) {
+                this.vanished.add(uuid);
+            } else {
+                visiblePlayers.add(player);
+            }
+
+            String displayName = displayNames.getOrDefault(uuid, player.getName());
+            this.displayNames.put(uuid, displayName);
+
+            playersByName.put(player.getName().toLowerCase(), player);
+            if (displayName != null) {
+                playersByDisplayName.computeIfAbsent(MessageUtil.strip(displayName.toLowerCase()), name -> new ArrayList<>(1)).add(player);
+            }
+        }
+        this.players = Collections.unmodifiableList(new ArrayList<>(players));
+        this.visiblePlayers = Collections.unmodifiableList(visiblePlayers);
+    }
+
+    /**
+     * @return the online players, which can't be changed
+     */
+    public List<Player> getPlayers() {
+        return players;
+    }
+
+    /**
+     * @param filterVanishedPlayers whether or not to leave out vanished players
+     * @return the online players, which can't be changed
+     */
+    public List<Player> getPlayers(boolean filterVanishedPlayers) {
+        return filterVanishedPlayers ? visiblePlayers : players;
+    }
+
+    /**
+     * @return the amount of online players
+     */
+    public int size() {
+        return players.size();
+    }
+
+    /**
+     * @return whether the given player was vanished when this snapshot was made
+     */
+    public boolean isVanished(Player player) {
+        return vanished.contains(player.getUniqueId());
+    }
+
+    /**
+     * @return the given player's display name when this snapshot was made, or null if they weren't online
+     */
+    public String getDisplayName(Player player) {
+        return displayNames.get(player.getUniqueId());
+    }
+
+    /**
+     * @param name the name to look for, case-insensitive
+     * @return the online player with the given name, or null if there isn't one
+     */
+    public Player getPlayerByName(String name) {
+        return playersByName.get(name.toLowerCase());
+    }
+
+    /**
+     * @param displayName the display name to look for without colors, case-insensitive
+     * @return the online players with the given display name
+     */
+    public List<Player> getPlayersByDisplayName(String displayName) {
+        List<Player> players = playersByDisplayName.get(displayName.toLowerCase());
+        return players != null ? Collections.unmodifiableList(players) : Collections.emptyList();
+    }
+
+}
@@ -160,11 +160,8 @@ public class SingleCommandSender implements ConsoleCommandSender {
 
         // expire request message after specified time
         if (!alreadyQueuedDelete && DiscordSRV.config().getInt("DiscordChatChannelConsoleCommandExpiration") > 0 && DiscordSRV.config().getBoolean("DiscordChatChannelConsoleCommandExpirationDeleteRequest")) {
-            Bukkit.getScheduler().runTaskAsynchronously(DiscordSRV.getPlugin(), () -> {
-                try { Thread.sleep(DiscordSRV.config().getInt("DiscordChatChannelConsoleCommandExpiration") * 1000L); } catch (InterruptedException ignored) {}
-                event.getMessage().delete().queue();
-                alreadyQueuedDelete = true;
-            });
+            DiscordUtil.deleteMessageLater(event.getMessage(), DiscordSRV.config().getInt("DiscordChatChannelConsoleCommandExpiration") * 1000L);
+            alreadyQueuedDelete = true;
         }
     }
 
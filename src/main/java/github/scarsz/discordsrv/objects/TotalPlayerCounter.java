@@ -0,0 +1,271 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import github.scarsz.discordsrv.DiscordSRV;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Keeps count of the players that have ever played on the server, which is the amount of player data files in
+ * the main world's playerdata folder.</p>
+ * <p>The folder is listed once in the background when the counter is started, after that players joining for the
+ * first time are added to the count as they join. The folder is watched for player data being deleted, which is taken
+ * off the count a few seconds later if it doesn't come back (the server deletes & recreates the file every time it
+ * saves a player). If the watch misses events, the folder is listed again.</p>
+ */
+public class TotalPlayerCounter implements Listener {
+
+    private static final long DELETE_CHECK_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final String PLAYER_DATA_SUFFIX = ".dat";
+    private static final int PLAYER_DATA_NAME_LENGTH = 36 + PLAYER_DATA_SUFFIX.length();
+
+    private final File playerDataFolder;
+    private final AtomicLong count = new AtomicLong();
+    private final ScheduledExecutorService executor;
+    private final Set<UUID> deletedPlayers = ConcurrentHashMap.newKeySet();
+    private final Set<UUID> joinedWhileCounting = ConcurrentHashMap.newKeySet();
+    private boolean counting = false; // guarded by this
+    private boolean countAgain = false; // guarded by this
+    private volatile boolean counted = false;
+    private volatile WatchService watchService;
+
+    /**
+     * @param playerDataFolder the playerdata folder of the main world, or null if there isn't one
+     */
+    public TotalPlayerCounter(File playerDataFolder) {
+        this.playerDataFolder = playerDataFolder;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("DiscordSRV - Total Player Counter")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Count the player data files in the background & start watching the folder for player data being deleted
+     */
+    public void start() {
+        if (playerDataFolder == null || !playerDataFolder.isDirectory()) {
+            DiscordSRV.debug("No playerdata folder at " + playerDataFolder + ", only counting players joining for the first time");
+            counted = true;
+            return;
+        }
+
+        // watch first so nothing deleted while counting is missed
+        try {
+            watchService = playerDataFolder.toPath().getFileSystem().newWatchService();
+            playerDataFolder.toPath().register(watchService, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_CREATE);
+            Thread watcher = new Thread(this::watch, "DiscordSRV - Player Data Watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        } catch (IOException | UnsupportedOperationException e) {
+            DiscordSRV.debug("Can't watch the playerdata folder for deleted players, the total player count only goes up until the next restart: " + e);
+            closeWatchService();
+        }
+
+        recount();
+    }
+
+    /**
+     * Stop watching the playerdata folder, the count isn't kept up to date anymore after this
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        closeWatchService();
+    }
+
+    /**
+     * @return the amount of players that have ever played on the server, 0 until the first count is done
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return whether or not the playerdata folder has been counted yet
+     */
+    public boolean isCounted() {
+        return counted;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        if (!event.getPlayer().hasPlayedBefore()) countNewPlayer(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * Add a player joining for the first time to the count, their player data isn't saved until later
+     * @param uuid the player's uuid
+     */
+    public void countNewPlayer(UUID uuid) {
+        deletedPlayers.remove(uuid);
+        synchronized (this) {
+            if (counting) {
+                // the listing might or might not see their player data, it leaves them to be added when it's done
+                joinedWhileCounting.add(uuid);
+                return;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    private void count() {
+        long files = 0;
+        boolean failed = false;
+        long started = System.currentTimeMillis();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(playerDataFolder.toPath())) {
+            for (Path path : stream) {
+                UUID uuid = getPlayerUuid(path.getFileName().toString());
+                if (uuid != null && !joinedWhileCounting.contains(uuid)) files++;
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            DiscordSRV.error("Failed to count the player data in " + playerDataFolder, e);
+            failed = true;
+        }
+
+        synchronized (this) {
+            if (failed) {
+                count.addAndGet(joinedWhileCounting.size());
+            } else {
+                count.set(files + joinedWhileCounting.size());
+            }
+            joinedWhileCounting.clear();
+            counted = true;
+            if (!failed) DiscordSRV.debug("Counted " + count.get() + " players in " + playerDataFolder + " in " + (System.currentTimeMillis() - started) + "ms");
+
+            if (countAgain) {
+                // still counting, so nobody joining in between is missed by the next listing
+                countAgain = false;
+                submitCount();
+                return;
+            }
+            counting = false;
+        }
+    }
+
+    private void recount() {
+        synchronized (this) {
+            // counting from when the listing is queued, players joining before it runs are only counted once too
+            if (counting) {
+                countAgain = true;
+                return;
+            }
+            counting = true;
+            countAgain = false;
+            submitCount();
+        }
+    }
+
+    private void submitCount() {
+        try {
+            executor.execute(this::count);
+        } catch (RejectedExecutionException ignored) {
+            // shutting down
+        }
+    }
+
+    private void watch() {
+        WatchService watchService = this.watchService;
+        if (watchService == null) return;
+
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        DiscordSRV.debug("Missed changes to the playerdata folder, counting the player data again");
+                        recount();
+                        continue;
+                    }
+
+                    UUID uuid = getPlayerUuid(event.context().toString());
+                    if (uuid == null) continue;
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        // the server deletes the file right before writing it again when saving a player
+                        if (deletedPlayers.add(uuid)) {
+                            executor.schedule(() -> checkDeleted(uuid), DELETE_CHECK_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                        }
+                    } else {
+                        deletedPlayers.remove(uuid);
+                    }
+                }
+                if (!key.reset()) {
+                    DiscordSRV.debug("The playerdata folder can't be watched anymore");
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException | RejectedExecutionException ignored) {
+            // shutting down
+        }
+    }
+
+    private void checkDeleted(UUID uuid) {
+        if (!deletedPlayers.remove(uuid)) return;
+        if (new File(playerDataFolder, uuid + PLAYER_DATA_SUFFIX).exists()) return;
+
+        synchronized (this) {
+            if (counting) {
+                // can't tell if the listing saw it or not
+                countAgain = true;
+                return;
+            }
+        }
+        count.updateAndGet(current -> Math.max(0, current - 1));
+    }
+
+    private void closeWatchService() {
+        WatchService watchService = this.watchService;
+        this.watchService = null;
+        if (watchService == null) return;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            DiscordSRV.debug("Failed to stop watching the playerdata folder: " + e);
+        }
+    }
+
+    /**
+     * @return the uuid of the player the given player data file name belongs to, or null if it isn't player data
+     * (the server also keeps backups & temporary files in the folder)
+     */
+    static UUID getPlayerUuid(String fileName) {
+        if (fileName.length() != PLAYER_DATA_NAME_LENGTH || !fileName.endsWith(PLAYER_DATA_SUFFIX)) return null;
+        try {
+            return UUID.fromString(fileName.substring(0, 36));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,380 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.util.DiscordUtil;
+import github.scarsz.discordsrv.util.WebhookUtil;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.requests.restaction.MessageAction;
+import okhttp3.*;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * <p>Delivers webhook messages in the order they were sent, one channel (webhook) at a time.</p>
+ * <p>Requests go through JDA's {@link OkHttpClient}, reusing its kept-alive connections to Discord, and the JSON is
+ * written straight into the request's bytes. Each channel's next message is sent once the previous one got its response,
+ * waiting for the webhook's rate limit to reset first if the response said it's used up, and messages that got
+ * rate limited anyway are sent again after the time Discord asks for instead of being lost.</p>
+ */
+public class WebhookDeliveryQueue {
+
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final long DEFAULT_RETRY_MILLIS = 1000;
+    private static final int MAX_RATE_LIMITED_ATTEMPTS = 5;
+
+    private final Map<Long, ChannelQueue> queues = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor; // guarded by this
+    private boolean shutdown = false; // guarded by this
+
+    /**
+     * Queue a message to be delivered through the given channel's webhook after the ones queued before it
+     */
+    public void deliver(TextChannel channel, String webhookName, String webhookAvatarUrl, String message, MessageEmbed embed) {
+        deliver(channel, CompletableFuture.completedFuture(new Author(webhookName, webhookAvatarUrl)), message, embed);
+    }
+
+    /**
+     * Queue a message to be delivered through the given channel's webhook after the ones queued before it, with the
+     * name & avatar it's sent with still being looked up (like a player's linked account)
+     * @param author completed with the webhook name & avatar to send the message with, the messages queued for the
+     *               channel after this one wait for it
+     */
+    public void deliver(TextChannel channel, CompletableFuture<Author> author, String message, MessageEmbed embed) {
+        ScheduledExecutorService executor = getExecutor();
+        if (executor == null) return;
+
+        Delivery delivery = new Delivery(author, message, embed);
+        queues.computeIfAbsent(channel.getIdLong(), ChannelQueue::new).add(delivery, executor);
+    }
+
+    private synchronized ScheduledExecutorService getExecutor() {
+        if (shutdown) return null;
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("DiscordSRV - Webhook Delivery")
+                    .setDaemon(true)
+                    .build());
+        }
+        return executor;
+    }
+
+    /**
+     * Stop delivering messages, dropping the ones that weren't sent yet
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            if (executor != null) executor.shutdownNow();
+        }
+
+        int pending = getPendingCount();
+        if (pending > 0) DiscordSRV.debug("Dropping " + pending + " webhook message(s) that weren't delivered before shutting down");
+    }
+
+    /**
+     * @return the amount of messages waiting to be delivered in all channels
+     */
+    public int getPendingCount() {
+        int pending = 0;
+        for (ChannelQueue queue : queues.values()) pending += queue.getPendingCount();
+        return pending;
+    }
+
+    private class ChannelQueue {
+
+        private final long channelId;
+        private final Deque<Delivery> deliveries = new ArrayDeque<>(); // guarded by this
+        private boolean running = false; // guarded by this, a delivery is being sent or waiting for the rate limit
+
+        private ChannelQueue(long channelId) {
+            this.channelId = channelId;
+        }
+
+        private synchronized void add(Delivery delivery, ScheduledExecutorService executor) {
+            deliveries.add(delivery);
+            if (running) return;
+
+            running = true;
+            schedule(executor, 0);
+        }
+
+        private synchronized int getPendingCount() {
+            return deliveries.size();
+        }
+
+        private void schedule(ScheduledExecutorService executor, long delayMillis) {
+            try {
+                executor.schedule(() -> sendNext(executor), delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignored) {
+                // shutting down
+            }
+        }
+
+        private void next(ScheduledExecutorService executor, long delayMillis) {
+            synchronized (this) {
+                if (deliveries.isEmpty()) {
+                    running = false;
+                    return;
+                }
+            }
+            schedule(executor, delayMillis);
+        }
+
+        private void complete(Delivery delivery, ScheduledExecutorService executor, long delayMillis) {
+            synchronized (this) {
+                deliveries.remove(delivery);
+            }
+            next(executor, delayMillis);
+        }
+
+        private void sendNext(ScheduledExecutorService executor) {
+            Delivery delivery;
+            synchronized (this) {
+                delivery = deliveries.peek();
+                if (delivery == null) {
+                    running = false;
+                    return;
+                }
+            }
+
+            try {
+                JDA jda = DiscordUtil.getJda();
+                TextChannel channel = jda != null ? jda.getTextChannelById(channelId) : null;
+                if (channel == null) {
+                    DiscordSRV.debug("Not delivering webhook message, channel " + channelId + " is not available");
+                    complete(delivery, executor, 0);
+                    return;
+                }
+
+                if (!delivery.author.isDone()) {
+                    // come back once it's been looked up, the channel's later messages can't go before this one
+                    delivery.author.whenComplete((author, throwable) -> schedule(executor, 0));
+                    return;
+                }
+                Author author;
+                try {
+                    author = delivery.author.join();
+                } catch (CompletionException e) {
+                    DiscordSRV.error("Failed to look up the author of a webhook message: " + e.getCause().getMessage());
+                    complete(delivery, executor, 0);
+                    return;
+                }
+
+                CompletableFuture<String> webhookUrlFuture = WebhookUtil.getWebhookUrlForChannel(channel);
+                if (!webhookUrlFuture.isDone()) {
+                    // come back once it's been looked up, without holding up the other channels
+                    webhookUrlFuture.whenComplete((url, throwable) -> schedule(executor, 0));
+                    return;
+                }
+
+                String webhookUrl;
+                try {
+                    webhookUrl = webhookUrlFuture.join();
+                } catch (CompletionException e) {
+                    DiscordSRV.error("Failed to retrieve webhooks for channel " + channel + ": " + e.getCause().getMessage());
+                    webhookUrl = null;
+                }
+                if (webhookUrl == null) {
+                    complete(delivery, executor, 0);
+                    return;
+                }
+
+                Request request = new Request.Builder()
+                        .url(webhookUrl)
+                        .header("User-Agent", "DiscordSRV/" + DiscordSRV.getPlugin().getDescription().getVersion())
+                        .post(delivery.toRequestBody(author))
+                        .build();
+                jda.getHttpClient().newCall(request).enqueue(new Callback() {
+                    @Override
+                    public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                        DiscordSRV.error("Failed to deliver webhook message to Discord: " + e.getMessage());
+                        DiscordSRV.debug(e);
+                        complete(delivery, executor, 0);
+                    }
+
+                    @Override
+                    public void onResponse(@NotNull Call call, @NotNull Response response) {
+                        try (Response ignored = response) {
+                            handleResponse(channel, delivery, response, executor);
+                        } catch (Throwable t) {
+                            DiscordSRV.error("Failed to deliver webhook message to Discord: " + t.getMessage());
+                            DiscordSRV.debug(t);
+                            complete(delivery, executor, 0);
+                        }
+                    }
+                });
+            } catch (Throwable t) {
+                DiscordSRV.error("Failed to deliver webhook message to Discord: " + t.getMessage());
+                DiscordSRV.debug(t);
+                complete(delivery, executor, 0);
+            }
+        }
+
+        private void handleResponse(TextChannel channel, Delivery delivery, Response response, ScheduledExecutorService executor) throws IOException {
+            int status = response.code();
+            long resetAfterMillis = getResetAfterMillis(response);
+
+            if (status == 429) {
+                delivery.rateLimitedAttempts++;
+                if (delivery.rateLimitedAttempts > MAX_RATE_LIMITED_ATTEMPTS) {
+                    DiscordSRV.debug("Webhook delivery was rate limited " + MAX_RATE_LIMITED_ATTEMPTS + " times in a row, dropping the message");
+                    complete(delivery, executor, resetAfterMillis);
+                    return;
+                }
+                DiscordSRV.debug("Webhook delivery was rate limited, trying again in " + resetAfterMillis + "ms");
+                schedule(executor, resetAfterMillis);
+                return;
+            }
+
+            // only wait for the reset if this was the last request we could make
+            String remaining = response.header("X-RateLimit-Remaining");
+            long delayMillis = remaining != null && NumberUtils.toInt(remaining, 1) <= 0 ? resetAfterMillis : 0;
+
+            if (status == 204) {
+                DiscordSRV.debug("Received API response for webhook message delivery: " + status);
+                complete(delivery, executor, delayMillis);
+                return;
+            }
+
+            // 404 = Invalid Webhook (most likely to have been deleted)
+            // 10015 = unknown webhook, https://discord.com/developers/docs/topics/opcodes-and-status-codes#json-json-error-codes
+            String body = response.body() != null ? response.body().string() : "";
+            if (status == 404 || getErrorCode(body) == 10015) {
+                boolean retry = !delivery.secondAttempt;
+                DiscordSRV.debug("Webhook delivery returned " + (status == 404 ? "404" : "10015 (Unknown Webhook)") + ", marking webhooks URLs as invalid to let them regenerate" + (retry ? " & trying again" : ""));
+                WebhookUtil.invalidWebhookUrlForChannel(channel); // tell it to get rid of the urls & get new ones
+                if (retry) {
+                    delivery.secondAttempt = true;
+                    next(executor, delayMillis);
+                } else {
+                    complete(delivery, executor, delayMillis);
+                }
+                return;
+            }
+
+            DiscordSRV.debug("Received unexpected API response for webhook message delivery: " + status + " for message: " + delivery.message + ", response: " + body);
+            complete(delivery, executor, delayMillis);
+        }
+
+    }
+
+    private static long getResetAfterMillis(Response response) {
+        // X-RateLimit-Reset-After & Retry-After are in seconds, possibly with decimals
+        String resetAfter = response.header("X-RateLimit-Reset-After");
+        if (resetAfter == null) resetAfter = response.header("Retry-After");
+        if (resetAfter == null) return DEFAULT_RETRY_MILLIS;
+        return (long) Math.ceil(NumberUtils.toDouble(resetAfter, DEFAULT_RETRY_MILLIS / 1000D) * 1000);
+    }
+
+    private static int getErrorCode(String body) {
+        try {
+            JsonElement element = new JsonParser().parse(body);
+            if (!element.isJsonObject()) return 0;
+            JsonObject object = element.getAsJsonObject();
+            return object.has("code") ? object.get("code").getAsInt() : 0;
+        } catch (Throwable ignored) {
+            return 0;
+        }
+    }
+
+    /**
+     * The name & avatar a webhook message is sent with
+     */
+    public static class Author {
+
+        private final String webhookName;
+        private final String webhookAvatarUrl;
+
+        public Author(String webhookName, String webhookAvatarUrl) {
+            this.webhookName = webhookName;
+            this.webhookAvatarUrl = webhookAvatarUrl;
+        }
+
+    }
+
+    private static class Delivery {
+
+        private final CompletableFuture<Author> author;
+        private final String message;
+        private final MessageEmbed embed;
+        private boolean secondAttempt = false; // only touched while it's the channel's current delivery
+        private int rateLimitedAttempts = 0;
+
+        private Delivery(CompletableFuture<Author> author, String message, MessageEmbed embed) {
+            this.author = author;
+            this.message = message;
+            this.embed = embed;
+        }
+
+        /**
+         * Build the request's JSON here on the delivery executor, OkHttp doesn't call back at all if writing the body
+         * throws anything but an IOException, which would leave the channel's queue waiting forever
+         */
+        private RequestBody toRequestBody(Author author) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+            JsonWriter writer = new JsonWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8));
+            writer.beginObject();
+            // workaround for a Discord block for using 'Clyde' in usernames
+            writer.name("username").value(author.webhookName.replaceAll("(?i)(c)l(yde)", "$1I$2").replaceAll("(?i)(clyd)e", "$13"));
+            if (author.webhookAvatarUrl != null) writer.name("avatar_url").value(author.webhookAvatarUrl);
+            if (StringUtils.isNotBlank(message)) writer.name("content").value(message);
+            if (embed != null) {
+                writer.name("embeds").beginArray()
+                        .jsonValue(new String(embed.toData().toJson(), StandardCharsets.UTF_8))
+                        .endArray();
+            }
+
+            writer.name("allowed_mentions").beginObject().name("parse").beginArray();
+            Set<String> parse = new HashSet<>();
+            for (Message.MentionType mentionType : MessageAction.getDefaultMentions()) {
+                String parseKey = mentionType != null ? mentionType.getParseKey() : null;
+                if (parseKey != null && parse.add(parseKey)) writer.value(parseKey);
+            }
+            writer.endArray().endObject();
+
+            writer.endObject();
+            writer.flush();
+            return RequestBody.create(JSON, body.toByteArray());
+        }
+
+    }
+
+}
@@ -22,12 +22,9 @@
 
 package github.scarsz.discordsrv.objects.log4j;
 
-import github.scarsz.configuralize.DynamicConfig;
 import github.scarsz.discordsrv.DiscordSRV;
-import github.scarsz.discordsrv.objects.ConsoleMessage;
-import github.scarsz.discordsrv.util.DiscordUtil;
-import github.scarsz.discordsrv.util.MessageUtil;
-import github.scarsz.discordsrv.util.TimeUtil;
+import github.scarsz.discordsrv.objects.ConsoleLine;
+import github.scarsz.discordsrv.objects.ConsoleMessageQueue;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.core.LogEvent;
@@ -38,8 +35,9 @@ import org.apache.logging.log4j.core.layout.PatternLayout;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 @Plugin(name = "DiscordSRV-ConsoleChannel", category = "Core", elementType = "appender", printObject = true)
 public class ConsoleAppender extends AbstractAppender {
@@ -74,13 +72,52 @@ public class ConsoleAppender extends AbstractAppender {
         }
     }
 
+    // bits of the standard levels that are sent, see levelBit
+    private volatile int levelMask = 0;
+    // non-standard levels that are sent, only consulted for levels without a bit
+    private volatile Set<String> customLevels = Collections.emptySet();
+    private volatile boolean enabled = false;
+
     public ConsoleAppender() {
         super("DiscordSRV-ConsoleChannel", null, PATTERN_LAYOUT, false);
+        reload();
 
         Logger rootLogger = (Logger) LogManager.getRootLogger();
         rootLogger.addAppender(this);
     }
 
+    /**
+     * Re-read the console channel & levels to send from the config
+     */
+    public void reload() {
+        int levelMask = 0;
+        Set<String> customLevels = new HashSet<>();
+        for (String level : DiscordSRV.config().getStringList("DiscordConsoleChannelLevels")) {
+            String name = level.toUpperCase();
+            int bit = levelBit(name);
+            if (bit != 0) levelMask |= bit; else customLevels.add(name);
+        }
+        this.levelMask = levelMask;
+        this.customLevels = customLevels;
+
+        String consoleChannel = DiscordSRV.config().getString("DiscordConsoleChannelId");
+        this.enabled = StringUtils.isNotBlank(consoleChannel) && StringUtils.isNumeric(consoleChannel);
+    }
+
+    private static int levelBit(String level) {
+        switch (level) {
+            case "OFF": return 1;
+            case "FATAL": return 1 << 1;
+            case "ERROR": return 1 << 2;
+            case "WARN": return 1 << 3;
+            case "INFO": return 1 << 4;
+            case "DEBUG": return 1 << 5;
+            case "TRACE": return 1 << 6;
+            case "ALL": return 1 << 7;
+            default: return 0;
+        }
+    }
+
     public void shutdown() {
         Logger rootLogger = (Logger) LogManager.getRootLogger();
         rootLogger.removeAppender(this);
@@ -91,50 +128,25 @@ public class ConsoleAppender extends AbstractAppender {
         return PATTERN_LAYOUT != null;
     }
 
+    /**
+     * Runs on whatever thread logged the line, so this only captures it; stripping, filtering & formatting
+     * is done in batches by the {@link github.scarsz.discordsrv.objects.threads.ConsoleMessageQueueWorker}
+     */
     @Override
     public void append(LogEvent event) {
-        final DiscordSRV plugin = DiscordSRV.getPlugin();
-
         // return if console channel isn't available / is disabled
-        if (plugin.getConsoleChannel() == null) return;
-
-        final DynamicConfig config = DiscordSRV.config();
-        final String eventLevel = event.getLevel().name().toUpperCase();
+        if (!enabled) return;
 
         // return if this is not an okay level to send
-        boolean isAnOkayLevel = false;
-        for (String enabledLevel : config.getStringList("DiscordConsoleChannelLevels")) {
-            if (eventLevel.equals(enabledLevel.toUpperCase())) {
-                isAnOkayLevel = true;
-                break;
-            }
-        }
-        if (!isAnOkayLevel) return;
-
-        String line = event.getMessage().getFormattedMessage();
-
-        // remove coloring
-        line = DiscordUtil.aggressiveStrip(line);
-        line = MessageUtil.strip(line);
-
-        // do nothing if line is blank before parsing
-        if (StringUtils.isBlank(line)) return;
-
-        // apply regex to line
-        for (Map.Entry<Pattern, String> entry : plugin.getConsoleRegexes().entrySet()) {
-            line = entry.getKey().matcher(line).replaceAll(entry.getValue());
-            if (StringUtils.isBlank(line)) return;
-        }
-
-        // escape markdown
-        line = DiscordUtil.escapeMarkdown(line);
+        final String eventLevel = event.getLevel().name();
+        int bit = levelBit(eventLevel);
+        if (bit != 0 ? (levelMask & bit) == 0 : !customLevels.contains(eventLevel.toUpperCase())) return;
 
-        // trim
-        line = line.trim();
+        ConsoleMessageQueue queue = DiscordSRV.getPlugin().getConsoleMessageQueue();
+        if (queue == null) return;
 
-        // queue final message
-        plugin.getConsoleMessageQueue()
-                .add(new ConsoleMessage(TimeUtil.timeStamp(), eventLevel, line));
+        // the message has to be formatted now, log4j may reuse the message object once this returns
+        queue.offer(new ConsoleLine(System.currentTimeMillis(), eventLevel, event.getMessage().getFormattedMessage(), 1));
     }
 
 }
@@ -24,9 +24,11 @@ package github.scarsz.discordsrv.objects.managers;
 
 import org.bukkit.event.Listener;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Class for accessing and managing linked accounts.
@@ -54,6 +56,30 @@ public abstract class AccountLinkManager implements Listener {
      */
     public abstract UUID getUuid(String discordId);
 
+    /**
+     * Gets the Discord ID for a given player's linked account without blocking the calling thread.
+     * The future is already completed if the link is in memory.
+     *
+     * @param uuid the player's UUID
+     * @return a future for the player's linked account's Discord user id or {@code null}.
+     * @see #getDiscordId(UUID)
+     */
+    public CompletableFuture<String> getDiscordIdAsync(UUID uuid) {
+        return CompletableFuture.completedFuture(getDiscordId(uuid));
+    }
+
+    /**
+     * Gets the Minecraft uuid for a given user's linked account without blocking the calling thread.
+     * The future is already completed if the link is in memory.
+     *
+     * @param discordId the Discord user's id.
+     * @return a future for the user's linked account's uuid or {@code null}.
+     * @see #getUuid(String)
+     */
+    public CompletableFuture<UUID> getUuidAsync(String discordId) {
+        return CompletableFuture.completedFuture(getUuid(discordId));
+    }
+
     /**
      * Gets the amount of linked accounts. This is kept in memory and is recommended over doing {@code getLinkedAccounts().size()}.
      *
@@ -81,6 +107,28 @@ public abstract class AccountLinkManager implements Listener {
      */
     public abstract Map<String, UUID> getManyUuids(Set<String> discordIds);
 
+    /**
+     * Gets multiple Discord id's for multiple uuids at once without blocking the calling thread.
+     *
+     * @param uuids the set of Minecraft player uuids.
+     * @return a future for the map of UUID-Discord id pairs
+     * @see #getManyDiscordIds(Set)
+     */
+    public CompletableFuture<Map<UUID, String>> getManyDiscordIdsAsync(Set<UUID> uuids) {
+        return CompletableFuture.completedFuture(getManyDiscordIds(uuids));
+    }
+
+    /**
+     * Gets multiple player uuid's for multiple Discord user ids at once without blocking the calling thread.
+     *
+     * @param discordIds the set of Discord user ids.
+     * @return a future for the map of Discord id-UUID pairs
+     * @see #getManyUuids(Set)
+     */
+    public CompletableFuture<Map<String, UUID>> getManyUuidsAsync(Set<String> discordIds) {
+        return CompletableFuture.completedFuture(getManyUuids(discordIds));
+    }
+
     /**
      * Gets all linked accounts.
      *
@@ -121,6 +169,25 @@ public abstract class AccountLinkManager implements Listener {
      */
     public abstract String getDiscordIdBypassCache(UUID uuid);
 
+    /**
+     * <p>Not recommended, may lead to blocking requests to storage backends</p>
+     * Requests the Discord ids for the given players bypassing any caches or main thread checks,
+     * in as few requests to the storage backend as it allows. Unsafe.
+     *
+     * @param uuids the set of Minecraft player uuids.
+     * @return the map of UUID-Discord id pairs, if a given player isn't linked there will be no entry for that player,
+     * or {@code null} if the storage backend couldn't be reached
+     * @see #getDiscordIdBypassCache(UUID)
+     */
+    public Map<UUID, String> getManyDiscordIdsBypassCache(Set<UUID> uuids) {
+        Map<UUID, String> results = new HashMap<>();
+        for (UUID uuid : uuids) {
+            String discordId = getDiscordIdBypassCache(uuid);
+            if (discordId != null) results.put(uuid, discordId);
+        }
+        return results;
+    }
+
     /**
      * <p>Not recommended, may lead to blocking requests to storage backends</p>
      * Requests the Minecraft player UUID for the given Discord user id bypassing any caches or main thread checks. Unsafe.
@@ -154,4 +221,10 @@ public abstract class AccountLinkManager implements Listener {
 
     public abstract void save();
 
+    /**
+     * Release what the manager holds on to (like database connections & threads), after it was saved for the last
+     * time. The manager can't be used anymore after this.
+     */
+    public void shutdown() {}
+
 }
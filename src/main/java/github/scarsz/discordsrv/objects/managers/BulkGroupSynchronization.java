@@ -0,0 +1,462 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects.managers;
+
+import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.objects.managers.GroupSynchronizationManager.SyncCause;
+import github.scarsz.discordsrv.objects.managers.GroupSynchronizationManager.SyncDirection;
+import github.scarsz.discordsrv.util.DiscordUtil;
+import github.scarsz.discordsrv.util.PluginUtil;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+import net.milkbowl.vault.permission.Permission;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * <p>Synchronizes groups & roles of many linked players in one go, for full resyncs.</p>
+ * <p>Synchronizables and config are resolved once per run, Vault is asked if a player is in a group once per player
+ * & group (inherited groups included, like a single player's resync) and roles are read from JDA's member cache
+ * (every member is cached, so a member that isn't there isn't in the server), which leaves the role changes as the
+ * only requests made to Discord. Those are sent with a bounded amount in flight: JDA's rate limiter paces them per
+ * route without thousands of them queued in front of everything else the bot sends.</p>
+ */
+public class BulkGroupSynchronization {
+
+    private static final int MAX_REQUESTS_IN_FLIGHT = 8;
+    private static final int MAX_MEMBERS_PER_RETRIEVE = 100; // Discord's limit for requesting guild members by id
+    private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+    private final GroupSynchronizationManager manager;
+    private final SyncDirection direction;
+    private final SyncCause cause;
+    private final Consumer<Progress> progressListener;
+    private final int id;
+    private final Semaphore requestsInFlight = new Semaphore(MAX_REQUESTS_IN_FLIGHT);
+
+    private Permission permission;
+    private List<Synchronizable> synchronizables;
+    private Set<String> serverGroups;
+    private boolean minecraftIsStrictlyAuthoritative;
+    private boolean discordIsStrictlyAuthoritative;
+    private boolean minecraftIsAuthoritativeByDefault;
+    private boolean primaryGroupOnly;
+    private boolean denyPermission;
+    private boolean luckPerms;
+    private Map<Guild, Map<String, Member>> retrievedMembers;
+
+    BulkGroupSynchronization(GroupSynchronizationManager manager, SyncDirection direction, SyncCause cause, int id, Consumer<Progress> progressListener) {
+        this.manager = manager;
+        this.direction = direction;
+        this.cause = cause;
+        this.id = id;
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Synchronize every given player, returning once every change has been made
+     * @param links the Discord ids of the players to synchronize
+     * @return the final progress, or null if the synchronization didn't run
+     */
+    Progress run(Map<UUID, String> links) {
+        permission = manager.getPermissions();
+        if (permission == null) return null;
+
+        boolean oneWaySynchronisation = DiscordSRV.config().getBoolean("GroupRoleSynchronizationOneWay");
+        minecraftIsAuthoritativeByDefault = DiscordSRV.config().getBoolean("GroupRoleSynchronizationMinecraftIsAuthoritative");
+        minecraftIsStrictlyAuthoritative = oneWaySynchronisation && minecraftIsAuthoritativeByDefault;
+        discordIsStrictlyAuthoritative = oneWaySynchronisation && !minecraftIsAuthoritativeByDefault;
+        if ((minecraftIsStrictlyAuthoritative && direction == SyncDirection.TO_MINECRAFT) || (discordIsStrictlyAuthoritative && direction == SyncDirection.TO_DISCORD)) {
+            DiscordSRV.debug("Group synchronization (#" + id + ") " + direction + " cancelled because " + (minecraftIsStrictlyAuthoritative ? "Minecraft" : "Discord") + " is strictly authoritative");
+            return null;
+        }
+        primaryGroupOnly = DiscordSRV.config().getBoolean("GroupRoleSynchronizationPrimaryGroupOnly");
+        denyPermission = DiscordSRV.config().getBoolean("GroupRoleSynchronizationEnableDenyPermission");
+        luckPerms = PluginUtil.pluginHookIsEnabled("LuckPerms");
+
+        synchronizables = new ArrayList<>();
+        for (Map.Entry<String, String> entry : DiscordSRV.getPlugin().getGroupSynchronizables().entrySet()) {
+            String groupName = entry.getKey();
+            String roleId = entry.getValue();
+            if (StringUtils.isBlank(groupName)) continue;
+            if (StringUtils.isBlank(roleId.replace("0", ""))) continue;
+
+            Role role = DiscordUtil.getRole(roleId);
+            if (role == null) {
+                DiscordSRV.debug("Group synchronization (#" + id + "): tried to sync role " + roleId + " but could not find role");
+                continue;
+            }
+            synchronizables.add(new Synchronizable(groupName, role));
+        }
+
+        try {
+            serverGroups = new HashSet<>();
+            for (String group : permission.getGroups()) serverGroups.add(group.toLowerCase(Locale.ROOT));
+        } catch (Throwable t) {
+            manager.vaultError("Could not get the server's groups", t);
+            return null;
+        }
+
+        retrievedMembers = retrieveUncachedMembers(links.values());
+
+        Progress progress = new Progress(links.size());
+        DiscordSRV.debug("Group synchronization (#" + id + ") " + direction + " for " + links.size() + " linked players started. Synchronization cause: " + cause);
+
+        long lastReport = System.currentTimeMillis();
+        for (Map.Entry<UUID, String> entry : links.entrySet()) {
+            try {
+                synchronize(Bukkit.getOfflinePlayer(entry.getKey()), entry.getValue(), progress);
+            } catch (Throwable t) {
+                progress.failed.incrementAndGet();
+                DiscordSRV.error("Group synchronization (#" + id + ") failed for " + entry.getKey(), t);
+            }
+            progress.processed.incrementAndGet();
+
+            long currentTime = System.currentTimeMillis();
+            if (currentTime - lastReport >= PROGRESS_INTERVAL) {
+                lastReport = currentTime;
+                report(progress);
+            }
+        }
+
+        // wait for the last role changes
+        requestsInFlight.acquireUninterruptibly(MAX_REQUESTS_IN_FLIGHT);
+        requestsInFlight.release(MAX_REQUESTS_IN_FLIGHT);
+
+        progress.finished = true;
+        report(progress);
+        return progress;
+    }
+
+    /**
+     * Retrieve the members that aren't in JDA's member cache from Discord, so a member missing from the cache
+     * isn't mistaken for one that isn't in the role's server
+     * @param discordIds the Discord ids of the players to synchronize
+     * @return the retrieved members by their id, per guild
+     */
+    private Map<Guild, Map<String, Member>> retrieveUncachedMembers(Collection<String> discordIds) {
+        Set<Guild> guilds = new HashSet<>();
+        for (Synchronizable synchronizable : synchronizables) guilds.add(synchronizable.role.getGuild());
+
+        Set<String> uniqueIds = new HashSet<>(discordIds);
+        Map<Guild, Map<String, Member>> members = new HashMap<>();
+        for (Guild guild : guilds) {
+            List<String> uncached = new ArrayList<>();
+            for (String discordId : uniqueIds) {
+                try {
+                    if (guild.getMemberById(discordId) == null) uncached.add(discordId);
+                } catch (NumberFormatException ignored) {
+                    // not a valid id, fails for that player when they're synchronized
+                }
+            }
+            if (uncached.isEmpty()) continue;
+
+            Map<String, Member> guildMembers = new HashMap<>();
+            for (int i = 0; i < uncached.size(); i += MAX_MEMBERS_PER_RETRIEVE) {
+                List<String> batch = uncached.subList(i, Math.min(i + MAX_MEMBERS_PER_RETRIEVE, uncached.size()));
+                try {
+                    for (Member member : guild.retrieveMembersByIds(batch.toArray(new String[0])).get()) {
+                        guildMembers.put(member.getId(), member);
+                    }
+                } catch (Throwable t) {
+                    DiscordSRV.debug("Group synchronization (#" + id + "): failed to retrieve " + batch.size() + " members of " + guild + ": " + ExceptionUtils.getMessage(t));
+                }
+            }
+            DiscordSRV.debug("Group synchronization (#" + id + "): retrieved " + guildMembers.size() + "/" + uncached.size() + " uncached members of " + guild);
+            members.put(guild, guildMembers);
+        }
+        return members;
+    }
+
+    /**
+     * @return the member from JDA's cache, or the one retrieved for this synchronization, or null if they aren't in the server
+     */
+    private Member getMember(Guild guild, String discordId) {
+        Member member = guild.getMemberById(discordId);
+        if (member != null) return member;
+        Map<String, Member> guildMembers = retrievedMembers.get(guild);
+        return guildMembers != null ? guildMembers.get(discordId) : null;
+    }
+
+    private void report(Progress progress) {
+        DiscordSRV.debug("Group synchronization (#" + id + "): " + progress);
+        if (progressListener != null) progressListener.accept(progress);
+    }
+
+    private void synchronize(OfflinePlayer player, String discordId, Progress progress) {
+        String primaryGroup = null;
+        try {
+            if (permission.getPlayerGroups(null, player) == null) {
+                DiscordSRV.debug("Group synchronization (#" + id + ") for " + player.getName() + " skipped, Vault returned null as the player's groups");
+                return;
+            }
+            if (primaryGroupOnly) primaryGroup = permission.getPrimaryGroup(null, player);
+        } catch (Throwable t) {
+            manager.vaultError("Could not get player's groups", t);
+            progress.failed.incrementAndGet();
+            return;
+        }
+
+        Map<Guild, Set<Role>> addRoles = new HashMap<>();
+        Map<Guild, Set<Role>> removeRoles = new HashMap<>();
+        List<String> addGroups = new ArrayList<>();
+        List<String> removeGroups = new ArrayList<>();
+        // the same as a single player's resync, inherited groups count too
+        Map<String, Boolean> inGroups = new HashMap<>();
+
+        for (Synchronizable synchronizable : synchronizables) {
+            String groupName = synchronizable.groupName;
+            Role role = synchronizable.role;
+            Member member = getMember(role.getGuild(), discordId);
+            if (member == null) continue; // not in the role's server
+
+            boolean inGroup;
+            boolean hasGroup;
+            try {
+                Boolean cached = inGroups.get(synchronizable.lowerCaseGroupName);
+                inGroup = cached != null ? cached : permission.playerInGroup(null, player, groupName);
+                inGroups.put(synchronizable.lowerCaseGroupName, inGroup);
+                hasGroup = primaryGroupOnly ? groupName.equalsIgnoreCase(primaryGroup) : inGroup;
+                if (permission.playerHas(null, player, "discordsrv.sync." + groupName)) hasGroup = true;
+                if (denyPermission && permission.playerHas(null, player, "discordsrv.sync.deny." + groupName)) hasGroup = false;
+            } catch (Throwable t) {
+                manager.vaultError("Could not check the player's groups/permissions", t);
+                continue;
+            }
+
+            boolean hasRole = member.getRoles().contains(role);
+            if (hasGroup == hasRole) continue;
+
+            boolean roleIsManaged = role.isManaged();
+            // Managed roles cannot be given or taken, so it will be Discord -> Minecraft only
+            if (roleIsManaged && minecraftIsStrictlyAuthoritative) continue;
+            boolean minecraftIsAuthoritative = minecraftIsStrictlyAuthoritative
+                    || (!roleIsManaged
+                        && !discordIsStrictlyAuthoritative
+                        && (direction == SyncDirection.AUTHORITATIVE ? minecraftIsAuthoritativeByDefault : direction == SyncDirection.TO_DISCORD));
+
+            if (minecraftIsAuthoritative) {
+                (hasGroup ? addRoles : removeRoles).computeIfAbsent(role.getGuild(), guild -> new HashSet<>()).add(role);
+            } else if (hasRole) {
+                if (serverGroups.contains(synchronizable.lowerCaseGroupName)) {
+                    addGroups.add(groupName);
+                } else {
+                    DiscordSRV.debug("Group synchronization (#" + id + ") for " + player.getName() + " can't add group " + groupName + ", it doesn't exist");
+                }
+            } else if (inGroup) {
+                removeGroups.add(groupName); // granted by permission otherwise, nothing to remove
+            }
+        }
+
+        if (!addGroups.isEmpty() || !removeGroups.isEmpty()) applyGroups(player, addGroups, removeGroups, progress);
+
+        Set<Guild> guilds = new HashSet<>(addRoles.keySet());
+        guilds.addAll(removeRoles.keySet());
+        for (Guild guild : guilds) {
+            applyRoles(player, guild, discordId,
+                    addRoles.getOrDefault(guild, new HashSet<>()),
+                    removeRoles.getOrDefault(guild, new HashSet<>()),
+                    progress);
+        }
+    }
+
+    private void applyGroups(OfflinePlayer player, List<String> addGroups, List<String> removeGroups, Progress progress) {
+        List<String> additions;
+        List<String> removals;
+        if (luckPerms) {
+            // remembered so the LuckPerms hook doesn't resync the changes made here back to Discord
+            Map<String, List<String>> modified = manager.getJustModifiedGroups().computeIfAbsent(player.getUniqueId(), key -> new HashMap<>());
+            additions = modified.computeIfAbsent("add", key -> new ArrayList<>());
+            removals = modified.computeIfAbsent("remove", key -> new ArrayList<>());
+            additions.addAll(addGroups);
+            removals.addAll(removeGroups);
+        } else {
+            additions = new ArrayList<>();
+            removals = new ArrayList<>();
+        }
+
+        Runnable runnable = () -> {
+            for (String groupName : addGroups) {
+                try {
+                    if (!permission.playerAddGroup(null, player, groupName)) {
+                        DiscordSRV.debug("Synchronization #" + id + " for " + player.getName() + " failed: adding group " + groupName + " returned a failure");
+                        additions.remove(groupName);
+                        progress.failed.incrementAndGet();
+                    }
+                } catch (Throwable t) {
+                    manager.vaultError("Could not add a player to a group", t);
+                }
+            }
+            for (String groupName : removeGroups) {
+                try {
+                    if (!permission.playerRemoveGroup(null, player, groupName)) {
+                        DiscordSRV.debug("Synchronization #" + id + " for " + player.getName() + " failed: removing group " + groupName + " returned a failure");
+                        removals.remove(groupName);
+                        progress.failed.incrementAndGet();
+                    }
+                } catch (Throwable t) {
+                    manager.vaultError("Could not remove a player from a group", t);
+                }
+            }
+        };
+        if (luckPerms) {
+            runnable.run();
+        } else {
+            Bukkit.getScheduler().runTask(DiscordSRV.getPlugin(), runnable);
+        }
+
+        progress.groupChanges.addAndGet(addGroups.size() + removeGroups.size());
+        DiscordSRV.debug("Synchronization #" + id + " for " + player.getName() + ": {addGroups=" + addGroups + ", removeGroups=" + removeGroups + "}");
+    }
+
+    private void applyRoles(OfflinePlayer player, Guild guild, String discordId, Set<Role> add, Set<Role> remove, Progress progress) {
+        Member member = getMember(guild, discordId);
+        if (member == null) return;
+
+        Member selfMember = guild.getSelfMember();
+        if (!selfMember.hasPermission(net.dv8tion.jda.api.Permission.MANAGE_ROLES)) {
+            DiscordSRV.debug("Synchronization #" + id + " failed for " + member + ": bot doesn't have MANAGE_ROLES permission");
+            progress.failed.incrementAndGet();
+            return;
+        }
+        if (!selfMember.canInteract(member)) {
+            DiscordSRV.debug("Synchronization #" + id + " failed for " + member + ": can't interact with member");
+            progress.failed.incrementAndGet();
+            return;
+        }
+        add.removeIf(role -> !selfMember.canInteract(role));
+        remove.removeIf(role -> !selfMember.canInteract(role));
+        if (add.isEmpty() && remove.isEmpty()) {
+            DiscordSRV.debug("Synchronization #" + id + " failed for " + member + ": can't interact with any of the roles to change");
+            progress.failed.incrementAndGet();
+            return;
+        }
+
+        Map<String, Set<Role>> changes = new HashMap<>();
+        changes.put("add", add);
+        changes.put("remove", remove);
+        manager.getJustModifiedRoles().put(member, new AbstractMap.SimpleEntry<>(guild, changes));
+
+        requestsInFlight.acquireUninterruptibly();
+        try {
+            guild.modifyMemberRoles(member, add, remove).reason("DiscordSRV synchronization").queue(
+                    v -> {
+                        requestsInFlight.release();
+                        progress.roleChanges.addAndGet(add.size() + remove.size());
+                        DiscordSRV.debug("Synchronization #" + id + " for {" + player.getName() + ":" + member + "} successful in " + guild + ": {add=" + add + ", remove=" + remove + "}");
+                    },
+                    t -> {
+                        requestsInFlight.release();
+                        progress.failed.incrementAndGet();
+                        DiscordSRV.debug("Synchronization #" + id + " for {" + player.getName() + ":" + member + "} failed in " + guild + ": " + ExceptionUtils.getMessage(t));
+                    });
+        } catch (Throwable t) {
+            requestsInFlight.release();
+            throw t;
+        }
+    }
+
+    private static class Synchronizable {
+
+        private final String groupName;
+        private final String lowerCaseGroupName;
+        private final Role role;
+
+        private Synchronizable(String groupName, Role role) {
+            this.groupName = groupName;
+            this.lowerCaseGroupName = groupName.toLowerCase(Locale.ROOT);
+            this.role = role;
+        }
+
+    }
+
+    public static class Progress {
+
+        private final int total;
+        private final AtomicInteger processed = new AtomicInteger();
+        private final AtomicInteger roleChanges = new AtomicInteger();
+        private final AtomicInteger groupChanges = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private volatile boolean finished;
+
+        private Progress(int total) {
+            this.total = total;
+        }
+
+        /**
+         * @return the amount of linked players being synchronized
+         */
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * @return the amount of players whose changes have been worked out (and sent)
+         */
+        public int getProcessed() {
+            return processed.get();
+        }
+
+        /**
+         * @return the amount of roles added to or removed from members
+         */
+        public int getRoleChanges() {
+            return roleChanges.get();
+        }
+
+        /**
+         * @return the amount of groups added to or removed from players
+         */
+        public int getGroupChanges() {
+            return groupChanges.get();
+        }
+
+        /**
+         * @return the amount of players or changes that failed
+         */
+        public int getFailed() {
+            return failed.get();
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public String toString() {
+            return getProcessed() + "/" + total + " players processed, " + getRoleChanges() + " role changes, "
+                    + getGroupChanges() + " group changes, " + getFailed() + " failures" + (finished ? " (finished)" : "");
+        }
+
+    }
+
+}
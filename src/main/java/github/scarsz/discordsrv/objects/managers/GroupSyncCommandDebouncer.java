@@ -0,0 +1,129 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects.managers;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * <p>Collapses the group changing commands run for a player close together into one resync, so a script running
+ * a burst of commands for the same player doesn't resync them for every one of them.</p>
+ * <p>A player is resynced once no command was run for them for the window, which also gives the last command time to
+ * change the groups. A player that keeps getting commands is resynced after the max delay anyway.</p>
+ */
+public class GroupSyncCommandDebouncer {
+
+    private final long windowMillis;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService executor;
+    private final Consumer<String> resync;
+    private final Map<String, Pending> pending = new HashMap<>(); // guarded by this
+
+    /**
+     * @param windowMillis how long to wait for more commands for the same player
+     * @param maxDelayMillis how long at most to wait after the first command for a player
+     * @param executor the executor to wait on
+     * @param resync resyncs the player with the given username or uuid
+     */
+    public GroupSyncCommandDebouncer(long windowMillis, long maxDelayMillis, ScheduledExecutorService executor, Consumer<String> resync) {
+        this.windowMillis = windowMillis;
+        this.maxDelayMillis = Math.max(windowMillis, maxDelayMillis);
+        this.executor = executor;
+        this.resync = resync;
+    }
+
+    /**
+     * Resync the given player after the window, unless more commands are run for them
+     * @param target the username or uuid of the player
+     */
+    public void submit(String target) {
+        String key = target.toLowerCase(Locale.ROOT);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Pending existing = pending.get(key);
+            if (existing != null) {
+                existing.target = target;
+                existing.last = now;
+                return;
+            }
+            pending.put(key, new Pending(target, now));
+        }
+        schedule(key, windowMillis);
+    }
+
+    /**
+     * @return the amount of players waiting to be resynced
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    private void schedule(String key, long delayMillis) {
+        try {
+            executor.schedule(() -> fire(key), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            synchronized (this) {
+                pending.remove(key);
+            }
+        }
+    }
+
+    private void fire(String key) {
+        long now = System.currentTimeMillis();
+        String target;
+        synchronized (this) {
+            Pending entry = pending.get(key);
+            if (entry == null) return;
+
+            long due = Math.min(entry.last + windowMillis, entry.first + maxDelayMillis);
+            if (due > now) {
+                schedule(key, due - now);
+                return;
+            }
+            pending.remove(key);
+            target = entry.target;
+        }
+        resync.accept(target);
+    }
+
+    private static class Pending {
+
+        private final long first;
+        private long last;
+        private String target;
+
+        private Pending(String target, long time) {
+            this.target = target;
+            this.first = time;
+            this.last = time;
+        }
+
+    }
+
+}
@@ -0,0 +1,130 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects.managers;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Finds the player whose groups are changed by a permission plugin command, so their roles can be synchronized
+ * after the command ran.</p>
+ * <p>Nearly every command run on the server has nothing to do with groups, so the command's name is first looked up
+ * in a trie of the permission plugins' command names, which rejects most commands at the first character of their
+ * name without allocating anything. Only commands that get through are matched against the full patterns, so they
+ * can be checked right away instead of in a task for every command.</p>
+ */
+public class GroupSyncCommandMatcher {
+
+    // LuckPerms isn't here, LuckPermsHook gets its group changes from its API
+    private static final List<String> COMMANDS = Arrays.asList(
+            // GroupManager
+            "manuadd", "manuaddsub", "manudel", "manudelsub", "manupromote", "manudemote",
+            // PermissionsEx
+            "pex",
+            // zPermissions
+            "permissions", "setrank", "unsetrank",
+            // PermissionsEx + zPermissions
+            "promote", "demote"
+    );
+
+    // Capturing group for username or uuid
+    private static final String USER_REGEX = "([0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}|[a-zA-Z0-9_]{1,16})(?: |$)";
+    private static final List<Pattern> PATTERNS = Arrays.asList(
+            // GroupManager
+            Pattern.compile("manu(?:add(?:sub)?|del(?:sub)?|promote|demote) " + USER_REGEX, Pattern.CASE_INSENSITIVE),
+            // PermissionsEx
+            Pattern.compile("pex user " + USER_REGEX + "group(?: timed)? (?:add|set|remove) ", Pattern.CASE_INSENSITIVE),
+            // zPermissions
+            Pattern.compile("permissions player " + USER_REGEX + "(?:setgroup|addgroup|removegroup)(?: |$)", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("(?:un)?setrank " + USER_REGEX, Pattern.CASE_INSENSITIVE),
+            // PermissionsEx + zPermissions
+            Pattern.compile("(?:pex )?(?:promote|demote) " + USER_REGEX, Pattern.CASE_INSENSITIVE)
+    );
+
+    private final Node root = new Node();
+
+    public GroupSyncCommandMatcher() {
+        for (String command : COMMANDS) {
+            Node node = root;
+            for (char c : command.toCharArray()) node = node.children.computeIfAbsent(c, k -> new Node());
+            node.command = true;
+        }
+    }
+
+    /**
+     * @param command the command as it was entered, with or without a leading slash
+     * @return whether or not the command's name is one of a permission plugin's group changing commands
+     */
+    public boolean isCandidate(String command) {
+        return getCommandStart(command) != -1;
+    }
+
+    /**
+     * @param command the command as it was entered, with or without a leading slash
+     * @return the username or uuid of the player whose groups the command changes, or null if it doesn't change groups
+     */
+    public String getTarget(String command) {
+        int start = getCommandStart(command);
+        if (start == -1) return null;
+
+        // matched from the command name on, without the slash & plugin namespace
+        String normalized = command.substring(start);
+        for (Pattern pattern : PATTERNS) {
+            Matcher matcher = pattern.matcher(normalized);
+            if (matcher.lookingAt()) return matcher.group(1);
+        }
+        return null;
+    }
+
+    /**
+     * @return the index the command's name starts at (after the slash & namespace), or -1 if it isn't a known command
+     */
+    private int getCommandStart(String command) {
+        int start = command.startsWith("/") ? 1 : 0;
+        int end = command.indexOf(' ', start);
+        // a command without arguments can't have a target
+        if (end == -1) return -1;
+        // namespaced, like groupmanager:manuadd
+        int namespace = command.lastIndexOf(':', end);
+        if (namespace >= start) start = namespace + 1;
+
+        Node node = root;
+        for (int i = start; i < end; i++) {
+            node = node.children.get(Character.toLowerCase(command.charAt(i)));
+            if (node == null) return -1;
+        }
+        return node.command ? start : -1;
+    }
+
+    private static class Node {
+
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private boolean command = false;
+
+    }
+
+}
@@ -22,8 +22,9 @@
 
 package github.scarsz.discordsrv.objects.managers;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import github.scarsz.discordsrv.DiscordSRV;
-import github.scarsz.discordsrv.objects.ExpiringDualHashBidiMap;
+import github.scarsz.discordsrv.objects.ExpiringBidiMap;
 import github.scarsz.discordsrv.util.DiscordUtil;
 import github.scarsz.discordsrv.util.GamePermissionUtil;
 import github.scarsz.discordsrv.util.PlayerUtil;
@@ -42,33 +43,39 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerCommandPreprocessEvent;
 import org.bukkit.event.server.RemoteServerCommandEvent;
 import org.bukkit.event.server.ServerCommandEvent;
+import org.bukkit.plugin.IllegalPluginAccessException;
 import org.bukkit.plugin.RegisteredServiceProvider;
 import org.jetbrains.annotations.NotNull;
 
 import javax.annotation.Nonnull;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class GroupSynchronizationManager extends ListenerAdapter implements Listener {
 
     private final AtomicInteger synchronizationCount = new AtomicInteger(0);
-    private final Map<Member, Map.Entry<Guild, Map<String, Set<Role>>>> justModifiedRoles = new HashMap<>();
+    private final Map<Member, Map.Entry<Guild, Map<String, Set<Role>>>> justModifiedRoles = new ConcurrentHashMap<>();
     // expiring just incase, so it doesn't stick around (avoiding memory leaks)
     private final Map<UUID, Map<String, List<String>>> justModifiedGroups =
-            new ExpiringDualHashBidiMap<>(TimeUnit.MINUTES.toMillis(1));
+            new ExpiringBidiMap<>(TimeUnit.MINUTES.toMillis(1), false);
     private final Map<String, Set<String>> membersNotInGuilds = new ConcurrentHashMap<>();
 
+    private static final long COMMAND_RESYNC_WINDOW_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final long COMMAND_RESYNC_MAX_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
     @Deprecated
     public void resync() {
         resync(SyncCause.LEGACY);
@@ -113,20 +120,38 @@ public class GroupSynchronizationManager extends ListenerAdapter implements List
     public void resync(SyncDirection direction, SyncCause cause) {
         if (getPermissions() == null) return;
 
-        Set<OfflinePlayer> players = new HashSet<>(PlayerUtil.getOnlinePlayers());
+        // synchronize everyone in the connected discord servers
+        // otherwise, only online players are synchronized
+        Set<UUID> players = PlayerUtil.getOnlinePlayerSnapshot().getPlayers().stream().map(Player::getUniqueId).collect(Collectors.toSet());
+        resyncBulk(players, DiscordSRV.config().getBoolean("GroupRoleSynchronizationCycleCompletely"), direction, cause, null);
+    }
+
+    /**
+     * Synchronize the given players and optionally every linked member of the connected Discord servers in one go
+     * @return the final progress of the synchronization, or null if it didn't run
+     */
+    private BulkGroupSynchronization.Progress resyncBulk(Set<UUID> players, boolean guildMembers, SyncDirection direction, SyncCause cause, Consumer<BulkGroupSynchronization.Progress> progressListener) {
+        if (Bukkit.isPrimaryThread()) throw new IllegalStateException("Resync cannot be run on the server main thread");
+        AccountLinkManager accountLinkManager = DiscordSRV.getPlugin().getAccountLinkManager();
+        if (accountLinkManager == null) {
+            DiscordSRV.debug("Tried to sync groups but the AccountLinkManager wasn't initialized yet");
+            return null;
+        }
 
-        if (DiscordSRV.config().getBoolean("GroupRoleSynchronizationCycleCompletely")) {
-            // synchronize everyone in the connected discord servers
-            // otherwise, only online players are synchronized
-            DiscordUtil.getJda().getGuilds().stream()
+        // every link is looked up with two queries, instead of one per player
+        Map<UUID, String> links = new LinkedHashMap<>(accountLinkManager.getManyDiscordIds(players));
+        if (guildMembers) {
+            Set<String> memberIds = DiscordUtil.getJda().getGuilds().stream()
                     .flatMap(guild -> guild.getMembers().stream())
-                    .map(member -> DiscordSRV.getPlugin().getAccountLinkManager().getUuid(member.getId()))
-                    .filter(Objects::nonNull)
-                    .map(Bukkit::getOfflinePlayer)
-                    .forEach(players::add);
+                    .map(ISnowflake::getId)
+                    .collect(Collectors.toSet());
+            accountLinkManager.getManyUuids(memberIds).forEach((discordId, uuid) -> {
+                if (uuid != null) links.putIfAbsent(uuid, discordId);
+            });
         }
+        links.values().removeIf(Objects::isNull);
 
-        players.forEach(player -> resync(player, direction, cause));
+        return new BulkGroupSynchronization(this, direction, cause, synchronizationCount.incrementAndGet(), progressListener).run(links);
     }
 
     public void resync(User user, SyncCause cause) {
@@ -467,7 +492,7 @@ public class GroupSynchronizationManager extends ListenerAdapter implements List
         DiscordSRV.debug(synchronizationSummary);
     }
 
-    private void vaultError(String problem, Throwable throwable) {
+    void vaultError(String problem, Throwable throwable) {
         String name;
         Permission permission = getPermissions();
         try {
@@ -482,32 +507,21 @@ public class GroupSynchronizationManager extends ListenerAdapter implements List
         resyncEveryone(SyncDirection.AUTHORITATIVE, cause);
     }
     public void resyncEveryone(SyncDirection direction, SyncCause cause) {
-        Set<OfflinePlayer> players = new HashSet<>();
+        resyncEveryone(direction, cause, null);
+    }
 
-        // synchronize everyone with a linked account that's played on the server
-        DiscordSRV.getPlugin().getAccountLinkManager().getManyDiscordIds(Arrays.stream(Bukkit.getOfflinePlayers())
+    /**
+     * Synchronize everyone with a linked account that's played on the server or is in the connected Discord servers
+     * @param progressListener notified of the synchronization's progress every few seconds & when it's finished, may be null
+     * @return the final progress of the synchronization, or null if it didn't run
+     */
+    public BulkGroupSynchronization.Progress resyncEveryone(SyncDirection direction, SyncCause cause, Consumer<BulkGroupSynchronization.Progress> progressListener) {
+        if (getPermissions() == null) return null;
+
+        Set<UUID> players = Arrays.stream(Bukkit.getOfflinePlayers())
                 .map(OfflinePlayer::getUniqueId)
-                .collect(Collectors.toSet())
-        ).keySet().stream()
-                .map(Bukkit.getServer()::getOfflinePlayer)
-                .forEach(players::add);
-
-        // synchronize everyone with a linked account in the connected discord servers
-        Map<String, UUID> linkedDiscords = DiscordSRV.getPlugin().getAccountLinkManager().getManyUuids(
-                DiscordUtil.getJda().getGuilds().stream()
-                        .flatMap(guild -> guild.getMembers().stream())
-                        .map(ISnowflake::getId)
-                        .collect(Collectors.toSet())
-        );
-        DiscordUtil.getJda().getGuilds().stream()
-                .flatMap(guild -> guild.getMembers().stream())
-                .filter(member -> linkedDiscords.containsKey(member.getId()))
-                .map(member -> linkedDiscords.get(member.getId()))
-                .filter(Objects::nonNull)
-                .map(Bukkit::getOfflinePlayer)
-                .forEach(players::add);
-
-        players.forEach(player -> resync(player, direction, cause));
+                .collect(Collectors.toSet());
+        return resyncBulk(players, true, direction, cause, progressListener);
     }
 
     public void removeSynchronizables(OfflinePlayer player) {
@@ -606,69 +620,78 @@ public class GroupSynchronizationManager extends ListenerAdapter implements List
         resync(member.getUser(), SyncDirection.TO_MINECRAFT, SyncCause.DISCORD_ROLE_EDIT);
     }
 
-    // Capturing group for username or uuid
-    private final String userRegex = "([0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}|[a-zA-Z0-9_]{1,16})";
-    private final List<Pattern> patterns = Arrays.asList(
-            // GroupManager
-            Pattern.compile("/?manu(?:add(?:sub)?|del(?:sub)?|promote|demote) " + userRegex + ".*", Pattern.CASE_INSENSITIVE),
-            // PermissionsEx
-            Pattern.compile("/?pex user " + userRegex + " group(?: timed)? (?:add)|(?:set)|(?:remove) .*", Pattern.CASE_INSENSITIVE),
-            // zPermissions
-            Pattern.compile("/?permissions player " + userRegex + " (?:(?:setgroup)|(?:addgroup)|(?:removegroup)).*", Pattern.CASE_INSENSITIVE),
-            Pattern.compile("/?(?:un)?setrank " + userRegex + ".*", Pattern.CASE_INSENSITIVE),
-            // PermissionsEx + zPermissions
-            Pattern.compile("/?(?:pex )?(?:promote|demote) " + userRegex + ".*", Pattern.CASE_INSENSITIVE)
+    private final GroupSyncCommandMatcher commandMatcher = new GroupSyncCommandMatcher();
+    private final ScheduledExecutorService commandExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("DiscordSRV - Group Sync Commands")
+            .setDaemon(true)
+            .build());
+    private final GroupSyncCommandDebouncer commandDebouncer = new GroupSyncCommandDebouncer(
+            COMMAND_RESYNC_WINDOW_MILLIS,
+            COMMAND_RESYNC_MAX_DELAY_MILLIS,
+            commandExecutor,
+            this::resyncCommandTarget
     );
 
+    /**
+     * Stop waiting to resync the players group changing commands were run for
+     */
+    public void shutdown() {
+        commandExecutor.shutdownNow();
+    }
+
     @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
     public void onServerCommand(ServerCommandEvent event) {
-        Bukkit.getScheduler().runTaskAsynchronously(DiscordSRV.getPlugin(), () -> checkCommand(event.getCommand()));
+        checkCommand(event.getCommand());
     }
 
     @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
     public void onRemoteServerCommand(RemoteServerCommandEvent event) {
-        Bukkit.getScheduler().runTaskAsynchronously(DiscordSRV.getPlugin(), () -> checkCommand(event.getCommand()));
+        checkCommand(event.getCommand());
     }
 
     @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
     public void onPlayerCommandPreprocess(PlayerCommandPreprocessEvent event) {
+        if (!commandMatcher.isCandidate(event.getMessage())) return;
         if (!GamePermissionUtil.hasPermission(event.getPlayer(), "discordsrv.groupsyncwithcommands")) {
             return;
         }
-        Bukkit.getScheduler().runTaskAsynchronously(DiscordSRV.getPlugin(), () -> checkCommand(event.getMessage()));
+        checkCommand(event.getMessage());
     }
 
-    @SuppressWarnings({"deprecation", "ConstantConditions"}) // 2013 Bukkit
     private void checkCommand(String message) {
+        String target = commandMatcher.getTarget(message);
+        if (target == null) return;
         if (!DiscordSRV.getPlugin().isGroupRoleSynchronizationEnabled()) return;
 
-        OfflinePlayer target = patterns.stream()
-                .map(pattern -> pattern.matcher(message))
-                .filter(Matcher::find)
-                .map(matcher -> matcher.group(1))
-                .filter(Objects::nonNull)
-                .map(input -> {
-                    OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(input);
-                    if (offlinePlayer != null) return offlinePlayer;
-
-                    try {
-                        return Bukkit.getOfflinePlayer(UUID.fromString(input));
-                    } catch (IllegalArgumentException ignored) {}
-                    return null;
-                })
-                .findAny().orElse(null);
+        // resynced after the burst of commands for them is over, so this command has time to change the group state
+        commandDebouncer.submit(target);
+    }
 
-        // run task later so that this command has time to execute & change the group state
-        Bukkit.getScheduler().runTaskLaterAsynchronously(DiscordSRV.getPlugin(),
-                () -> resync(target, SyncDirection.TO_DISCORD, SyncCause.MINECRAFT_GROUP_EDIT_COMMAND),
-                5
-        );
+    @SuppressWarnings({"deprecation", "ConstantConditions"}) // 2013 Bukkit
+    private void resyncCommandTarget(String target) {
+        try {
+            Bukkit.getScheduler().runTaskAsynchronously(DiscordSRV.getPlugin(), () -> {
+                OfflinePlayer offlinePlayer = null;
+                try {
+                    offlinePlayer = Bukkit.getOfflinePlayer(UUID.fromString(target));
+                } catch (IllegalArgumentException ignored) {}
+                if (offlinePlayer == null) offlinePlayer = Bukkit.getOfflinePlayer(target);
+
+                resync(offlinePlayer, SyncDirection.TO_DISCORD, SyncCause.MINECRAFT_GROUP_EDIT_COMMAND);
+            });
+        } catch (IllegalPluginAccessException e) {
+            DiscordSRV.debug("Not resyncing " + target + " after a group command, DiscordSRV is disabled");
+        }
     }
 
     public Map<UUID, Map<String, List<String>>> getJustModifiedGroups() {
         return justModifiedGroups;
     }
 
+    Map<Member, Map.Entry<Guild, Map<String, Set<Role>>>> getJustModifiedRoles() {
+        return justModifiedRoles;
+    }
+
     private Permission permission = null;
     private boolean warnedAboutMissingVault = false;
     public Permission getPermissions() {
@@ -25,6 +25,7 @@ package github.scarsz.discordsrv.objects.managers.link;
 import github.scarsz.discordsrv.DiscordSRV;
 import github.scarsz.discordsrv.api.events.AccountLinkedEvent;
 import github.scarsz.discordsrv.api.events.AccountUnlinkedEvent;
+import github.scarsz.discordsrv.modules.requirelink.RequireLinkModule;
 import github.scarsz.discordsrv.objects.managers.AccountLinkManager;
 import github.scarsz.discordsrv.objects.managers.GroupSynchronizationManager;
 import github.scarsz.discordsrv.util.DiscordUtil;
@@ -87,6 +88,10 @@ public abstract class AbstractAccountLinkManager extends AccountLinkManager {
     }
 
     protected void afterLink(String discordId, UUID uuid) {
+        // they might be logging in right after linking
+        RequireLinkModule requireLinkModule = DiscordSRV.getPlugin().getRequireLinkModule();
+        if (requireLinkModule != null) requireLinkModule.noticePlayerLink(uuid);
+
         // call link event
         DiscordSRV.api.callEvent(new AccountLinkedEvent(DiscordUtil.getUserById(discordId), uuid));
 
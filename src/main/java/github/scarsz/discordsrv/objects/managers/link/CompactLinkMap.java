@@ -0,0 +1,372 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects.managers.link;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * <p>Compact, bidirectional Discord id &lt;-&gt; Minecraft uuid map.</p>
+ * <p>Links are kept as primitive longs (snowflakes and both halves of the uuid) in parallel arrays, indexed by
+ * two open-addressing tables, which makes a link cost around 40 bytes instead of a few hundred for boxed maps.
+ * Reads are optimistic and only take the read lock if they raced with a write.</p>
+ */
+public class CompactLinkMap {
+
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final StampedLock lock = new StampedLock();
+
+    // entries, densely packed in [0, size)
+    private long[] discordIds;
+    private long[] uuidMost;
+    private long[] uuidLeast;
+    private int size = 0;
+
+    // linear probing tables holding entry indices, twice the length of the entry arrays
+    private int[] discordTable;
+    private int[] uuidTable;
+
+    public CompactLinkMap() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public CompactLinkMap(int expectedSize) {
+        allocate(Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize) - 1) << 1));
+    }
+
+    /**
+     * Parses a Discord user id into its primitive snowflake
+     * @throws NumberFormatException if the given id isn't a snowflake
+     */
+    public static long parseSnowflake(String discordId) {
+        return Long.parseUnsignedLong(discordId.trim());
+    }
+
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int size = this.size;
+        if (lock.validate(stamp)) return size;
+
+        stamp = lock.readLock();
+        try {
+            return this.size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public String getDiscordId(UUID uuid) {
+        long most = uuid.getMostSignificantBits(), least = uuid.getLeastSignificantBits();
+
+        long stamp = lock.tryOptimisticRead();
+        long discordId = findByUuid(most, least);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                discordId = findByUuid(most, least);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return discordId != 0 ? Long.toUnsignedString(discordId) : null;
+    }
+
+    public UUID getUuid(String discordId) {
+        long snowflake;
+        try {
+            snowflake = parseSnowflake(discordId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return getUuid(snowflake);
+    }
+
+    public UUID getUuid(long discordId) {
+        long stamp = lock.tryOptimisticRead();
+        UUID uuid = findByDiscordId(discordId);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                uuid = findByDiscordId(discordId);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return uuid;
+    }
+
+    /**
+     * Links the given Discord id and uuid, replacing any existing link of either of them
+     */
+    public void put(String discordId, UUID uuid) {
+        put(parseSnowflake(discordId), uuid);
+    }
+
+    public void put(long discordId, UUID uuid) {
+        if (discordId == 0) throw new IllegalArgumentException("Discord id can't be 0");
+        long most = uuid.getMostSignificantBits(), least = uuid.getLeastSignificantBits();
+
+        long stamp = lock.writeLock();
+        try {
+            int existing = indexOfDiscordId(discordId);
+            if (existing != EMPTY) removeEntry(existing);
+            existing = indexOfUuid(most, least);
+            if (existing != EMPTY) removeEntry(existing);
+
+            if (size == discordIds.length) allocate(discordIds.length << 1);
+
+            int index = size++;
+            discordIds[index] = discordId;
+            uuidMost[index] = most;
+            uuidLeast[index] = least;
+            insert(discordTable, mix(discordId), index);
+            insert(uuidTable, mix(most ^ least), index);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public String removeByUuid(UUID uuid) {
+        long stamp = lock.writeLock();
+        try {
+            int index = indexOfUuid(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            if (index == EMPTY) return null;
+            long discordId = discordIds[index];
+            removeEntry(index);
+            return Long.toUnsignedString(discordId);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public UUID removeByDiscordId(String discordId) {
+        long snowflake;
+        try {
+            snowflake = parseSnowflake(discordId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            int index = indexOfDiscordId(snowflake);
+            if (index == EMPTY) return null;
+            UUID uuid = new UUID(uuidMost[index], uuidLeast[index]);
+            removeEntry(index);
+            return uuid;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            size = 0;
+            allocate(INITIAL_CAPACITY);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return a copy of all links as a Discord id-UUID map
+     */
+    public Map<String, UUID> toMap() {
+        long stamp = lock.readLock();
+        try {
+            Map<String, UUID> map = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                map.put(Long.toUnsignedString(discordIds[i]), new UUID(uuidMost[i], uuidLeast[i]));
+            }
+            return map;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Runs the given consumer for every link while holding the read lock
+     */
+    public void forEach(LinkConsumer consumer) {
+        long stamp = lock.readLock();
+        try {
+            for (int i = 0; i < size; i++) consumer.accept(discordIds[i], uuidMost[i], uuidLeast[i]);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @FunctionalInterface
+    public interface LinkConsumer {
+        void accept(long discordId, long uuidMost, long uuidLeast);
+    }
+
+    // lookups that are safe to run optimistically: they never index outside of the arrays they read and
+    // never probe longer than the table, whatever state a concurrent write leaves them in
+
+    private long findByUuid(long most, long least) {
+        int[] table = uuidTable;
+        long[] mostBits = uuidMost, leastBits = uuidLeast, ids = discordIds;
+        int mask = table.length - 1;
+        int slot = mix(most ^ least) & mask;
+        for (int probes = 0; probes < table.length; probes++) {
+            int index = table[slot];
+            if (index == EMPTY) return 0;
+            if (index >= 0 && index < mostBits.length && index < leastBits.length && index < ids.length
+                    && mostBits[index] == most && leastBits[index] == least) {
+                return ids[index];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    private UUID findByDiscordId(long discordId) {
+        int[] table = discordTable;
+        long[] ids = discordIds, mostBits = uuidMost, leastBits = uuidLeast;
+        int mask = table.length - 1;
+        int slot = mix(discordId) & mask;
+        for (int probes = 0; probes < table.length; probes++) {
+            int index = table[slot];
+            if (index == EMPTY) return null;
+            if (index >= 0 && index < ids.length && index < mostBits.length && index < leastBits.length
+                    && ids[index] == discordId) {
+                return new UUID(mostBits[index], leastBits[index]);
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    // everything below must be called while holding the write lock
+
+    private int indexOfDiscordId(long discordId) {
+        int mask = discordTable.length - 1;
+        int slot = mix(discordId) & mask;
+        int index;
+        while ((index = discordTable[slot]) != EMPTY) {
+            if (discordIds[index] == discordId) return index;
+            slot = (slot + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    private int indexOfUuid(long most, long least) {
+        int mask = uuidTable.length - 1;
+        int slot = mix(most ^ least) & mask;
+        int index;
+        while ((index = uuidTable[slot]) != EMPTY) {
+            if (uuidMost[index] == most && uuidLeast[index] == least) return index;
+            slot = (slot + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    private void removeEntry(int index) {
+        delete(discordTable, slotOf(discordTable, mix(discordIds[index]), index), true);
+        delete(uuidTable, slotOf(uuidTable, mix(uuidMost[index] ^ uuidLeast[index]), index), false);
+
+        // keep the entries dense by moving the last entry into the hole
+        int last = --size;
+        if (index != last) {
+            discordIds[index] = discordIds[last];
+            uuidMost[index] = uuidMost[last];
+            uuidLeast[index] = uuidLeast[last];
+            discordTable[slotOf(discordTable, mix(discordIds[index]), last)] = index;
+            uuidTable[slotOf(uuidTable, mix(uuidMost[index] ^ uuidLeast[index]), last)] = index;
+        }
+    }
+
+    private static int slotOf(int[] table, int hash, int index) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != index) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private static void insert(int[] table, int hash, int index) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != EMPTY) slot = (slot + 1) & mask;
+        table[slot] = index;
+    }
+
+    /**
+     * Backward shift deletion, keeps probe sequences intact without tombstones
+     */
+    private void delete(int[] table, int slot, boolean discord) {
+        int mask = table.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        int index;
+        while ((index = table[next]) != EMPTY) {
+            int home = (discord ? mix(discordIds[index]) : mix(uuidMost[index] ^ uuidLeast[index])) & mask;
+            // move the entry back if its home slot isn't cyclically between the hole and its current slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table[hole] = index;
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[hole] = EMPTY;
+    }
+
+    private void allocate(int capacity) {
+        long[] ids = new long[capacity], most = new long[capacity], least = new long[capacity];
+        if (discordIds != null) {
+            System.arraycopy(discordIds, 0, ids, 0, size);
+            System.arraycopy(uuidMost, 0, most, 0, size);
+            System.arraycopy(uuidLeast, 0, least, 0, size);
+        }
+        int[] discordTable = new int[capacity << 1], uuidTable = new int[capacity << 1];
+        Arrays.fill(discordTable, EMPTY);
+        Arrays.fill(uuidTable, EMPTY);
+        for (int i = 0; i < size; i++) {
+            insert(discordTable, mix(ids[i]), i);
+            insert(uuidTable, mix(most[i] ^ least[i]), i);
+        }
+
+        this.discordIds = ids;
+        this.uuidMost = most;
+        this.uuidLeast = least;
+        this.discordTable = discordTable;
+        this.uuidTable = uuidTable;
+    }
+
+    private static int mix(long value) {
+        // murmur3 finalizer
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+
+}
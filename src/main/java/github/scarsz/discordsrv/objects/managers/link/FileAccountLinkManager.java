@@ -30,12 +30,12 @@ import github.scarsz.discordsrv.util.DiscordUtil;
 import github.scarsz.discordsrv.util.LangUtil;
 import github.scarsz.discordsrv.util.MessageUtil;
 import github.scarsz.discordsrv.util.PrettyUtil;
-import org.apache.commons.collections4.bidimap.DualHashBidiMap;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
@@ -45,16 +45,43 @@ import java.util.UUID;
 
 public class FileAccountLinkManager extends AbstractAccountLinkManager {
 
-    private final DualHashBidiMap<String, UUID> linkedAccounts = new DualHashBidiMap<>();
+    // compact the journal into a new snapshot once it holds more records than this or the amount of links
+    private static final int MINIMUM_COMPACTION_RECORDS = 1024;
+
+    private final CompactLinkMap linkedAccounts = new CompactLinkMap();
+    private final LinkJournal journal;
+    private final Object writeLock = new Object();
 
-    @SuppressWarnings("ConstantConditions") // MalformedJsonException is a checked exception
     public FileAccountLinkManager() {
-        if (!DiscordSRV.getPlugin().getLinkedAccountsFile().exists() ||
-                DiscordSRV.getPlugin().getLinkedAccountsFile().length() == 0) return;
-        linkedAccounts.clear();
+        File jsonFile = DiscordSRV.getPlugin().getLinkedAccountsFile();
+        File snapshotFile = new File(jsonFile.getParentFile(), "linkedaccounts.dat");
+        File journalFile = new File(jsonFile.getParentFile(), "linkedaccounts.journal");
+        journal = new LinkJournal(snapshotFile, journalFile);
+
+        // linkedaccounts.json is still exported on save (before the snapshot), so it's only newer than the snapshot
+        // when it's from before the binary format or was edited while the server was offline
+        boolean importJson = jsonFile.exists() && jsonFile.length() != 0
+                && (!snapshotFile.exists() || (!journalFile.exists() && jsonFile.lastModified() > snapshotFile.lastModified()));
+        if (importJson) {
+            importJson(jsonFile);
+            try {
+                journal.compact(linkedAccounts);
+            } catch (IOException e) {
+                DiscordSRV.error(LangUtil.InternalMessage.LINKED_ACCOUNTS_SAVE_FAILED + ": " + e.getMessage());
+            }
+        } else if (journal.exists()) {
+            try {
+                journal.load(linkedAccounts);
+            } catch (IOException e) {
+                DiscordSRV.error("Failed to load linked accounts", e);
+            }
+        }
+    }
 
+    @SuppressWarnings("ConstantConditions") // MalformedJsonException is a checked exception
+    private void importJson(File jsonFile) {
         try {
-            String fileContent = FileUtils.readFileToString(DiscordSRV.getPlugin().getLinkedAccountsFile(), StandardCharsets.UTF_8);
+            String fileContent = FileUtils.readFileToString(jsonFile, StandardCharsets.UTF_8);
             if (fileContent == null || StringUtils.isBlank(fileContent)) fileContent = "{}";
             JsonObject jsonObject;
             try {
@@ -105,7 +132,7 @@ public class FileAccountLinkManager extends AbstractAccountLinkManager {
 
     @Override
     public Map<String, UUID> getLinkedAccounts() {
-        return linkedAccounts;
+        return linkedAccounts.toMap();
     }
 
     @Override
@@ -125,18 +152,11 @@ public class FileAccountLinkManager extends AbstractAccountLinkManager {
 
     @Override
     public String process(String linkCode, String discordId) {
-        boolean contains;
-        synchronized (linkedAccounts) {
-            contains = linkedAccounts.containsKey(discordId);
-        }
-        if (contains) {
+        UUID uuid = linkedAccounts.getUuid(discordId);
+        if (uuid != null) {
             if (DiscordSRV.config().getBoolean("MinecraftDiscordAccountLinkedAllowRelinkBySendingANewCode")) {
                 unlink(discordId);
             } else {
-                UUID uuid;
-                synchronized (linkedAccounts) {
-                    uuid = linkedAccounts.get(discordId);
-                }
                 OfflinePlayer offlinePlayer = DiscordSRV.getPlugin().getServer().getOfflinePlayer(uuid);
                 return LangUtil.Message.ALREADY_LINKED.toString()
                         .replace("%username%", PrettyUtil.beautifyUsername(offlinePlayer, "<Unknown>", false))
@@ -172,9 +192,7 @@ public class FileAccountLinkManager extends AbstractAccountLinkManager {
 
     @Override
     public String getDiscordId(UUID uuid) {
-        synchronized (linkedAccounts) {
-            return linkedAccounts.getKey(uuid);
-        }
+        return linkedAccounts.getDiscordId(uuid);
     }
 
     @Override
@@ -186,10 +204,7 @@ public class FileAccountLinkManager extends AbstractAccountLinkManager {
     public Map<UUID, String> getManyDiscordIds(Set<UUID> uuids) {
         Map<UUID, String> results = new HashMap<>();
         for (UUID uuid : uuids) {
-            String discordId;
-            synchronized (linkedAccounts) {
-                discordId = linkedAccounts.getKey(uuid);
-            }
+            String discordId = linkedAccounts.getDiscordId(uuid);
             if (discordId != null) results.put(uuid, discordId);
         }
         return results;
@@ -197,9 +212,7 @@ public class FileAccountLinkManager extends AbstractAccountLinkManager {
 
     @Override
     public UUID getUuid(String discordId) {
-        synchronized (linkedAccounts) {
-            return linkedAccounts.get(discordId);
-        }
+        return linkedAccounts.getUuid(discordId);
     }
 
     @Override
@@ -211,10 +224,7 @@ public class FileAccountLinkManager extends AbstractAccountLinkManager {
     public Map<String, UUID> getManyUuids(Set<String> discordIds) {
         Map<String, UUID> results = new HashMap<>();
         for (String discordId : discordIds) {
-            UUID uuid;
-            synchronized (linkedAccounts) {
-                uuid = linkedAccounts.get(discordId);
-            }
+            UUID uuid = linkedAccounts.getUuid(discordId);
             if (uuid != null) results.put(discordId, uuid);
         }
         return results;
@@ -225,29 +235,33 @@ public class FileAccountLinkManager extends AbstractAccountLinkManager {
         if (discordId.trim().isEmpty()) {
             throw new IllegalArgumentException("Empty discord id's are not allowed");
         }
+        long snowflake = CompactLinkMap.parseSnowflake(discordId);
         DiscordSRV.debug("File backed link: " + discordId + ": " + uuid);
 
         // make sure the user isn't linked
         unlink(discordId);
         unlink(uuid);
 
-        synchronized (linkedAccounts) {
-            linkedAccounts.put(discordId, uuid);
+        synchronized (writeLock) {
+            linkedAccounts.put(snowflake, uuid);
+            try {
+                journal.appendLink(snowflake, uuid);
+            } catch (IOException e) {
+                DiscordSRV.error(LangUtil.InternalMessage.LINKED_ACCOUNTS_SAVE_FAILED + ": " + e.getMessage());
+            }
+            compactIfNeeded();
         }
         afterLink(discordId, uuid);
     }
 
     @Override
     public void unlink(UUID uuid) {
-        String discordId;
-        synchronized (linkedAccounts) {
-            discordId = linkedAccounts.getKey(uuid);
-        }
+        String discordId = linkedAccounts.getDiscordId(uuid);
         if (discordId == null) return;
 
-        synchronized (linkedAccounts) {
+        synchronized (writeLock) {
             beforeUnlink(uuid, discordId);
-            linkedAccounts.removeValue(uuid);
+            if (linkedAccounts.removeByUuid(uuid) != null) journalUnlink(discordId, uuid);
         }
 
         afterUnlink(uuid, discordId);
@@ -255,32 +269,52 @@ public class FileAccountLinkManager extends AbstractAccountLinkManager {
 
     @Override
     public void unlink(String discordId) {
-        UUID uuid;
-        synchronized (linkedAccounts) {
-            uuid = linkedAccounts.get(discordId);
-        }
+        UUID uuid = linkedAccounts.getUuid(discordId);
         if (uuid == null) return;
 
-        synchronized (linkedAccounts) {
+        synchronized (writeLock) {
             beforeUnlink(uuid, discordId);
-            linkedAccounts.remove(discordId);
+            if (linkedAccounts.removeByDiscordId(discordId) != null) journalUnlink(discordId, uuid);
         }
         afterUnlink(uuid, discordId);
     }
 
+    private void journalUnlink(String discordId, UUID uuid) {
+        try {
+            journal.appendUnlink(CompactLinkMap.parseSnowflake(discordId), uuid);
+        } catch (IOException e) {
+            DiscordSRV.error(LangUtil.InternalMessage.LINKED_ACCOUNTS_SAVE_FAILED + ": " + e.getMessage());
+        }
+        compactIfNeeded();
+    }
+
+    private void compactIfNeeded() {
+        if (journal.getJournalRecords() < Math.max(MINIMUM_COMPACTION_RECORDS, linkedAccounts.size())) return;
+        try {
+            journal.compact(linkedAccounts);
+        } catch (IOException e) {
+            DiscordSRV.error(LangUtil.InternalMessage.LINKED_ACCOUNTS_SAVE_FAILED + ": " + e.getMessage());
+        }
+    }
+
     @Override
     public void save() {
         long startTime = System.currentTimeMillis();
 
-        try {
-            JsonObject map = new JsonObject();
-            synchronized (linkedAccounts) {
-                linkedAccounts.forEach((discordId, uuid) -> map.addProperty(discordId, String.valueOf(uuid)));
+        synchronized (writeLock) {
+            try {
+                // exported for compatibility (downgrading, importing into JDBC), before the snapshot so it's older
+                JsonObject map = new JsonObject();
+                linkedAccounts.forEach((discordId, uuidMost, uuidLeast) ->
+                        map.addProperty(Long.toUnsignedString(discordId), new UUID(uuidMost, uuidLeast).toString()));
+                FileUtils.writeStringToFile(DiscordSRV.getPlugin().getLinkedAccountsFile(), map.toString(), StandardCharsets.UTF_8);
+
+                journal.compact(linkedAccounts);
+                journal.close();
+            } catch (IOException e) {
+                DiscordSRV.error(LangUtil.InternalMessage.LINKED_ACCOUNTS_SAVE_FAILED + ": " + e.getMessage());
+                return;
             }
-            FileUtils.writeStringToFile(DiscordSRV.getPlugin().getLinkedAccountsFile(), map.toString(), StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            DiscordSRV.error(LangUtil.InternalMessage.LINKED_ACCOUNTS_SAVE_FAILED + ": " + e.getMessage());
-            return;
         }
 
         DiscordSRV.info(LangUtil.InternalMessage.LINKED_ACCOUNTS_SAVED.toString()
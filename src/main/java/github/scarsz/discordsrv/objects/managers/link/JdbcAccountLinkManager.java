@@ -22,10 +22,11 @@
 
 package github.scarsz.discordsrv.objects.managers.link;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.JsonObject;
 import com.mysql.jdbc.Driver;
 import github.scarsz.discordsrv.DiscordSRV;
-import github.scarsz.discordsrv.objects.ExpiringDualHashBidiMap;
+import github.scarsz.discordsrv.objects.ExpiringBidiMap;
 import github.scarsz.discordsrv.util.DiscordUtil;
 import github.scarsz.discordsrv.util.LangUtil;
 import github.scarsz.discordsrv.util.MessageUtil;
@@ -45,8 +46,7 @@ import java.io.File;
 import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -55,22 +55,56 @@ public class JdbcAccountLinkManager extends AbstractAccountLinkManager {
 
     // https://regex101.com/r/EAt5La
     private final static Pattern JDBC_PATTERN = Pattern.compile("^(?<proto>\\w+):(?<engine>\\w+)://(?<host>.+):(?<port>[0-9]{1,5}|PORT)/(?<name>\\w+)\\??(?<params>.+)$");
+    private final static int MAX_LOOKUP_BATCH_SIZE = 128;
     private final static long EXPIRY_TIME_ONLINE = TimeUnit.MINUTES.toMillis(3);
 
-    private final Connection connection;
-    private final String database;
-    private final String accountsTable;
-    private final String codesTable;
+    private final JdbcConnectionPool pool;
+    private final ExecutorService lookupExecutor;
+    private String database;
+    private String accountsTable;
+    private String codesTable;
 
-    private final ExpiringDualHashBidiMap<UUID, String> cache = new ExpiringDualHashBidiMap<>(TimeUnit.SECONDS.toMillis(10));
+    private final ExpiringBidiMap<UUID, String> cache = new ExpiringBidiMap<>(TimeUnit.SECONDS.toMillis(10));
     private int count;
 
-    private void putExpiring(UUID uuid, String discordId, long expiryTime) {
-        synchronized (cache) {
-            cache.putExpiring(uuid, discordId, expiryTime);
+    // warm cache: every link held in memory, so lookups never have to wait on the database
+    private final boolean warm;
+    private final Object warmLock = new Object();
+    private volatile CompactLinkMap warmLinks;
+    private int lastLoadedLink = 0;
+
+    @FunctionalInterface
+    private interface SQLFunction<T> {
+        T apply(JdbcConnectionPool.PooledConnection connection) throws SQLException;
+    }
+
+    /**
+     * Run the given function with a connection borrowed from the pool, logging any {@link SQLException}
+     * @param fallback the value to return if the function failed
+     */
+    private <T> T query(T fallback, SQLFunction<T> function) {
+        try (JdbcConnectionPool.PooledConnection connection = pool.borrow()) {
+            try {
+                return function.apply(connection);
+            } catch (SQLException e) {
+                connection.handleException(e);
+                throw e;
+            }
+        } catch (SQLException e) {
+            DiscordSRV.error(e);
+            return fallback;
         }
     }
 
+    private void update(String sql, Object... parameters) {
+        query(null, connection -> {
+            PreparedStatement statement = connection.prepare(sql);
+            for (int i = 0; i < parameters.length; i++) statement.setObject(i + 1, parameters[i]);
+            statement.executeUpdate();
+            return null;
+        });
+    }
+
     public static boolean shouldUseJdbc() {
         return shouldUseJdbc(false);
     }
@@ -127,8 +161,51 @@ public class JdbcAccountLinkManager extends AbstractAccountLinkManager {
         Properties properties = new Properties();
         if (StringUtils.isNotBlank(jdbcUsername)) properties.put("user", jdbcUsername);
         if (StringUtils.isNotBlank(jdbcPassword)) properties.put("password", jdbcPassword);
-        this.connection = mysqlDriver.connect(jdbc, properties);
+        this.pool = new JdbcConnectionPool(mysqlDriver, jdbc, properties, DiscordSRV.config().getInt("Experiment_JdbcConnectionPoolSize"));
+        this.lookupExecutor = Executors.newFixedThreadPool(pool.getSize(), new ThreadFactoryBuilder()
+                .setNameFormat("DiscordSRV - JDBC Lookup %d")
+                .setDaemon(true)
+                .build()
+        );
+
+        // open the first connection right away so a bad configuration still fails the initialization
+        try (JdbcConnectionPool.PooledConnection pooledConnection = pool.borrow()) {
+            initialize(pooledConnection.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            shutdown();
+            throw e;
+        }
+
+        this.warm = DiscordSRV.config().getBoolean("Experiment_JdbcWarmCache");
+        if (warm) {
+            loadWarmLinks();
+            DiscordSRV.info("Loaded " + warmLinks.size() + " linked accounts into the JDBC warm cache");
+        }
+
+        Bukkit.getScheduler().runTaskTimerAsynchronously(DiscordSRV.getPlugin(), () -> {
+            if (warm) {
+                reconcileWarmLinks();
+                return;
+            }
+
+            long currentTime = System.currentTimeMillis();
+            for (Player onlinePlayer : Bukkit.getOnlinePlayers()) {
+                UUID uuid = onlinePlayer.getUniqueId();
+                long expiryTime = cache.getExpiryTime(uuid);
+                if (expiryTime == -1 || expiryTime - TimeUnit.SECONDS.toMillis(30) < currentTime) {
+                    cache.putExpiring(uuid, getDiscordIdBypassCache(uuid), currentTime + EXPIRY_TIME_ONLINE);
+                }
+            }
+
+            count = query(count, connection -> {
+                try (ResultSet resultSet = connection.prepare("select COUNT(*) as accountcount from " + accountsTable + ";").executeQuery()) {
+                    return resultSet.next() ? resultSet.getInt("accountcount") : count;
+                }
+            });
+        }, 0L, 200L);
+    }
 
+    private void initialize(Connection connection) throws SQLException {
         database = connection.getCatalog();
         String tablePrefix = DiscordSRV.config().getString("Experiment_JdbcTablePrefix");
         if (StringUtils.isBlank(tablePrefix)) tablePrefix = ""; else tablePrefix += "_";
@@ -207,17 +284,20 @@ public class JdbcAccountLinkManager extends AbstractAccountLinkManager {
                     });
 
                     connection.setAutoCommit(false);
-                    for (Map.Entry<String, UUID> entry : accounts.entrySet()) {
-                        String discord = entry.getKey();
-                        UUID uuid = entry.getValue();
-
-                        unlink(discord);
-                        unlink(uuid);
-
-                        try (final PreparedStatement statement = connection.prepareStatement("insert into " + accountsTable + " (discord, uuid) VALUES (?, ?)")) {
-                            statement.setString(1, discord);
-                            statement.setString(2, uuid.toString());
-                            statement.executeUpdate();
+                    try (final PreparedStatement delete = connection.prepareStatement("delete from " + accountsTable + " where `discord` = ? or `uuid` = ?");
+                         final PreparedStatement insert = connection.prepareStatement("insert into " + accountsTable + " (discord, uuid) VALUES (?, ?)")) {
+                        for (Map.Entry<String, UUID> entry : accounts.entrySet()) {
+                            String discord = entry.getKey();
+                            UUID uuid = entry.getValue();
+
+                            // make sure neither side is linked already, this shares the import's transaction
+                            delete.setString(1, discord);
+                            delete.setString(2, uuid.toString());
+                            delete.executeUpdate();
+
+                            insert.setString(1, discord);
+                            insert.setString(2, uuid.toString());
+                            insert.executeUpdate();
                         }
                     }
                     DiscordSRV.info("Imported " + accounts.size() + " accounts to JDBC, committing...");
@@ -235,82 +315,131 @@ public class JdbcAccountLinkManager extends AbstractAccountLinkManager {
             }
         }
 
-        Bukkit.getScheduler().runTaskTimerAsynchronously(DiscordSRV.getPlugin(), () -> {
-            long currentTime = System.currentTimeMillis();
-            for (Player onlinePlayer : Bukkit.getOnlinePlayers()) {
-                UUID uuid = onlinePlayer.getUniqueId();
-                if (!cache.containsKey(uuid) || cache.getExpiryTime(uuid) - TimeUnit.SECONDS.toMillis(30) < currentTime) {
-                    putExpiring(uuid, getDiscordIdBypassCache(uuid), currentTime + EXPIRY_TIME_ONLINE);
-                }
+        // don't hand a connection with a half finished import back to the pool
+        if (!connection.getAutoCommit()) {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Replace the warm cache with every link in the database, streamed in with a single query
+     */
+    private void loadWarmLinks() {
+        synchronized (warmLock) {
+            CompactLinkMap links = new CompactLinkMap(Math.max(count, warmLinks != null ? warmLinks.size() : 0));
+            int lastLink = query(-1, connection -> loadLinks(connection.getConnection(), links, 0));
+            if (lastLink == -1) {
+                if (warmLinks == null) warmLinks = links; // keep serving what we had if this was a reload
+                return;
             }
+            warmLinks = links;
+            lastLoadedLink = lastLink;
+            count = links.size();
+        }
+    }
 
-            try (final PreparedStatement statement = connection.prepareStatement(
-                    "select COUNT(*) as accountcount from " + accountsTable + ";")) {
-                try (ResultSet resultSet = statement.executeQuery()) {
-                    if (resultSet.next()) {
-                        count = resultSet.getInt("accountcount");
-                    }
+    /**
+     * Load all links with an id higher than the given one into the given map
+     * @return the highest link id that was loaded
+     */
+    private int loadLinks(Connection connection, CompactLinkMap links, int after) throws SQLException {
+        int lastLink = after;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "select link, discord, uuid from " + accountsTable + " where link > ? order by link",
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(Integer.MIN_VALUE); // MySQL streams rows one by one instead of buffering the table
+            statement.setInt(1, after);
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    lastLink = Math.max(lastLink, result.getInt("link"));
+                    putWarm(links, result.getString("discord"), result.getString("uuid"));
                 }
-            } catch (SQLException t) {
-                t.printStackTrace();
             }
-        }, 0L, 200L);
+        }
+        return lastLink;
     }
 
-    private void dropExpiredCodes() {
-        try (final PreparedStatement statement = connection.prepareStatement("delete from " + codesTable + " where `expiration` < ?")) {
-            statement.setLong(1, System.currentTimeMillis());
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            DiscordSRV.error(e);
+    private void putWarm(CompactLinkMap links, String discordId, String uuid) {
+        try {
+            links.put(discordId, UUID.fromString(uuid));
+        } catch (IllegalArgumentException e) {
+            DiscordSRV.debug("Not keeping invalid JDBC link " + discordId + ": " + uuid + " in the warm cache");
         }
     }
 
+    /**
+     * Pick up links made by other servers sharing the database. New links always get a higher id, so those are
+     * loaded incrementally; a row count that still doesn't match means links were removed elsewhere and the
+     * cache is reloaded completely.
+     */
+    private void reconcileWarmLinks() {
+        int[] state = query(null, connection -> {
+            try (ResultSet result = connection.prepare("select MAX(link) as lastlink, COUNT(*) as accountcount from " + accountsTable + ";").executeQuery()) {
+                return result.next() ? new int[] {result.getInt("lastlink"), result.getInt("accountcount")} : null;
+            }
+        });
+        if (state == null) return;
+
+        synchronized (warmLock) {
+            if (state[0] > lastLoadedLink) {
+                int lastLink = query(-1, connection -> loadLinks(connection.getConnection(), warmLinks, lastLoadedLink));
+                if (lastLink != -1) lastLoadedLink = lastLink;
+            }
+            if (warmLinks.size() != state[1]) {
+                DiscordSRV.debug("JDBC warm cache has " + warmLinks.size() + " links while the database has " + state[1] + ", reloading");
+                loadWarmLinks();
+            } else {
+                count = state[1];
+            }
+        }
+    }
+
+    private void dropExpiredCodes() {
+        update("delete from " + codesTable + " where `expiration` < ?", System.currentTimeMillis());
+    }
+
     @Override
     public Map<String, UUID> getLinkingCodes() {
         ensureOffThread(false);
         dropExpiredCodes();
 
         Map<String, UUID> codes = new HashMap<>();
-
-        try (final PreparedStatement statement = connection.prepareStatement("select * from " + codesTable)) {
-            try (final ResultSet result = statement.executeQuery()) {
+        return query(codes, connection -> {
+            try (final ResultSet result = connection.prepare("select * from " + codesTable).executeQuery()) {
                 while (result.next()) {
                     codes.put(result.getString("code"), UUID.fromString(result.getString("uuid")));
                 }
             }
-        } catch (SQLException e) {
-            DiscordSRV.error(e);
-        }
-
-        return codes;
+            return codes;
+        });
     }
 
     @Override
     public Map<String, UUID> getLinkedAccounts() {
+        if (warm) return warmLinks.toMap();
         ensureOffThread(false);
         Map<String, UUID> accounts = new HashMap<>();
 
-        try (final PreparedStatement statement = connection.prepareStatement("select * from " + accountsTable)) {
-            try (final ResultSet result = statement.executeQuery()) {
+        return query(accounts, connection -> {
+            try (final ResultSet result = connection.prepare("select * from " + accountsTable).executeQuery()) {
                 while (result.next()) {
                     accounts.put(result.getString("discord"), UUID.fromString(result.getString("uuid")));
                 }
             }
-        } catch (SQLException e) {
-            DiscordSRV.error(e);
-        }
-
-        return accounts;
+            return accounts;
+        });
     }
 
     @Override
     public String getDiscordIdFromCache(UUID uuid) {
+        if (warm) return warmLinks.getDiscordId(uuid);
         return cache.get(uuid);
     }
 
     @Override
     public UUID getUuidFromCache(String discordId) {
+        if (warm) return warmLinks.getUuid(discordId);
         return cache.getKey(discordId);
     }
 
@@ -318,12 +447,7 @@ public class JdbcAccountLinkManager extends AbstractAccountLinkManager {
     public String generateCode(UUID playerUuid) {
         // delete an already existing code if one exists
         if (getLinkingCodes().values().stream().anyMatch(playerUuid::equals)) {
-            try (final PreparedStatement statement = connection.prepareStatement("delete from " + codesTable + " where `uuid` = ?")) {
-                statement.setString(1, playerUuid.toString());
-                statement.executeUpdate();
-            } catch (SQLException e) {
-                DiscordSRV.error(e);
-            }
+            update("delete from " + codesTable + " where `uuid` = ?", playerUuid.toString());
         }
 
         String code;
@@ -332,14 +456,8 @@ public class JdbcAccountLinkManager extends AbstractAccountLinkManager {
             code = String.format("%04d", numbers);
         } while (getLinkingCodes().containsKey(code));
 
-        try (final PreparedStatement statement = connection.prepareStatement("insert into " + codesTable + " (`code`, `uuid`, `expiration`) VALUES (?, ?, ?)")) {
-            statement.setString(1, code);
-            statement.setString(2, playerUuid.toString());
-            statement.setLong(3, System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5));
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            DiscordSRV.error(e);
-        }
+        update("insert into " + codesTable + " (`code`, `uuid`, `expiration`) VALUES (?, ?, ?)",
+                code, playerUuid.toString(), System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5));
 
         return code;
     }
@@ -366,13 +484,7 @@ public class JdbcAccountLinkManager extends AbstractAccountLinkManager {
         UUID uuid = getLinkingCodes().get(code);
         if (uuid != null) {
             link(discordId, uuid);
-
-            try (final PreparedStatement statement = connection.prepareStatement("delete from " + codesTable + " where `code` = ?")) {
-                statement.setString(1, code);
-                statement.executeUpdate();
-            } catch (SQLException e) {
-                DiscordSRV.error(e);
-            }
+            update("delete from " + codesTable + " where `code` = ?", code);
 
             OfflinePlayer player = Bukkit.getOfflinePlayer(uuid);
             if (player.isOnline()) {
@@ -394,160 +506,170 @@ public class JdbcAccountLinkManager extends AbstractAccountLinkManager {
 
     @Override
     public String getDiscordId(UUID uuid) {
-        synchronized (cache) {
-            if (cache.containsKey(uuid)) return cache.get(uuid);
-        }
+        if (warm) return warmLinks.getDiscordId(uuid);
+        String cached = cache.get(uuid);
+        if (cached != null || cache.containsKey(uuid)) return cached;
         ensureOffThread(true);
         String discordId = getDiscordIdBypassCache(uuid);
-        synchronized (cache) {
-            cache.put(uuid, discordId);
-        }
+        cache.put(uuid, discordId);
         return discordId;
     }
 
+    @Override
+    public CompletableFuture<String> getDiscordIdAsync(UUID uuid) {
+        if (warm) return CompletableFuture.completedFuture(warmLinks.getDiscordId(uuid));
+        String cached = cache.get(uuid);
+        if (cached != null || cache.containsKey(uuid)) return CompletableFuture.completedFuture(cached);
+        return CompletableFuture.supplyAsync(() -> getDiscordId(uuid), lookupExecutor);
+    }
+
     @Override
     public String getDiscordIdBypassCache(UUID uuid) {
-        String discordId = null;
-        try (final PreparedStatement statement = connection.prepareStatement("select discord from " + accountsTable + " where uuid = ?")) {
+        return query(null, connection -> {
+            PreparedStatement statement = connection.prepare("select discord from " + accountsTable + " where uuid = ?");
             statement.setString(1, uuid.toString());
             try (final ResultSet result = statement.executeQuery()) {
-                if (result.next()) {
-                    discordId = result.getString("discord");
-                }
+                return result.next() ? result.getString("discord") : null;
             }
-        } catch (SQLException e) {
-            DiscordSRV.error(e);
-        }
-        return discordId;
+        });
     }
 
     @Override
-    public Map<UUID, String> getManyDiscordIds(Set<UUID> uuids) {
-        ensureOffThread(false);
+    public Map<UUID, String> getManyDiscordIdsBypassCache(Set<UUID> uuids) {
+        List<String> keys = new ArrayList<>(uuids.size());
+        for (UUID uuid : uuids) keys.add(uuid.toString());
+        Map<String, String> rows = selectMany("uuid", "discord", keys);
+        if (rows == null) return null;
+
         Map<UUID, String> results = new HashMap<>();
+        rows.forEach((uuid, discordId) -> results.put(UUID.fromString(uuid), discordId));
+        return results;
+    }
 
-        try {
-            Array uuidArray = connection.createArrayOf("varchar", uuids.toArray(new UUID[0]));
-            try (final PreparedStatement statement = connection.prepareStatement("select uuid, discord from " + accountsTable + " where uuid in (?)")) {
-                statement.setArray(1, uuidArray);
+    /**
+     * Look up the value column of the rows with the given keys, a batch of keys per statement
+     * @return the values by key, or null if the lookup failed
+     */
+    private Map<String, String> selectMany(String keyColumn, String valueColumn, Collection<String> keys) {
+        Map<String, String> results = new HashMap<>();
+        List<String> remaining = new ArrayList<>(keys);
+        for (int start = 0; start < remaining.size(); start += MAX_LOOKUP_BATCH_SIZE) {
+            List<String> batch = remaining.subList(start, Math.min(remaining.size(), start + MAX_LOOKUP_BATCH_SIZE));
+            // padded to a power of two by repeating the last key, so only a few statements end up prepared
+            int parameters = batch.size() == 1 ? 1 : Integer.highestOneBit(batch.size() - 1) << 1;
+            boolean success = query(false, connection -> {
+                PreparedStatement statement = connection.prepare("select " + keyColumn + ", " + valueColumn + " from " + accountsTable
+                        + " where " + keyColumn + " in (" + String.join(", ", Collections.nCopies(parameters, "?")) + ")");
+                for (int i = 0; i < parameters; i++) {
+                    statement.setString(i + 1, batch.get(Math.min(i, batch.size() - 1)));
+                }
                 try (final ResultSet result = statement.executeQuery()) {
                     while (result.next()) {
-                        UUID uuid = UUID.fromString(result.getString("uuid"));
-                        String discordId = result.getString("discord");
-                        results.put(uuid, discordId);
+                        results.put(result.getString(keyColumn), result.getString(valueColumn));
                     }
                 }
-            } catch (SQLException e) {
-                DiscordSRV.error(e);
-            }
-        } catch (SQLFeatureNotSupportedException e) {
-            try {
-                for (UUID uuid : uuids) {
-                    try (final PreparedStatement statement = connection.prepareStatement("select discord from " + accountsTable + " where uuid = ?")) {
-                        statement.setString(1, uuid.toString());
-                        try (final ResultSet result = statement.executeQuery()) {
-                            while (result.next()) {
-                                String discordId = result.getString("discord");
-                                results.put(uuid, discordId);
-                            }
-                        }
-                    }
-                }
-            } catch (SQLException e2) {
-                DiscordSRV.error(e2);
+                return true;
+            });
+            if (!success) return null;
+        }
+        return results;
+    }
+
+    @Override
+    public Map<UUID, String> getManyDiscordIds(Set<UUID> uuids) {
+        Map<UUID, String> results = new HashMap<>();
+        if (warm) {
+            CompactLinkMap links = warmLinks;
+            for (UUID uuid : uuids) {
+                String discordId = links.getDiscordId(uuid);
+                if (discordId != null) results.put(uuid, discordId);
             }
-        } catch (SQLException e) {
-            DiscordSRV.error(e);
+            return results;
         }
+        ensureOffThread(false);
 
+        Map<UUID, String> found = getManyDiscordIdsBypassCache(uuids);
+        if (found != null) results.putAll(found);
         return results;
     }
 
+    @Override
+    public CompletableFuture<Map<UUID, String>> getManyDiscordIdsAsync(Set<UUID> uuids) {
+        if (warm) return CompletableFuture.completedFuture(getManyDiscordIds(uuids));
+        return CompletableFuture.supplyAsync(() -> getManyDiscordIds(uuids), lookupExecutor);
+    }
+
     @Override
     public UUID getUuid(String discordId) {
-        synchronized (cache) {
-            if (cache.containsValue(discordId)) return cache.getKey(discordId);
-        }
+        if (warm) return warmLinks.getUuid(discordId);
+        UUID cached = cache.getKey(discordId);
+        if (cached != null || cache.containsValue(discordId)) return cached;
         ensureOffThread(true);
         UUID uuid = getUuidBypassCache(discordId);
-        synchronized (cache) {
-            cache.put(uuid, discordId);
-        }
+        cache.put(uuid, discordId);
         return uuid;
     }
 
+    @Override
+    public CompletableFuture<UUID> getUuidAsync(String discordId) {
+        if (warm) return CompletableFuture.completedFuture(warmLinks.getUuid(discordId));
+        UUID cached = cache.getKey(discordId);
+        if (cached != null || cache.containsValue(discordId)) return CompletableFuture.completedFuture(cached);
+        return CompletableFuture.supplyAsync(() -> getUuid(discordId), lookupExecutor);
+    }
+
     @Override
     public int getLinkedAccountCount() {
-        return count;
+        return warm ? warmLinks.size() : count;
     }
 
     @Override
     public UUID getUuidBypassCache(String discordId) {
-        UUID uuid = null;
-        try (final PreparedStatement statement = connection.prepareStatement("select uuid from " + accountsTable + " where discord = ?")) {
+        return query(null, connection -> {
+            PreparedStatement statement = connection.prepare("select uuid from " + accountsTable + " where discord = ?");
             statement.setString(1, discordId);
-
             try (final ResultSet result = statement.executeQuery()) {
-                if (result.next()) {
-                    uuid = UUID.fromString(result.getString("uuid"));
-                }
+                return result.next() ? UUID.fromString(result.getString("uuid")) : null;
             }
-        } catch (SQLException e) {
-            DiscordSRV.error(e);
-        }
-        return uuid;
+        });
     }
 
     @Override
     public boolean isInCache(UUID uuid) {
+        if (warm) return true; // every link is, so the absence of one is known without a lookup
         return cache.containsKey(uuid);
     }
 
     @Override
     public boolean isInCache(String discordId) {
+        if (warm) return true;
         return cache.containsValue(discordId);
     }
 
     @Override
     public Map<String, UUID> getManyUuids(Set<String> discordIds) {
-        ensureOffThread(false);
         Map<String, UUID> results = new HashMap<>();
-
-        try {
-            Array discordIdArray = connection.createArrayOf("varchar", discordIds.toArray(new String[0]));
-            try (final PreparedStatement statement = connection.prepareStatement("select discord, uuid from " + accountsTable + " where discord in (?)")) {
-                statement.setArray(1, discordIdArray);
-                try (final ResultSet result = statement.executeQuery()) {
-                    while (result.next()) {
-                        String discordId = result.getString("discord");
-                        UUID uuid = UUID.fromString(result.getString("uuid"));
-                        results.put(discordId, uuid);
-                    }
-                }
-            } catch (SQLException e) {
-                DiscordSRV.error(e);
-            }
-        } catch (SQLFeatureNotSupportedException e) {
+        if (warm) {
+            CompactLinkMap links = warmLinks;
             for (String discordId : discordIds) {
-                try (final PreparedStatement statement = connection.prepareStatement("select uuid from " + accountsTable + " where discord = ?")) {
-                    statement.setString(1, discordId);
-                    try (final ResultSet result = statement.executeQuery()) {
-                        while (result.next()) {
-                            UUID uuid = UUID.fromString(result.getString("uuid"));
-                            results.put(discordId, uuid);
-                        }
-                    }
-                } catch (SQLException e2) {
-                    DiscordSRV.error(e2);
-                }
+                UUID uuid = links.getUuid(discordId);
+                if (uuid != null) results.put(discordId, uuid);
             }
-        } catch (SQLException e) {
-            DiscordSRV.error(e);
+            return results;
         }
+        ensureOffThread(false);
 
+        Map<String, String> rows = selectMany("discord", "uuid", discordIds);
+        if (rows != null) rows.forEach((discordId, uuid) -> results.put(discordId, UUID.fromString(uuid)));
         return results;
     }
 
+    @Override
+    public CompletableFuture<Map<String, UUID>> getManyUuidsAsync(Set<String> discordIds) {
+        if (warm) return CompletableFuture.completedFuture(getManyUuids(discordIds));
+        return CompletableFuture.supplyAsync(() -> getManyUuids(discordIds), lookupExecutor);
+    }
+
     @Override
     public void link(String discordId, UUID uuid) {
         if (discordId.trim().isEmpty()) {
@@ -560,17 +682,23 @@ public class JdbcAccountLinkManager extends AbstractAccountLinkManager {
         unlink(discordId);
         unlink(uuid);
 
-        try (final PreparedStatement statement = connection.prepareStatement("insert into " + accountsTable + " (discord, uuid) VALUES (?, ?)")) {
+        boolean inserted = query(false, connection -> {
+            PreparedStatement statement = connection.prepare("insert into " + accountsTable + " (discord, uuid) VALUES (?, ?)");
             statement.setString(1, discordId);
             statement.setString(2, uuid.toString());
             statement.executeUpdate();
+            return true;
+        });
+        if (!inserted) return;
 
-            // put in cache so after link procedures will for sure have the links available
-            cache.put(uuid, discordId);
-            afterLink(discordId, uuid);
-        } catch (SQLException e) {
-            DiscordSRV.error(e);
+        // put in cache so after link procedures will for sure have the links available
+        cache.put(uuid, discordId);
+        if (warm) {
+            synchronized (warmLock) {
+                putWarm(warmLinks, discordId, uuid.toString());
+            }
         }
+        afterLink(discordId, uuid);
     }
 
     @Override
@@ -580,13 +708,13 @@ public class JdbcAccountLinkManager extends AbstractAccountLinkManager {
         if (discord == null) return;
 
         beforeUnlink(uuid, discord);
-        try (final PreparedStatement statement = connection.prepareStatement("delete from " + accountsTable + " where `uuid` = ?")) {
-            statement.setString(1, uuid.toString());
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            DiscordSRV.error(e);
-        }
+        update("delete from " + accountsTable + " where `uuid` = ?", uuid.toString());
         cache.remove(uuid);
+        if (warm) {
+            synchronized (warmLock) {
+                warmLinks.removeByUuid(uuid);
+            }
+        }
         afterUnlink(uuid, discord);
     }
 
@@ -597,29 +725,30 @@ public class JdbcAccountLinkManager extends AbstractAccountLinkManager {
         if (uuid == null) return;
 
         beforeUnlink(uuid, discordId);
-        try (final PreparedStatement statement = connection.prepareStatement("delete from " + accountsTable + " where `discord` = ?")) {
-            statement.setString(1, discordId);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            DiscordSRV.error(e);
-        }
+        update("delete from " + accountsTable + " where `discord` = ?", discordId);
         cache.removeValue(discordId);
+        if (warm) {
+            synchronized (warmLock) {
+                warmLinks.removeByDiscordId(discordId);
+            }
+        }
         afterUnlink(uuid, discordId);
     }
 
     @Override
     public void save() {
-        try {
-            if (!connection.getAutoCommit()) {
-                connection.commit();
-            }
-        } catch (SQLException e) {
-            DiscordSRV.error(e);
-        }
+        // every pooled connection auto-commits, nothing is left to be written
+    }
+
+    @Override
+    public void shutdown() {
+        lookupExecutor.shutdownNow();
+        pool.close();
     }
 
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onPlayerLogin(PlayerLoginEvent event) {
+        if (warm) return;
         Bukkit.getScheduler().runTaskAsynchronously(DiscordSRV.getPlugin(), () -> {
             UUID uuid = event.getPlayer().getUniqueId();
             cache.putExpiring(uuid, getDiscordIdBypassCache(uuid), System.currentTimeMillis() + EXPIRY_TIME_ONLINE);
@@ -629,8 +758,8 @@ public class JdbcAccountLinkManager extends AbstractAccountLinkManager {
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onPlayerQuit(PlayerQuitEvent event) {
         UUID uuid = event.getPlayer().getUniqueId();
-        if (!cache.containsKey(uuid)) return;
         long expiryTime = cache.getExpiryTime(uuid);
+        if (expiryTime == -1) return;
         long currentTime = System.currentTimeMillis();
         long expiryDelay = cache.getExpiryDelay();
         if (expiryTime - currentTime > expiryDelay) cache.setExpiryTime(uuid, currentTime + expiryDelay);
@@ -0,0 +1,201 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects.managers.link;
+
+import github.scarsz.discordsrv.DiscordSRV;
+
+import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small bounded pool of JDBC connections. Every pooled connection keeps the statements prepared on it
+ * so they can be reused, and connections that went bad are replaced the next time they'd be borrowed.
+ */
+public class JdbcConnectionPool implements AutoCloseable {
+
+    private static final long VALIDATION_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+    private static final long BORROW_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private final Driver driver;
+    private final String url;
+    private final Properties properties;
+    private final int size;
+    private final BlockingQueue<PooledConnection> idle = new LinkedBlockingQueue<>();
+    private final Semaphore permits;
+    private volatile boolean closed = false;
+
+    public JdbcConnectionPool(Driver driver, String url, Properties properties, int size) {
+        this.driver = driver;
+        this.url = url;
+        this.properties = properties;
+        this.size = Math.max(1, size);
+        this.permits = new Semaphore(this.size, true);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Borrow a connection from the pool, opening a new one if no idle connection is available or the idle one
+     * is no longer usable. The connection must be given back by closing it.
+     * @return a usable connection
+     * @throws SQLException if no connection became available in time or a new one couldn't be opened
+     */
+    public PooledConnection borrow() throws SQLException {
+        if (closed) throw new SQLException("JDBC connection pool has been closed");
+
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timed out waiting for a pooled JDBC connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a pooled JDBC connection", e);
+        }
+
+        try {
+            PooledConnection connection;
+            while ((connection = idle.poll()) != null) {
+                if (connection.validate()) return connection;
+                DiscordSRV.debug("Discarding dead pooled JDBC connection, reconnecting");
+                connection.discard();
+            }
+
+            Connection opened = driver.connect(url, properties);
+            if (opened == null) throw new SQLException("JDBC driver did not accept the given connection url");
+            return new PooledConnection(opened);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void release(PooledConnection connection) {
+        try {
+            if (closed || connection.broken || connection.connection.isClosed()) {
+                connection.discard();
+            } else {
+                connection.lastUsed = System.currentTimeMillis();
+                idle.offer(connection);
+                // closed while it was being given back
+                if (closed && idle.remove(connection)) connection.discard();
+            }
+        } catch (SQLException e) {
+            connection.discard();
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection connection;
+        while ((connection = idle.poll()) != null) connection.discard();
+    }
+
+    /**
+     * @return whether or not the given exception means the connection it came from can't be used anymore
+     */
+    private static boolean isConnectionError(SQLException e) {
+        if (e instanceof SQLRecoverableException
+                || e instanceof SQLNonTransientConnectionException
+                || e instanceof SQLTransientConnectionException) return true;
+        String state = e.getSQLState();
+        return state != null && state.startsWith("08"); // connection exception class
+    }
+
+    public class PooledConnection implements AutoCloseable {
+
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+        private long lastUsed = System.currentTimeMillis();
+        private boolean broken = false;
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Get a prepared statement for the given SQL, reusing the one prepared by an earlier borrower if available.
+         * The returned statement is owned by the pool and must not be closed.
+         */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null || statement.isClosed()) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            } else {
+                statement.clearParameters();
+            }
+            return statement;
+        }
+
+        /**
+         * Mark this connection as broken if the given exception was caused by the connection itself,
+         * so it will be replaced instead of returned to the pool
+         */
+        public void handleException(SQLException e) {
+            if (isConnectionError(e)) broken = true;
+        }
+
+        private boolean validate() {
+            if (System.currentTimeMillis() - lastUsed < VALIDATION_INTERVAL) return true;
+            try {
+                return connection.isValid(5);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        private void discard() {
+            for (PreparedStatement statement : statements.values()) {
+                try {
+                    statement.close();
+                } catch (SQLException ignored) {}
+            }
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException ignored) {}
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,177 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects.managers.link;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * <p>Binary storage of links: a snapshot file holding every link, plus an append-only journal of the links made
+ * and removed since that snapshot was written. Linking or unlinking only appends a fixed size record to the
+ * journal; the snapshot is rewritten (and the journal emptied) when compacting.</p>
+ * <p>Snapshot: magic, version, link count, then per link the snowflake and both halves of the uuid.
+ * Journal: per record an operation byte followed by the same three longs.</p>
+ */
+public class LinkJournal implements Closeable {
+
+    private static final int MAGIC = 0x44535256; // DSRV
+    private static final int VERSION = 1;
+    private static final byte OPERATION_LINK = 1;
+    private static final byte OPERATION_UNLINK = 2;
+    private static final int RECORD_SIZE = 1 + 3 * Long.BYTES;
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private FileChannel journal;
+    private int journalRecords = 0;
+
+    public LinkJournal(File snapshotFile, File journalFile) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = journalFile;
+    }
+
+    public boolean exists() {
+        return snapshotFile.exists() || journalFile.exists();
+    }
+
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * @return the amount of records appended to the journal since the last compaction
+     */
+    public int getJournalRecords() {
+        return journalRecords;
+    }
+
+    /**
+     * Load the snapshot and replay the journal on top of it into the given map
+     * @throws IOException if the snapshot is unreadable, an incomplete record at the end of the journal
+     * (from a crash while appending) is ignored instead
+     */
+    public void load(CompactLinkMap links) throws IOException {
+        if (snapshotFile.exists()) {
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+                if (input.readInt() != MAGIC) throw new IOException(snapshotFile.getName() + " is not a linked accounts file");
+                int version = input.readInt();
+                if (version != VERSION) throw new IOException("Unsupported " + snapshotFile.getName() + " version " + version);
+
+                int count = input.readInt();
+                for (int i = 0; i < count; i++) {
+                    links.put(input.readLong(), new UUID(input.readLong(), input.readLong()));
+                }
+            }
+        }
+
+        journalRecords = 0;
+        if (journalFile.exists()) {
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+                long complete = journalFile.length() / RECORD_SIZE;
+                for (long i = 0; i < complete; i++) {
+                    byte operation = input.readByte();
+                    long discordId = input.readLong();
+                    UUID uuid = new UUID(input.readLong(), input.readLong());
+                    if (operation == OPERATION_LINK) {
+                        links.put(discordId, uuid);
+                    } else if (operation == OPERATION_UNLINK) {
+                        links.removeByDiscordId(Long.toUnsignedString(discordId));
+                        links.removeByUuid(uuid);
+                    } else {
+                        throw new IOException("Corrupt " + journalFile.getName() + " record " + i);
+                    }
+                    journalRecords++;
+                }
+            }
+        }
+    }
+
+    public synchronized void appendLink(long discordId, UUID uuid) throws IOException {
+        append(OPERATION_LINK, discordId, uuid);
+    }
+
+    public synchronized void appendUnlink(long discordId, UUID uuid) throws IOException {
+        append(OPERATION_UNLINK, discordId, uuid);
+    }
+
+    private void append(byte operation, long discordId, UUID uuid) throws IOException {
+        if (journal == null) {
+            journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+
+        record.clear();
+        record.put(operation).putLong(discordId).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+        record.flip();
+        while (record.hasRemaining()) journal.write(record);
+        journalRecords++;
+    }
+
+    /**
+     * Write every link in the given map to a new snapshot, replacing the old one atomically, and empty the journal.
+     * Writes to the map must be stopped while this runs, or they could end up in neither file.
+     */
+    public synchronized void compact(CompactLinkMap links) throws IOException {
+        File temporaryFile = new File(snapshotFile.getParentFile(), snapshotFile.getName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(links.size());
+            IOException[] failure = new IOException[1];
+            links.forEach((discordId, uuidMost, uuidLeast) -> {
+                if (failure[0] != null) return;
+                try {
+                    output.writeLong(discordId);
+                    output.writeLong(uuidMost);
+                    output.writeLong(uuidLeast);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) throw failure[0];
+        }
+        Files.move(temporaryFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // replaying the journal over the new snapshot is harmless, so a crash between the two steps loses nothing
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        Files.deleteIfExists(journalFile.toPath());
+        journalRecords = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+}
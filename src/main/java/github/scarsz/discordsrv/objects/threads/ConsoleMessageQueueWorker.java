@@ -23,9 +23,13 @@
 package github.scarsz.discordsrv.objects.threads;
 
 import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.objects.ConsoleLine;
 import github.scarsz.discordsrv.objects.ConsoleMessage;
+import github.scarsz.discordsrv.objects.ConsoleMessageQueue;
 import github.scarsz.discordsrv.util.DiscordUtil;
 import github.scarsz.discordsrv.util.LangUtil;
+import github.scarsz.discordsrv.util.MessageUtil;
+import github.scarsz.discordsrv.util.TimeUtil;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Message;
@@ -33,17 +37,24 @@ import net.dv8tion.jda.api.entities.TextChannel;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.text.WordUtils;
 
+import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 public class ConsoleMessageQueueWorker extends Thread {
 
     private static final char LINE_WRAP_INDENT = '\t';
     private static final long MIN_SLEEP_TIME_MILLIS = 2000;
     private static final String SLEEP_TIME_SECONDS_KEY = "DiscordConsoleChannelLogRefreshRateInSeconds";
+    private static final int BATCH_SIZE = 64;
 
     private final StringBuilder message = new StringBuilder();
-    private final Deque<ConsoleMessage> queue = DiscordSRV.getPlugin().getConsoleMessageQueue();
+    private final ConsoleMessageQueue queue = DiscordSRV.getPlugin().getConsoleMessageQueue();
+    // processed messages that weren't sent yet, only touched by this thread
+    private final Deque<ConsoleMessage> pending = new ArrayDeque<>();
+    private final ConsoleLine[] batch = new ConsoleLine[BATCH_SIZE];
 
     public ConsoleMessageQueueWorker() {
         super("DiscordSRV - Console Message Queue Worker");
@@ -66,7 +77,7 @@ public class ConsoleMessageQueueWorker extends Thread {
                 message.setLength(0);
                 ConsoleMessage consoleMessage;
                 // peek to avoid polling a message that we can't process from the queue
-                while ((consoleMessage = queue.peek()) != null) {
+                while ((consoleMessage = peek()) != null) {
                     final String formattedMessage = consoleMessage.toString();
                     final int checkLength = formattedMessage.length() + wrapperLength + 1;
                     if (message.length() + checkLength > Message.MAX_CONTENT_LENGTH) {
@@ -79,7 +90,7 @@ public class ConsoleMessageQueueWorker extends Thread {
                     message.append(formattedMessage).append('\n');
 
                     // finally poll to actually remove the appended message
-                    queue.poll();
+                    pending.poll();
                 }
 
                 final String m = message.toString();
@@ -107,13 +118,72 @@ public class ConsoleMessageQueueWorker extends Thread {
         }
     }
 
+    /**
+     * Peeks at the next message to send, processing the next batch of captured lines from the shared queue if
+     * needed. Producers may evict lines from the shared queue when it's full, so it is never peeked at directly.
+     */
+    private ConsoleMessage peek() {
+        while (pending.isEmpty()) {
+            if (!processBatch()) return null;
+        }
+        return pending.peek();
+    }
+
+    /**
+     * Strips, filters & escapes up to {@link #BATCH_SIZE} captured lines into pending messages
+     * @return false if the queue was empty
+     */
+    private boolean processBatch() {
+        int size = 0;
+        ConsoleLine line;
+        while (size < BATCH_SIZE && (line = queue.poll()) != null) batch[size++] = line;
+        if (size == 0) return false;
+
+        Map<Pattern, String> regexes = DiscordSRV.getPlugin().getConsoleRegexes();
+        synchronized (regexes) {
+            for (int i = 0; i < size; i++) {
+                ConsoleMessage consoleMessage = process(batch[i], regexes);
+                if (consoleMessage != null) pending.add(consoleMessage);
+                batch[i] = null;
+            }
+        }
+        return true;
+    }
+
+    private static ConsoleMessage process(ConsoleLine consoleLine, Map<Pattern, String> regexes) {
+        String line = consoleLine.getMessage();
+
+        // do nothing if line is blank before parsing
+        if (StringUtils.isBlank(line)) return null;
+
+        // remove coloring
+        line = DiscordUtil.aggressiveStrip(line);
+        line = MessageUtil.strip(line);
+        if (StringUtils.isBlank(line)) return null;
+
+        // apply regex to line
+        for (Map.Entry<Pattern, String> entry : regexes.entrySet()) {
+            line = entry.getKey().matcher(line).replaceAll(entry.getValue());
+            if (StringUtils.isBlank(line)) return null;
+        }
+
+        // escape markdown
+        line = DiscordUtil.escapeMarkdown(line);
+
+        // trim
+        line = line.trim();
+
+        if (consoleLine.getRepeats() > 1) line += " ×" + consoleLine.getRepeats();
+        return new ConsoleMessage(TimeUtil.timeStamp(consoleLine.getTime()), consoleLine.getLevel().toUpperCase(), line);
+    }
+
     /**
      * Chops down the head {@link ConsoleMessage} in the queue to parts that don't exceed the {@link Message#MAX_CONTENT_LENGTH} after formatting.
      *
      * @param wrapperLength The length of the message wrapper (prefix + suffix)
      */
     private void chopHead(int wrapperLength) {
-        final ConsoleMessage consoleMessage = queue.poll();
+        final ConsoleMessage consoleMessage = pending.poll();
         if (consoleMessage != null) {
             // length added to the message by the formatting
             int formattingDelta = consoleMessage.toString().length() - consoleMessage.getLine().length();
@@ -127,11 +197,11 @@ public class ConsoleMessageQueueWorker extends Thread {
             for (int i = lines.length - 1; i >= 1; i--) {
                 String line = lines[i].trim();
                 if (!line.isEmpty()) {
-                    queue.addFirst(new ConsoleMessage(timestamp, level, LINE_WRAP_INDENT + line));
+                    pending.addFirst(new ConsoleMessage(timestamp, level, LINE_WRAP_INDENT + line));
                 }
             }
             // omit indent on the first message
-            queue.addFirst(new ConsoleMessage(timestamp, level, lines[0]));
+            pending.addFirst(new ConsoleMessage(timestamp, level, lines[0]));
         }
     }
 }
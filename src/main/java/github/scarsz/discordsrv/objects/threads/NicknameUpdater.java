@@ -23,6 +23,7 @@
 package github.scarsz.discordsrv.objects.threads;
 
 import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.objects.OnlinePlayerSnapshot;
 import github.scarsz.discordsrv.util.DiscordUtil;
 import github.scarsz.discordsrv.util.MessageUtil;
 import github.scarsz.discordsrv.util.PlaceholderUtil;
@@ -68,9 +69,10 @@ public class NicknameUpdater extends Thread {
                 }
 
                 Guild guild = DiscordSRV.getPlugin().getMainGuild();
-                for (Player onlinePlayer : PlayerUtil.getOnlinePlayers()) {
+                OnlinePlayerSnapshot onlinePlayers = PlayerUtil.getOnlinePlayerSnapshot();
+                for (Player onlinePlayer : onlinePlayers.getPlayers()) {
                     // skip vanished players
-                    if (PlayerUtil.isVanished(onlinePlayer)) continue;
+                    if (onlinePlayers.isVanished(onlinePlayer)) continue;
 
                     String userId = DiscordSRV.getPlugin().getAccountLinkManager().getDiscordId(onlinePlayer.getUniqueId());
                     if (userId == null) continue;
@@ -84,8 +84,7 @@ public class ServerWatchdog extends Thread {
                     channelName = preEvent.getChannel();
                     message = preEvent.getMessage();
 
-                    String discordMessage = message
-                            .replaceAll("%time%|%date%", TimeUtil.timeStamp())
+                    String discordMessage = TimeUtil.replaceTimePlaceholders(message)
                             .replace("%guildowner%", DiscordSRV.getPlugin().getMainGuild().getOwner().getAsMention());
 
                     WatchdogMessagePostProcessEvent postEvent = DiscordSRV.api.callEvent(new WatchdogMessagePostProcessEvent(channelName, discordMessage, count, false));
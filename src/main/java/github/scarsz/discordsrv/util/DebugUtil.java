@@ -35,6 +35,7 @@ import github.scarsz.discordsrv.hooks.VaultHook;
 import github.scarsz.discordsrv.hooks.chat.TownyChatHook;
 import github.scarsz.discordsrv.listeners.DiscordDisconnectListener;
 import github.scarsz.discordsrv.modules.voice.VoiceModule;
+import github.scarsz.discordsrv.objects.ConsoleMessageQueue;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.*;
 import net.dv8tion.jda.api.requests.CloseCode;
@@ -105,6 +106,8 @@ public class DebugUtil {
                     "    console message queue worker -> alive: " + (DiscordSRV.getPlugin().getConsoleMessageQueueWorker() != null && DiscordSRV.getPlugin().getConsoleMessageQueueWorker().isAlive()),
                     "    server watchdog -> alive: " + (DiscordSRV.getPlugin().getServerWatchdog() != null && DiscordSRV.getPlugin().getServerWatchdog().isAlive()),
                     "    nickname updater -> alive: " + (DiscordSRV.getPlugin().getNicknameUpdater() != null && DiscordSRV.getPlugin().getNicknameUpdater().isAlive()),
+                    "console message queue: " + getConsoleMessageQueueStatus(),
+                    "chat message batcher: " + (DiscordSRV.config().getBooleanElse("DiscordChatChannelMessageBatching", false) ? DiscordSRV.getPlugin().getChatMessageBatcher().getMetrics() : "disabled"),
                     "hooked plugins: " + DiscordSRV.getPlugin().getPluginHooks().stream().map(PluginHook::getPlugin).filter(Objects::nonNull).map(Object::toString).collect(Collectors.joining(", ")),
                     "skripts: " + String.join(", ", SkriptHook.getSkripts())
             })));
@@ -179,6 +182,16 @@ public class DebugUtil {
         return Arrays.stream(extensionFiles).map(File::getName).collect(Collectors.joining(", "));
     }
 
+    private static String getConsoleMessageQueueStatus() {
+        ConsoleMessageQueue queue = DiscordSRV.getPlugin().getConsoleMessageQueue();
+        if (queue == null) return "not created";
+        return "depth " + queue.size() + "/" + queue.getCapacity()
+                + ", enqueued " + queue.getEnqueuedCount()
+                + ", dropped " + queue.getDroppedCount()
+                + ", coalesced " + queue.getCoalescedCount()
+                + ", overflow policy " + queue.getOverflowPolicy().name().toLowerCase();
+    }
+
     private static String getRelevantLinesFromServerLog() {
         List<String> output = new LinkedList<>();
         try {
@@ -206,7 +219,7 @@ public class DebugUtil {
 
         List<String> plugins = Arrays.stream(Bukkit.getPluginManager().getPlugins()).map(Object::toString).sorted().collect(Collectors.toList());
 
-        output.add("server players: " + PlayerUtil.getOnlinePlayers().size() + "/" + Bukkit.getMaxPlayers());
+        output.add("server players: " + PlayerUtil.getOnlinePlayerSnapshot().size() + "/" + Bukkit.getMaxPlayers());
         output.add("server plugins: " + plugins);
         output.add("");
         output.add("Minecraft version: " + Bukkit.getVersion());
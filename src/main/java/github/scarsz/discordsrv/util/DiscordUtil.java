@@ -25,15 +25,12 @@ package github.scarsz.discordsrv.util;
 import github.scarsz.discordsrv.DiscordSRV;
 import github.scarsz.discordsrv.api.events.DiscordGuildMessageSentEvent;
 import github.scarsz.discordsrv.api.events.DiscordPrivateMessageSentEvent;
+import github.scarsz.discordsrv.objects.MentionResolver;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.MessageBuilder;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.*;
-import net.dv8tion.jda.api.events.guild.member.update.GuildMemberUpdateNicknameEvent;
-import net.dv8tion.jda.api.events.role.update.RoleUpdateNameEvent;
-import net.dv8tion.jda.api.events.user.update.UserUpdateNameEvent;
 import net.dv8tion.jda.api.exceptions.PermissionException;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import net.dv8tion.jda.api.requests.restaction.MessageAction;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.TextColor;
@@ -43,6 +40,7 @@ import org.jetbrains.annotations.ApiStatus;
 import java.awt.Color;
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -138,57 +136,18 @@ public class DiscordUtil {
     public static String convertMentionsFromNames(String message, Guild guild) {
         if (!message.contains("@")) return message;
 
-        Map<Pattern, String> patterns = new HashMap<>();
-        for (Role role : guild.getRoles()) {
-            Pattern pattern = mentionPatternCache.computeIfAbsent(
-                    role.getId(),
-                    mentionable -> Pattern.compile(
-                            "(?<!<)" +
-                            Pattern.quote("@" + role.getName()),
-                            Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE
-                    )
-            );
-            patterns.put(pattern, role.getAsMention());
-        }
-
-        for (Member member : guild.getMembers()) {
-            Pattern pattern = mentionPatternCache.computeIfAbsent(
-                    member.getId(),
-                    mentionable -> Pattern.compile(
-                            "(?<!<)" +
-                            Pattern.quote("@" + member.getEffectiveName()),
-                            Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE
-                    )
-            );
-            patterns.put(pattern, member.getAsMention());
-        }
+        MentionResolver resolver = mentionResolvers.compute(guild.getId(), (id, existing) -> {
+            if (existing != null && existing.getJda() == guild.getJDA()) return existing;
 
-        for (Map.Entry<Pattern, String> entry : patterns.entrySet()) {
-            message = entry.getKey().matcher(message).replaceAll(entry.getValue());
-        }
-
-        return message;
-    }
-    private static Map<String, Pattern> mentionPatternCache = new HashMap<>();
-    static {
-        // event listener to clear the cache of invalid patterns because of name changes
-        if (DiscordUtil.getJda() != null) {
-            DiscordUtil.getJda().addEventListener(new ListenerAdapter() {
-                @Override
-                public void onUserUpdateName(UserUpdateNameEvent event) {
-                    mentionPatternCache.remove(event.getUser().getId());
-                }
-                @Override
-                public void onGuildMemberUpdateNickname(GuildMemberUpdateNicknameEvent event) {
-                    mentionPatternCache.remove(event.getMember().getId());
-                }
-                @Override
-                public void onRoleUpdateName(RoleUpdateNameEvent event) {
-                    mentionPatternCache.remove(event.getRole().getId());
-                }
-            });
-        }
+            // first use for this guild or JDA has been rebuilt since, index the guild's names once
+            if (existing != null) existing.getJda().removeEventListener(existing);
+            MentionResolver created = new MentionResolver(guild);
+            guild.getJDA().addEventListener(created);
+            return created;
+        });
+        return resolver.resolve(message);
     }
+    private static final Map<String, MentionResolver> mentionResolvers = new ConcurrentHashMap<>();
 
     /**
      * Return the given String with Markdown escaped. Useful for sending things to Discord.
@@ -280,10 +239,7 @@ public class DiscordUtil {
         }
 
         queueMessage(channel, message, m -> {
-            if (expiration > 0) {
-                try { Thread.sleep(expiration); } catch (InterruptedException ignored) {}
-                deleteMessage(m);
-            }
+            if (expiration > 0) deleteMessageLater(m, expiration);
         });
         if (overflow != null) sendMessage(channel, overflow, expiration);
     }
@@ -478,6 +434,18 @@ public class DiscordUtil {
      * @param consumer The consumer to handle the message
      */
     public static void queueMessage(TextChannel channel, Message message, Consumer<Message> consumer, boolean allowMassPing) {
+        queueMessage(channel, message, consumer, null, allowMassPing);
+    }
+    /**
+     * Send the given message to the given channel, optionally doing something with the message via the given consumer
+     * or with the reason it couldn't be sent via the given failure consumer
+     * @param channel The channel to send the message to
+     * @param message The message to send to the channel
+     * @param consumer The consumer to handle the message
+     * @param failure The consumer to handle the reason the message couldn't be sent, after it's been logged
+     * @param allowMassPing Whether or not to deny @everyone/@here pings
+     */
+    public static void queueMessage(TextChannel channel, Message message, Consumer<Message> consumer, Consumer<Throwable> failure, boolean allowMassPing) {
         if (channel == null) {
             DiscordSRV.debug("Tried sending a message to a null channel");
             return;
@@ -489,15 +457,20 @@ public class DiscordUtil {
             action.queue(sentMessage -> {
                 DiscordSRV.api.callEvent(new DiscordGuildMessageSentEvent(getJda(), sentMessage));
                 if (consumer != null) consumer.accept(sentMessage);
-            }, throwable -> DiscordSRV.error("Failed to send message to channel " + channel + ": " + throwable.getMessage()));
+            }, throwable -> {
+                DiscordSRV.error("Failed to send message to channel " + channel + ": " + throwable.getMessage());
+                if (failure != null) failure.accept(throwable);
+            });
         } catch (PermissionException e) {
             if (e.getPermission() != Permission.UNKNOWN) {
                 DiscordSRV.warning("Could not send message in channel " + channel + " because the bot does not have the \"" + e.getPermission().getName() + "\" permission");
             } else {
                 DiscordSRV.warning("Could not send message in channel " + channel + " because \"" + e.getMessage() + "\"");
             }
+            if (failure != null) failure.accept(e);
         } catch (IllegalStateException e) {
             DiscordSRV.error("Could not send message to channel " + channel + ": " + e.getMessage());
+            if (failure != null) failure.accept(e);
         }
     }
 
@@ -567,6 +540,15 @@ public class DiscordUtil {
         }
     }
 
+    /**
+     * Delete the given message after the given amount of milliseconds, given the bot has permission to
+     * @param message The message to delete
+     * @param delayMillis Milliseconds to wait before deleting the message
+     */
+    public static void deleteMessageLater(Message message, long delayMillis) {
+        DiscordSRV.getPlugin().getMessageDeletionScheduler().schedule(message, delayMillis);
+    }
+
     /**
      * Open the private channel for the given user and send them the given message
      * @param user User to send the message to
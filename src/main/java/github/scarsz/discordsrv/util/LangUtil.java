@@ -24,6 +24,7 @@ package github.scarsz.discordsrv.util;
 
 import github.scarsz.configuralize.Language;
 import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.objects.MessageSnapshot;
 import lombok.Getter;
 
 import java.util.HashMap;
@@ -752,8 +753,7 @@ public class LangUtil {
         }
 
         public String toString(boolean translateColors) {
-            String message = DiscordSRV.config().getString(this.keyName);
-            return translateColors ? MessageUtil.translateLegacy(message) : message;
+            return MessageSnapshot.get().getMessage(this, translateColors);
         }
 
     }
@@ -25,10 +25,10 @@ package github.scarsz.discordsrv.util;
 import github.scarsz.configuralize.DynamicConfig;
 import github.scarsz.discordsrv.DiscordSRV;
 import github.scarsz.discordsrv.objects.MessageFormat;
+import github.scarsz.discordsrv.objects.MessageSnapshot;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.Role;
 import org.apache.commons.lang3.StringUtils;
-import org.bukkit.ChatColor;
 
 import java.awt.Color;
 import java.util.ArrayList;
@@ -41,9 +41,7 @@ public class MessageFormatResolver {
     public static String getMessageFormat(List<Role> selectedRoles, String channel) {
         LangUtil.Message format = !selectedRoles.isEmpty() ? LangUtil.Message.CHAT_TO_MINECRAFT : LangUtil.Message.CHAT_TO_MINECRAFT_NO_ROLE;
 
-        return DiscordSRV.config().getOptionalString(format.getKeyName() + "_" + channel)
-                .map(s -> ChatColor.translateAlternateColorCodes('&', s))
-                .orElseGet(format::toString);
+        return MessageSnapshot.get().getChatToMinecraftFormat(format, channel);
     }
 
     public static MessageFormat getMessageFromConfiguration(DynamicConfig config, String key) {
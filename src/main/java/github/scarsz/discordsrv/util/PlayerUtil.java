@@ -25,16 +25,15 @@ package github.scarsz.discordsrv.util;
 import github.scarsz.discordsrv.DiscordSRV;
 import github.scarsz.discordsrv.hooks.PluginHook;
 import github.scarsz.discordsrv.hooks.vanish.VanishHook;
+import github.scarsz.discordsrv.objects.OnlinePlayerSnapshot;
 import net.dv8tion.jda.api.entities.User;
 import org.apache.commons.lang3.StringUtils;
 import org.bukkit.Bukkit;
-import org.bukkit.Server;
 import org.bukkit.Sound;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
 
-import java.lang.reflect.Method;
 import java.util.*;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -49,30 +48,18 @@ public class PlayerUtil {
      * Method return type-safe version of Bukkit::getOnlinePlayers
      * @param filterVanishedPlayers whether or not to filter out vanished players
      * @return {@code ArrayList} containing online players
+     * @see #getOnlinePlayerSnapshot()
      */
     public static List<Player> getOnlinePlayers(boolean filterVanishedPlayers) {
-        List<Player> onlinePlayers = new ArrayList<>();
-
-        try {
-            Method onlinePlayerMethod = Server.class.getMethod("getOnlinePlayers");
-            if (onlinePlayerMethod.getReturnType().equals(Collection.class)) {
-                for (Object o : ((Collection<?>) onlinePlayerMethod.invoke(Bukkit.getServer()))) {
-                    onlinePlayers.add((Player) o);
-                }
-            } else {
-                Collections.addAll(onlinePlayers, ((Player[]) onlinePlayerMethod.invoke(Bukkit.getServer())));
-            }
-        } catch (Exception e) {
-            DiscordSRV.error(e);
-        }
+        return new ArrayList<>(getOnlinePlayerSnapshot().getPlayers(filterVanishedPlayers));
+    }
 
-        if (!filterVanishedPlayers) {
-            return onlinePlayers;
-        } else {
-            return onlinePlayers.stream()
-                    .filter(player -> !isVanished(player))
-                    .collect(Collectors.toList());
-        }
+    /**
+     * Get the online players without copying them, for when they only need to be counted or looked through
+     * @return the snapshot of the online players, with their vanished states & indexes by name
+     */
+    public static OnlinePlayerSnapshot getOnlinePlayerSnapshot() {
+        return OnlinePlayerSnapshot.get();
     }
 
     private static Sound notificationSound = null;
@@ -115,11 +102,19 @@ public class PlayerUtil {
                         })
                         .collect(Collectors.toList());
 
-        getOnlinePlayers().stream()
+        // look the mentioned names up instead of checking every online player against every word
+        OnlinePlayerSnapshot onlinePlayers = getOnlinePlayerSnapshot();
+        Set<Player> mentionedPlayers = new LinkedHashSet<>();
+        for (String word : splitMessage) {
+            if (word.length() < 2 || word.charAt(0) != '@') continue;
+            String name = word.substring(1);
+            Player player = onlinePlayers.getPlayerByName(name);
+            if (player != null) mentionedPlayers.add(player);
+            mentionedPlayers.addAll(onlinePlayers.getPlayersByDisplayName(name));
+        }
+
+        mentionedPlayers.stream()
                 .filter(predicate) // apply predicate to filter out players that didn't get this message sent to them
-                .filter(player -> // filter out players who's name nor display name is in the split message
-                        splitMessage.contains("@" + player.getName().toLowerCase()) || splitMessage.contains("@" + MessageUtil.strip(player.getDisplayName().toLowerCase()))
-                )
                 .forEach(player -> player.playSound(player.getLocation(), notificationSound, 1, 1));
     }
 
@@ -127,6 +122,7 @@ public class PlayerUtil {
      * Check if the given Player is vanished by a supported and hooked vanish plugin
      * @param player Player to check
      * @return whether or not the player is vanished
+     * @see OnlinePlayerSnapshot#isVanished(Player)
      */
     public static boolean isVanished(Player player) {
         for (PluginHook pluginHook : DiscordSRV.getPlugin().getPluginHooks()) {
@@ -39,6 +39,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -124,6 +125,16 @@ public class PluginUtil {
         System.gc();
     }
 
+    // plugin & hook states by name, thrown away whenever plugins are enabled/disabled or the config is reloaded
+    private static volatile PluginStates pluginStates = new PluginStates();
+
+    /**
+     * Forget the cached plugin & plugin hook states, to be checked again the next time they're needed
+     */
+    public static void invalidatePluginStates() {
+        pluginStates = new PluginStates();
+    }
+
     /**
      * Check whether or not the given plugin is installed and enabled
      * @param pluginName The plugin name to check
@@ -140,6 +151,16 @@ public class PluginUtil {
      * @return Whether or not the plugin is installed and enabled
      */
     public static boolean checkIfPluginEnabled(String pluginName, boolean startsWith) {
+        Map<String, Boolean> states = startsWith ? pluginStates.pluginsByPrefix : pluginStates.plugins;
+        Boolean enabled = states.get(pluginName);
+        if (enabled == null) {
+            enabled = findIfPluginEnabled(pluginName, startsWith);
+            states.put(pluginName, enabled);
+        }
+        return enabled;
+    }
+
+    private static boolean findIfPluginEnabled(String pluginName, boolean startsWith) {
         if (startsWith && checkIfPluginEnabled(pluginName, false)) {
             return true;
         }
@@ -164,6 +185,16 @@ public class PluginUtil {
     }
 
     public static boolean pluginHookIsEnabled(String pluginName, boolean startsWith) {
+        Map<String, Boolean> states = startsWith ? pluginStates.hooksByPrefix : pluginStates.hooks;
+        Boolean enabled = states.get(pluginName);
+        if (enabled == null) {
+            enabled = findIfPluginHookEnabled(pluginName, startsWith);
+            states.put(pluginName, enabled);
+        }
+        return enabled;
+    }
+
+    private static boolean findIfPluginHookEnabled(String pluginName, boolean startsWith) {
         boolean enabled = checkIfPluginEnabled(pluginName, startsWith);
         for (String pluginHookName : DiscordSRV.config().getStringList("DisabledPluginHooks")) {
             if (pluginName.toLowerCase().startsWith(pluginHookName.toLowerCase())) {
@@ -180,4 +211,13 @@ public class PluginUtil {
         return null;
     }
 
+    private static class PluginStates {
+
+        private final Map<String, Boolean> plugins = new ConcurrentHashMap<>();
+        private final Map<String, Boolean> pluginsByPrefix = new ConcurrentHashMap<>();
+        private final Map<String, Boolean> hooks = new ConcurrentHashMap<>();
+        private final Map<String, Boolean> hooksByPrefix = new ConcurrentHashMap<>();
+
+    }
+
 }
@@ -24,26 +24,53 @@ package github.scarsz.discordsrv.util;
 
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.Plugin;
-import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.Expression;
 import org.springframework.expression.ParseException;
+import org.springframework.expression.spel.SpelCompilerMode;
 import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SpELExpressionBuilder {
 
-    private static final ExpressionParser PARSER = new SpelExpressionParser();
+    // mixed mode compiles expressions to bytecode once they've been evaluated a few times, falling back to
+    // interpreting them if the compiled version fails (like when the root's type changes)
+    private static final SpelExpressionParser PARSER = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, SpELExpressionBuilder.class.getClassLoader()));
+    private static final int MAX_CACHED_EXPRESSIONS = 256;
+    private static final Map<String, Expression> EXPRESSIONS = new ConcurrentHashMap<>();
+    private static final Map<String, Plugin> PLUGINS = new PluginMap();
+
+    /**
+     * Parse the given expression, reusing the result of the last time the same expression was parsed
+     * @throws ParseException if the expression is invalid
+     */
+    public static Expression parse(String expression) throws ParseException {
+        Expression parsed = EXPRESSIONS.get(expression);
+        if (parsed == null) {
+            parsed = PARSER.parseExpression(expression);
+            if (EXPRESSIONS.size() >= MAX_CACHED_EXPRESSIONS) EXPRESSIONS.clear();
+            EXPRESSIONS.put(expression, parsed);
+        }
+        return parsed;
+    }
 
     private final String expression;
+    private final Expression parsedExpression;
     private final Map<String, Object> variables = new HashMap<>();
 
     public SpELExpressionBuilder(String expression) {
         this.expression = expression;
+        this.parsedExpression = null;
+    }
+
+    public SpELExpressionBuilder(Expression expression) {
+        this.expression = expression.getExpressionString();
+        this.parsedExpression = expression;
     }
 
     public SpELExpressionBuilder withVariable(String key, Object value) {
@@ -57,9 +84,7 @@ public class SpELExpressionBuilder {
     }
 
     public SpELExpressionBuilder withPluginVariables() {
-        variables.put("plugins", Arrays.stream(Bukkit.getPluginManager().getPlugins())
-                .collect(Collectors.toMap(Plugin::getName, plugin -> plugin))
-        );
+        variables.put("plugins", PLUGINS);
         return this;
     }
 
@@ -70,7 +95,31 @@ public class SpELExpressionBuilder {
     public <T> T evaluate(Object root, Class<T> desiredType) throws ParseException, SpelEvaluationException {
         StandardEvaluationContext context = new StandardEvaluationContext(root);
         context.setVariables(variables);
-        return PARSER.parseExpression(this.expression).getValue(context, desiredType);
+        return (parsedExpression != null ? parsedExpression : parse(expression)).getValue(context, desiredType);
+    }
+
+    /**
+     * The server's plugins by name, looked up when the expression asks for one instead of collected up front
+     */
+    private static class PluginMap extends AbstractMap<String, Plugin> {
+
+        @Override
+        public Plugin get(Object key) {
+            return key instanceof String ? Bukkit.getPluginManager().getPlugin((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<String, Plugin>> entrySet() {
+            Map<String, Plugin> plugins = new LinkedHashMap<>();
+            for (Plugin plugin : Bukkit.getPluginManager().getPlugins()) plugins.put(plugin.getName(), plugin);
+            return plugins.entrySet();
+        }
+
     }
 
 }
@@ -23,6 +23,7 @@
 package github.scarsz.discordsrv.util;
 
 import github.scarsz.discordsrv.DiscordSRV;
+import org.apache.commons.lang3.StringUtils;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -30,34 +31,106 @@ import java.util.TimeZone;
 
 public class TimeUtil {
 
-    private static final Date date = new Date();
-    private static final SimpleDateFormat timestampFormat;
-    private static final SimpleDateFormat dateFormat;
+    private static final CachedFormat timestampFormat;
+    private static final CachedFormat dateFormat;
     private static final TimeZone zone;
 
     static {
-        timestampFormat = new SimpleDateFormat(DiscordSRV.config().getOptionalString("TimestampFormat").orElse("EEE, d. MMM yyyy HH:mm:ss z"));
-        dateFormat = new SimpleDateFormat(DiscordSRV.config().getOptionalString("DateFormat").orElse("yyyy-MM-dd"));
-
         String timezone = DiscordSRV.config().getOptionalString("Timezone").orElse("default");
         zone = timezone.equalsIgnoreCase("default") ? TimeZone.getDefault() : TimeZone.getTimeZone(timezone);
-        timestampFormat.setTimeZone(zone);
-        dateFormat.setTimeZone(zone);
+
+        timestampFormat = CachedFormat.of(DiscordSRV.config().getOptionalString("TimestampFormat").orElse("EEE, d. MMM yyyy HH:mm:ss z"), zone);
+        dateFormat = CachedFormat.of(DiscordSRV.config().getOptionalString("DateFormat").orElse("yyyy-MM-dd"), zone);
     }
 
     public static String format(String format) {
         return format(new SimpleDateFormat(format));
     }
     public static String format(SimpleDateFormat format) {
-        date.setTime(System.currentTimeMillis());
-        return format.format(date);
+        return format(format, System.currentTimeMillis());
+    }
+    public static String format(SimpleDateFormat format, long time) {
+        synchronized (format) {
+            return format.format(new Date(time));
+        }
     }
 
     public static String date() {
-        return format(dateFormat);
+        return dateFormat.format(System.currentTimeMillis());
     }
     public static String timeStamp() {
-        return format(timestampFormat);
+        return timestampFormat.format(System.currentTimeMillis());
+    }
+    public static String timeStamp(long time) {
+        return timestampFormat.format(time);
+    }
+
+    /**
+     * Replace the %time% & %date% placeholders (both the timestamp) in the given text, without regex
+     */
+    public static String replaceTimePlaceholders(String text) {
+        if (text == null || text.indexOf('%') == -1) return text;
+        boolean time = text.contains("%time%");
+        boolean date = text.contains("%date%");
+        if (!time && !date) return text;
+
+        String timeStamp = timeStamp();
+        if (time) text = StringUtils.replace(text, "%time%", timeStamp);
+        if (date) text = StringUtils.replace(text, "%date%", timeStamp);
+        return text;
+    }
+
+    /**
+     * A date format that can be used from any thread, remembering the last time it formatted down to the second so
+     * formatting the time again within the same second only takes reading a field
+     */
+    static class CachedFormat {
+
+        private final ThreadLocal<SimpleDateFormat> formats; // SimpleDateFormat isn't thread safe, one per thread
+        private final boolean cacheable;
+        private volatile Rendered last = new Rendered(Long.MIN_VALUE, null);
+
+        static CachedFormat of(String pattern, TimeZone zone) {
+            return new CachedFormat(pattern, zone);
+        }
+
+        CachedFormat(String pattern, TimeZone zone) {
+            // made here so an invalid pattern fails right away, not when it's first used
+            SimpleDateFormat format = new SimpleDateFormat(pattern);
+            format.setTimeZone(zone);
+            this.formats = ThreadLocal.withInitial(() -> (SimpleDateFormat) format.clone());
+            // anything showing fractions of a second changes more than once per second
+            this.cacheable = !pattern.replaceAll("'[^']*'", "").contains("S");
+        }
+
+        String format(long time) {
+            if (!cacheable) return render(time);
+
+            long second = Math.floorDiv(time, 1000);
+            Rendered rendered = last;
+            if (rendered.second == second) return rendered.text;
+
+            String text = render(second * 1000);
+            last = new Rendered(second, text);
+            return text;
+        }
+
+        private String render(long time) {
+            return formats.get().format(new Date(time));
+        }
+
+    }
+
+    private static class Rendered {
+
+        private final long second;
+        private final String text;
+
+        private Rendered(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+
     }
 
 }
@@ -22,29 +22,36 @@
 
 package github.scarsz.discordsrv.util;
 
-import com.github.kevinsawicki.http.HttpRequest;
 import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.objects.WebhookDeliveryQueue;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.*;
-import net.dv8tion.jda.api.requests.restaction.MessageAction;
-import org.apache.commons.lang3.StringUtils;
-import org.bukkit.Bukkit;
+import net.dv8tion.jda.api.requests.RestAction;
 import org.bukkit.entity.Player;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 public class WebhookUtil {
 
     private static final Predicate<Webhook> LEGACY = hook -> hook.getName().endsWith("#1") || hook.getName().endsWith("#2");
 
-    static {
+    private static final AtomicBoolean webhooksLoaded = new AtomicBoolean(false);
+    private static final Map<String, CompletableFuture<String>> channelWebhookUrls = new ConcurrentHashMap<>();
+
+    /**
+     * Retrieve the webhooks of every guild the bot can manage webhooks in, getting rid of the webhooks created by
+     * DiscordSRV that don't match a good channel & caching the webhook URLs of the linked channels. Done once, at
+     * startup if webhooks are being used or before the first webhook is looked up otherwise.
+     */
+    public static void loadWebhooks() {
+        if (!webhooksLoaded.compareAndSet(false, true)) return;
+
         try {
-            // get rid of all previous webhooks created by DiscordSRV if they don't match a good channel
             for (Guild guild : DiscordSRV.getPlugin().getJda().getGuilds()) {
                 Member selfMember = guild.getSelfMember();
                 if (!selfMember.hasPermission(Permission.MANAGE_WEBHOOKS)) {
@@ -52,7 +59,24 @@ public class WebhookUtil {
                     continue;
                 }
 
+                Set<TextChannel> linkedChannels = new HashSet<>();
+                for (String channelId : DiscordSRV.getPlugin().getChannels().values()) {
+                    TextChannel channel = guild.getTextChannelById(channelId);
+                    if (channel != null) linkedChannels.add(channel);
+                }
+
+                // chat goes through webhooks in all linked channels, so lookups for them can wait for this instead of
+                // retrieving the webhooks themselves & the missing webhooks can be created right away
+                Map<TextChannel, CompletableFuture<String>> loading = new HashMap<>();
+                if (DiscordSRV.config().getBoolean("Experiment_WebhookChatMessageDelivery")) {
+                    for (TextChannel channel : linkedChannels) {
+                        CompletableFuture<String> future = new CompletableFuture<>();
+                        if (channelWebhookUrls.putIfAbsent(channel.getId(), future) == null) loading.put(channel, future);
+                    }
+                }
+
                 guild.retrieveWebhooks().queue(webhooks -> {
+                    List<Webhook> remaining = new ArrayList<>();
                     for (Webhook webhook : webhooks) {
                         Member owner = webhook.getOwner();
                         if (owner == null || !owner.getId().equals(selfMember.getId()) || !webhook.getName().startsWith("DiscordSRV")) {
@@ -63,9 +87,25 @@ public class WebhookUtil {
                             webhook.delete().reason("DiscordSRV: Purging webhook for unlinked channel").queue();
                         } else if (LEGACY.test(webhook)) {
                             webhook.delete().reason("DiscordSRV: Purging legacy formatted webhook").queue();
+                        } else {
+                            remaining.add(webhook);
                         }
                     }
-                });
+                    for (TextChannel channel : linkedChannels) {
+                        CompletableFuture<String> future = loading.get(channel);
+                        if (future == null) {
+                            // only cache the channels that already have a webhook, the others get one when they need it
+                            String webhookFormat = "DiscordSRV " + channel.getId();
+                            if (remaining.stream().noneMatch(webhook -> webhook.getName().startsWith(webhookFormat))) continue;
+                            future = new CompletableFuture<>();
+                            if (channelWebhookUrls.putIfAbsent(channel.getId(), future) != null) continue;
+                        }
+                        resolveWebhookUrl(channel, remaining, future);
+                    }
+                }, throwable -> loading.forEach((channel, future) -> {
+                    channelWebhookUrls.remove(channel.getId(), future);
+                    future.completeExceptionally(throwable);
+                }));
             }
         } catch (Exception e) {
             DiscordSRV.warning("Failed to purge already existing webhooks: " + e.getMessage());
@@ -78,129 +118,114 @@ public class WebhookUtil {
     }
 
     public static void deliverMessage(TextChannel channel, Player player, String message, MessageEmbed embed) {
-        Bukkit.getScheduler().runTaskAsynchronously(DiscordSRV.getPlugin(), () -> {
-            String avatarUrl = DiscordSRV.getAvatarUrl(player);
-            String username = DiscordSRV.config().getString("Experiment_WebhookChatMessageUsernameFormat")
-                    .replace("%displayname%", MessageUtil.strip(player.getDisplayName()))
-                    .replace("%username%", player.getName());
-            String chatMessage = DiscordSRV.config().getString("Experiment_WebhookChatMessageFormat")
-                    .replace("%displayname%", MessageUtil.strip(player.getDisplayName()))
-                    .replace("%username%", player.getName())
-                    .replace("%message%", message);
-            chatMessage = PlaceholderUtil.replacePlaceholders(chatMessage, player);
-            username = PlaceholderUtil.replacePlaceholders(username, player);
-            username = MessageUtil.strip(username);
-
-            String userId = DiscordSRV.getPlugin().getAccountLinkManager().getDiscordId(player.getUniqueId());
-            if (userId != null) {
-                Member member = DiscordUtil.getMemberById(userId);
-                if (member != null) {
-                    if (DiscordSRV.config().getBoolean("Experiment_WebhookChatMessageAvatarFromDiscord"))
-                        avatarUrl = member.getUser().getEffectiveAvatarUrl();
-                    if (DiscordSRV.config().getBoolean("Experiment_WebhookChatMessageUsernameFromDiscord"))
-                        username = member.getEffectiveName();
-                }
-            }
+        String avatarUrl = DiscordSRV.getAvatarUrl(player);
+        String username = DiscordSRV.config().getString("Experiment_WebhookChatMessageUsernameFormat")
+                .replace("%displayname%", MessageUtil.strip(player.getDisplayName()))
+                .replace("%username%", player.getName());
+        String chatMessage = DiscordSRV.config().getString("Experiment_WebhookChatMessageFormat")
+                .replace("%displayname%", MessageUtil.strip(player.getDisplayName()))
+                .replace("%username%", player.getName())
+                .replace("%message%", message);
+        chatMessage = PlaceholderUtil.replacePlaceholders(chatMessage, player);
+        username = PlaceholderUtil.replacePlaceholders(username, player);
+        username = MessageUtil.strip(username);
 
+        if (channel == null) return;
+        boolean avatarFromDiscord = DiscordSRV.config().getBoolean("Experiment_WebhookChatMessageAvatarFromDiscord");
+        boolean usernameFromDiscord = DiscordSRV.config().getBoolean("Experiment_WebhookChatMessageUsernameFromDiscord");
+        if (!avatarFromDiscord && !usernameFromDiscord) {
             deliverMessage(channel, username, avatarUrl, chatMessage, embed);
-        });
-    }
+            return;
+        }
 
-    public static void deliverMessage(TextChannel channel, String webhookName, String webhookAvatarUrl, String message, MessageEmbed embed) {
-        deliverMessage(channel, webhookName, webhookAvatarUrl, message, embed, true);
+        // the linked account might have to come from the database, which this thread (often the main thread)
+        // shouldn't wait for; the delivery queue holds the channel's later messages until it's known
+        String minecraftUsername = username;
+        String minecraftAvatarUrl = avatarUrl;
+        CompletableFuture<WebhookDeliveryQueue.Author> author = DiscordSRV.getPlugin().getAccountLinkManager()
+                .getDiscordIdAsync(player.getUniqueId())
+                .handle((userId, throwable) -> {
+                    if (throwable != null) {
+                        DiscordSRV.debug("Failed to look up the linked account of " + player.getName() + " for a webhook message: " + throwable.getMessage());
+                    }
+                    Member member = userId != null ? DiscordUtil.getMemberById(userId) : null;
+                    if (member == null) return new WebhookDeliveryQueue.Author(minecraftUsername, minecraftAvatarUrl);
+                    return new WebhookDeliveryQueue.Author(
+                            usernameFromDiscord ? member.getEffectiveName() : minecraftUsername,
+                            avatarFromDiscord ? member.getUser().getEffectiveAvatarUrl() : minecraftAvatarUrl
+                    );
+                });
+        DiscordSRV.getPlugin().getWebhookDeliveryQueue().deliver(channel, author, chatMessage, embed);
     }
 
-    private static void deliverMessage(TextChannel channel, String webhookName, String webhookAvatarUrl, String message, MessageEmbed embed, boolean allowSecondAttempt) {
+    /**
+     * Queue the given message to be delivered through the given channel's webhook, after the messages queued for the
+     * channel before it
+     */
+    public static void deliverMessage(TextChannel channel, String webhookName, String webhookAvatarUrl, String message, MessageEmbed embed) {
         if (channel == null) return;
-
-        String webhookUrl = getWebhookUrlToUseForChannel(channel);
-        if (webhookUrl == null) return;
-
-        Bukkit.getScheduler().runTaskAsynchronously(DiscordSRV.getPlugin(), () -> {
-            try {
-                JSONObject jsonObject = new JSONObject();
-                // workaround for a Discord block for using 'Clyde' in usernames
-                jsonObject.put("username", webhookName.replaceAll("(?:(?i)c)l(?:(?i)yde)", "$1I$2").replaceAll("(?i)(clyd)e", "$13"));
-                jsonObject.put("avatar_url", webhookAvatarUrl);
-
-                if (StringUtils.isNotBlank(message)) jsonObject.put("content", message);
-                if (embed != null) {
-                    JSONArray jsonArray = new JSONArray();
-                    jsonArray.put(embed.toData().toMap());
-                    jsonObject.put("embeds", jsonArray);
-                }
-
-                JSONObject allowedMentions = new JSONObject();
-                Set<String> parse = MessageAction.getDefaultMentions().stream()
-                        .filter(Objects::nonNull)
-                        .map(Message.MentionType::getParseKey)
-                        .collect(Collectors.toSet());
-                allowedMentions.put("parse", parse);
-                jsonObject.put("allowed_mentions", allowedMentions);
-
-                HttpRequest request = HttpRequest.post(webhookUrl)
-                        .header("Content-Type", "application/json")
-                        .userAgent("DiscordSRV/" + DiscordSRV.getPlugin().getDescription().getVersion())
-                        .send(jsonObject.toString());
-
-                int status = request.code();
-                if (status == 404) {
-                    // 404 = Invalid Webhook (most likely to have been deleted)
-                    DiscordSRV.debug("Webhook delivery returned 404, marking webhooks URLs as invalid to let them regenerate" + (allowSecondAttempt ? " & trying again" : ""));
-                    invalidWebhookUrlForChannel(channel); // tell it to get rid of the urls & get new ones
-                    if (allowSecondAttempt) deliverMessage(channel, webhookName, webhookAvatarUrl, message, embed, false);
-                    return;
-                }
-                String body = request.body();
-                try {
-                    JSONObject jsonObj = new JSONObject(body);
-                    if (jsonObj.has("code")) {
-                        // 10015 = unknown webhook, https://discord.com/developers/docs/topics/opcodes-and-status-codes#json-json-error-codes
-                        if (jsonObj.getInt("code") == 10015) {
-                            DiscordSRV.debug("Webhook delivery returned 10015 (Unknown Webhook), marking webhooks url's as invalid to let them regenerate" + (allowSecondAttempt ? " & trying again" : ""));
-                            invalidWebhookUrlForChannel(channel); // tell it to get rid of the urls & get new ones
-                            if (allowSecondAttempt) deliverMessage(channel, webhookName, webhookAvatarUrl, message, embed, false);
-                            return;
-                        }
-                    }
-                } catch (Throwable ignored) {}
-                if (status == 204) {
-                    DiscordSRV.debug("Received API response for webhook message delivery: " + status);
-                } else {
-                    DiscordSRV.debug("Received unexpected API response for webhook message delivery: " + status + " for request: " + jsonObject.toString() + ", response: " + body);
-                }
-            } catch (Exception e) {
-                DiscordSRV.error("Failed to deliver webhook message to Discord: " + e.getMessage());
-                DiscordSRV.debug(e);
-            }
-        });
+        DiscordSRV.getPlugin().getWebhookDeliveryQueue().deliver(channel, webhookName, webhookAvatarUrl, message, embed);
     }
 
-    private static final Map<String, String> channelWebhookUrls = new ConcurrentHashMap<>();
-
     public static void invalidWebhookUrlForChannel(TextChannel textChannel) {
         String channelId = textChannel.getId();
         channelWebhookUrls.remove(channelId);
     }
 
+    /**
+     * Get the URL of the webhook to deliver messages to the given channel with, waiting for it to be looked up
+     * @return the webhook URL or null if there isn't one & it couldn't be created
+     * @see #getWebhookUrlForChannel(TextChannel)
+     */
     public static String getWebhookUrlToUseForChannel(TextChannel channel) {
+        try {
+            return getWebhookUrlForChannel(channel).join();
+        } catch (CompletionException e) {
+            DiscordSRV.error("Failed to retrieve webhooks for channel " + channel + ": " + e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Get the URL of the webhook to deliver messages to the given channel with. Cached after the first lookup, which
+     * every lookup for the channel made before it finished shares.
+     * @return a future completed with the webhook URL, or null if there isn't one & it couldn't be created
+     */
+    public static CompletableFuture<String> getWebhookUrlForChannel(TextChannel channel) {
+        loadWebhooks();
+
         final String channelId = channel.getId();
-        return channelWebhookUrls.computeIfAbsent(channelId, cid -> {
-            List<Webhook> hooks = new ArrayList<>();
-            final Guild guild = channel.getGuild();
-            final Member selfMember = guild.getSelfMember();
+        CompletableFuture<String> cached = channelWebhookUrls.get(channelId);
+        if (cached != null) return cached;
 
-            String webhookFormat = "DiscordSRV " + cid;
+        CompletableFuture<String> future = new CompletableFuture<>();
+        cached = channelWebhookUrls.putIfAbsent(channelId, future);
+        if (cached != null) return cached;
 
-            // Check if we have permission guild-wide
-            List<Webhook> result;
-            if (guild.getSelfMember().hasPermission(Permission.MANAGE_WEBHOOKS)) {
-                result = guild.retrieveWebhooks().complete();
-            } else {
-                result = channel.retrieveWebhooks().complete();
-            }
+        // Check if we have permission guild-wide
+        RestAction<List<Webhook>> retrieveWebhooks = channel.getGuild().getSelfMember().hasPermission(Permission.MANAGE_WEBHOOKS)
+                ? channel.getGuild().retrieveWebhooks()
+                : channel.retrieveWebhooks();
+        retrieveWebhooks.queue(webhooks -> resolveWebhookUrl(channel, webhooks, future), throwable -> {
+            channelWebhookUrls.remove(channelId, future);
+            future.completeExceptionally(throwable);
+        });
+        return future;
+    }
+
+    private static void resolveWebhookUrl(TextChannel channel, List<Webhook> webhooks, CompletableFuture<String> future) {
+        // don't cache not having a webhook, try again next time
+        future.whenComplete((url, throwable) -> {
+            if (url == null) channelWebhookUrls.remove(channel.getId(), future);
+        });
+
+        try {
+            List<Webhook> hooks = new ArrayList<>();
+            final Member selfMember = channel.getGuild().getSelfMember();
+
+            String webhookFormat = "DiscordSRV " + channel.getId();
 
-            result.stream()
+            webhooks.stream()
                     .filter(webhook -> webhook.getName().startsWith(webhookFormat))
                     .filter(webhook -> {
                         // Filter to what we can modify
@@ -224,15 +249,24 @@ public class WebhookUtil {
                     .forEach(hooks::add);
 
             if (hooks.isEmpty()) {
-                hooks.add(createWebhook(channel, webhookFormat));
+                channel.createWebhook(webhookFormat).reason("DiscordSRV: Creating webhook").queue(webhook -> {
+                    DiscordSRV.debug("Created webhook " + webhook.getName() + " to deliver messages to text channel #" + channel.getName());
+                    future.complete(webhook.getUrl());
+                }, throwable -> {
+                    DiscordSRV.error("Failed to create webhook " + webhookFormat + " for message delivery: " + throwable.getMessage());
+                    future.complete(null);
+                });
+                return;
             } else if (hooks.size() > 1) {
                 for (int index = 1; index < hooks.size(); index++) {
                     hooks.get(index).delete().reason("DiscordSRV: Purging duplicate webhook").queue();
                 }
             }
 
-            return hooks.stream().map(Webhook::getUrl).findAny().orElse(null);
-        });
+            future.complete(hooks.get(0).getUrl());
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
     }
 
     public static Webhook createWebhook(TextChannel channel, String name) {
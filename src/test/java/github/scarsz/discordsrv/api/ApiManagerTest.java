@@ -0,0 +1,189 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.api;
+
+import github.scarsz.discordsrv.api.events.Event;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ApiManagerTest {
+
+    @Test
+    public void callsSubscribersByPriorityThenSubscriptionOrder() {
+        List<String> calls = new ArrayList<>();
+        ApiManager apiManager = new ApiManager();
+        apiManager.addListener(new OrderListener("first", calls));
+        apiManager.addListener(new OrderListener("second", calls));
+
+        apiManager.callEvent(new TestEvent());
+        assertEquals(calls.toString(), 4, calls.size());
+        assertEquals("first lowest", calls.get(0));
+        assertEquals("second lowest", calls.get(1));
+        assertEquals("first monitor", calls.get(2));
+        assertEquals("second monitor", calls.get(3));
+    }
+
+    @Test
+    public void callsSubscribersOfTheEventAndItsSuperclasses() {
+        CountingListener listener = new CountingListener();
+        ApiManager apiManager = new ApiManager();
+        apiManager.addListener(listener);
+
+        apiManager.callEvent(new TestEvent());
+        apiManager.callEvent(new OtherEvent());
+        assertEquals(1, listener.testEvents);
+        assertEquals(2, listener.events);
+    }
+
+    @Test
+    public void callsStaticSubscribers() {
+        StaticListener.calls = 0;
+        ApiManager apiManager = new ApiManager();
+        apiManager.addListener(new StaticListener());
+
+        apiManager.callEvent(new TestEvent());
+        assertEquals(1, StaticListener.calls);
+    }
+
+    /**
+     * Not a test, times calling an event through the dispatch tables against going through every listener's methods
+     * by reflection (like before the dispatch tables) with 1, 10 & 50 listeners. Run it by hand to compare them.
+     */
+    @Ignore
+    @Test
+    public void benchmarkDispatch() {
+        int iterations = 20_000;
+        for (int listenerCount : new int[] {1, 10, 50}) {
+            ApiManager apiManager = new ApiManager();
+            List<Object> listeners = new ArrayList<>();
+            for (int i = 0; i < listenerCount; i++) {
+                CountingListener listener = new CountingListener();
+                listeners.add(listener);
+                apiManager.addListener(listener);
+            }
+            TestEvent event = new TestEvent();
+
+            for (int round = 0; round < 5; round++) {
+                long started = System.nanoTime();
+                for (int i = 0; i < iterations; i++) callEventByReflection(listeners, event);
+                long reflectionNanos = System.nanoTime() - started;
+
+                started = System.nanoTime();
+                for (int i = 0; i < iterations; i++) apiManager.callEvent(event);
+                long dispatchNanos = System.nanoTime() - started;
+
+                System.out.println(listenerCount + " listener(s), round " + round + ": reflection "
+                        + (reflectionNanos / iterations) + "ns/event, dispatch table " + (dispatchNanos / iterations) + "ns/event");
+            }
+        }
+    }
+
+    /**
+     * How events were called before the dispatch tables
+     */
+    private static void callEventByReflection(List<Object> listeners, Event event) {
+        for (ListenerPriority listenerPriority : ListenerPriority.values()) {
+            for (Object apiListener : listeners) {
+                for (Method method : apiListener.getClass().getMethods()) {
+                    if (method.getParameters().length != 1) continue;
+                    if (!method.getParameters()[0].getType().isAssignableFrom(event.getClass())) continue;
+                    if (!method.isAnnotationPresent(Subscribe.class)) continue;
+
+                    for (Annotation annotation : method.getAnnotations()) {
+                        if (!(annotation instanceof Subscribe)) continue;
+                        if (((Subscribe) annotation).priority() != listenerPriority) continue;
+                        if (!method.isAccessible()) method.setAccessible(true);
+
+                        try {
+                            method.invoke(apiListener, event);
+                        } catch (ReflectiveOperationException e) {
+                            throw new AssertionError(e);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public static class TestEvent extends Event {}
+
+    public static class OtherEvent extends Event {}
+
+    public static class CountingListener {
+
+        private int testEvents = 0;
+        private int events = 0;
+
+        @Subscribe
+        public void onTestEvent(TestEvent event) {
+            testEvents++;
+        }
+
+        @Subscribe
+        public void onEvent(Event event) {
+            events++;
+        }
+
+    }
+
+    public static class OrderListener {
+
+        private final String name;
+        private final List<String> calls;
+
+        private OrderListener(String name, List<String> calls) {
+            this.name = name;
+            this.calls = calls;
+        }
+
+        @Subscribe(priority = ListenerPriority.MONITOR)
+        public void onMonitor(TestEvent event) {
+            calls.add(name + " monitor");
+        }
+
+        @Subscribe(priority = ListenerPriority.LOWEST)
+        public void onLowest(TestEvent event) {
+            calls.add(name + " lowest");
+        }
+
+    }
+
+    public static class StaticListener {
+
+        private static int calls = 0;
+
+        @Subscribe
+        public static void onTestEvent(TestEvent event) {
+            calls++;
+        }
+
+    }
+
+}
@@ -0,0 +1,204 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.modules.requirelink;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class LinkLookupBatcherTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ExecutorService logins = Executors.newFixedThreadPool(64);
+    private final AtomicLong time = new AtomicLong(1_000_000);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+        logins.shutdownNow();
+    }
+
+    /**
+     * A link manager with every even player linked, answering once it's released
+     */
+    private static class MockLinkManager implements Function<Set<UUID>, Map<UUID, String>> {
+
+        private final List<Set<UUID>> batches = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch looking = new CountDownLatch(1);
+        private volatile CountDownLatch release = new CountDownLatch(0);
+        private volatile boolean failing = false;
+
+        @Override
+        public Map<UUID, String> apply(Set<UUID> uuids) {
+            batches.add(new HashSet<>(uuids));
+            looking.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failing) return null;
+
+            Map<UUID, String> links = new HashMap<>();
+            for (UUID uuid : uuids) {
+                if (uuid.getLeastSignificantBits() % 2 == 0) links.put(uuid, discordId(uuid));
+            }
+            return links;
+        }
+
+    }
+
+    private static String discordId(UUID uuid) {
+        return Long.toString(Math.abs(uuid.getLeastSignificantBits()));
+    }
+
+    private static UUID player(long number) {
+        return new UUID(0, number);
+    }
+
+    private LinkLookupBatcher batcher(MockLinkManager linkManager) {
+        return new LinkLookupBatcher(linkManager, executor, 3000, time::get);
+    }
+
+    @Test
+    public void batchesConcurrentLogins() throws Exception {
+        MockLinkManager linkManager = new MockLinkManager();
+        linkManager.release = new CountDownLatch(1);
+        LinkLookupBatcher batcher = batcher(linkManager);
+
+        // the first login is looked up alone, everyone logging in while that runs waits for the next batches
+        CompletableFuture<String> first = batcher.getDiscordId(player(0));
+        assertTrue(linkManager.looking.await(5, TimeUnit.SECONDS));
+
+        int players = 500;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<CompletableFuture<String>>> queued = new ArrayList<>();
+        for (int i = 1; i < players; i++) {
+            UUID uuid = player(i);
+            queued.add(logins.submit(() -> {
+                start.await();
+                return batcher.getDiscordId(uuid);
+            }));
+        }
+        start.countDown();
+        List<CompletableFuture<String>> lookups = new ArrayList<>();
+        lookups.add(first);
+        for (Future<CompletableFuture<String>> future : queued) lookups.add(future.get(5, TimeUnit.SECONDS));
+        linkManager.release.countDown();
+
+        for (int i = 0; i < players; i++) {
+            UUID uuid = player(i);
+            assertEquals(uuid.getLeastSignificantBits() % 2 == 0 ? discordId(uuid) : null, lookups.get(i).get(5, TimeUnit.SECONDS));
+        }
+
+        List<Integer> batchSizes = new ArrayList<>();
+        Set<UUID> lookedUp = new HashSet<>();
+        for (Set<UUID> batch : linkManager.batches) {
+            batchSizes.add(batch.size());
+            lookedUp.addAll(batch);
+        }
+        assertEquals(Arrays.asList(1, 128, 128, 128, 115), batchSizes);
+        assertEquals(players, lookedUp.size());
+    }
+
+    @Test
+    public void sharesLookupsOfTheSamePlayer() throws Exception {
+        MockLinkManager linkManager = new MockLinkManager();
+        linkManager.release = new CountDownLatch(1);
+        LinkLookupBatcher batcher = batcher(linkManager);
+
+        UUID uuid = player(2);
+        CompletableFuture<String> first = batcher.getDiscordId(uuid);
+        CompletableFuture<String> second = batcher.getDiscordId(uuid);
+        linkManager.release.countDown();
+        assertEquals(discordId(uuid), first.get(5, TimeUnit.SECONDS));
+        assertEquals(discordId(uuid), second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, linkManager.batches.size());
+    }
+
+    @Test
+    public void remembersUnlinkedPlayersBriefly() throws Exception {
+        MockLinkManager linkManager = new MockLinkManager();
+        LinkLookupBatcher batcher = batcher(linkManager);
+        UUID unlinked = player(1);
+        UUID linked = player(2);
+
+        assertNull(batcher.getDiscordId(unlinked).get(5, TimeUnit.SECONDS));
+        assertNull(batcher.getDiscordId(unlinked).get(5, TimeUnit.SECONDS));
+        assertEquals(1, linkManager.batches.size());
+
+        // linked players are looked up every time
+        assertEquals(discordId(linked), batcher.getDiscordId(linked).get(5, TimeUnit.SECONDS));
+        assertEquals(discordId(linked), batcher.getDiscordId(linked).get(5, TimeUnit.SECONDS));
+        assertEquals(3, linkManager.batches.size());
+
+        time.addAndGet(3000);
+        assertNull(batcher.getDiscordId(unlinked).get(5, TimeUnit.SECONDS));
+        assertEquals(4, linkManager.batches.size());
+
+        batcher.invalidate(unlinked);
+        assertNull(batcher.getDiscordId(unlinked).get(5, TimeUnit.SECONDS));
+        assertEquals(5, linkManager.batches.size());
+    }
+
+    @Test
+    public void failedLookupsAreNotRemembered() throws Exception {
+        MockLinkManager linkManager = new MockLinkManager();
+        LinkLookupBatcher batcher = batcher(linkManager);
+        UUID uuid = player(1);
+
+        linkManager.failing = true;
+        try {
+            batcher.getDiscordId(uuid).get(5, TimeUnit.SECONDS);
+            fail("lookup should have failed");
+        } catch (ExecutionException expected) {
+            // the login is denied for an unknown reason instead of as not linked
+        }
+
+        linkManager.failing = false;
+        assertNull(batcher.getDiscordId(uuid).get(5, TimeUnit.SECONDS));
+        assertEquals(2, linkManager.batches.size());
+    }
+
+    @Test
+    public void failsLookupsOnceTheExecutorIsShutDown() throws Exception {
+        MockLinkManager linkManager = new MockLinkManager();
+        LinkLookupBatcher batcher = batcher(linkManager);
+
+        executor.shutdown();
+        try {
+            batcher.getDiscordId(player(2)).get(5, TimeUnit.SECONDS);
+            fail("lookup should have failed");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(0, linkManager.batches.size());
+    }
+
+}
@@ -0,0 +1,85 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.modules.voice;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class PositionSnapshotTest {
+
+    @Test
+    public void keepsWhatWasAdded() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+        PositionSnapshot positions = new PositionSnapshot.Builder(1)
+                .add(first, "first", "world", 1.5, 64, -2.5, false)
+                .add(second, "second", "world_nether", -100, 32, 7, true)
+                .add(third, "third", "world", 3, 65, -1, false)
+                .build();
+
+        assertEquals(3, positions.size());
+        assertEquals(1, positions.indexOf(second));
+        assertEquals(-1, positions.indexOf(UUID.randomUUID()));
+        assertEquals("second", positions.getName(1));
+        assertEquals("world_nether", positions.getWorldName(1));
+        assertEquals(-100, positions.getX(1), 0);
+        assertEquals(32, positions.getY(1), 0);
+        assertEquals(7, positions.getZ(1), 0);
+        assertTrue(positions.isDead(1));
+        assertFalse(positions.isDead(2));
+        assertEquals(positions.getWorld(0), positions.getWorld(2));
+        assertNotEquals(positions.getWorld(0), positions.getWorld(1));
+    }
+
+    @Test
+    public void replacesPlayersAddedAgain() {
+        UUID uuid = UUID.randomUUID();
+        PositionSnapshot positions = new PositionSnapshot.Builder(4)
+                .add(uuid, "player", "world", 0, 0, 0, false)
+                .add(uuid, "player", "world_the_end", 10, 20, 30, false)
+                .build();
+
+        assertEquals(1, positions.size());
+        assertEquals("world_the_end", positions.getWorldName(0));
+        assertEquals(10, positions.getX(0), 0);
+    }
+
+    @Test
+    public void measuresDistancesWithinTheSameWorld() {
+        PositionSnapshot positions = new PositionSnapshot.Builder(3)
+                .add(UUID.randomUUID(), "a", "world", 0, 64, 0, false)
+                .add(UUID.randomUUID(), "b", "world", 3, 68, 4, false)
+                .add(UUID.randomUUID(), "c", "world_nether", 0, 64, 0, false)
+                .build();
+
+        assertTrue(positions.isInRange(0, 1, 5, 4));
+        assertFalse(positions.isInRange(0, 1, 4.9, 4));
+        assertFalse(positions.isInRange(0, 1, 5, 3.9));
+        assertFalse(positions.isInRange(0, 2, 100, 100));
+    }
+
+}
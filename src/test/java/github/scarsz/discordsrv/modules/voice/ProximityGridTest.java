@@ -0,0 +1,199 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.modules.voice;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ProximityGridTest {
+
+    private static final String[] WORLDS = {"world", "world_nether", "world_the_end"};
+    private static final double HORIZONTAL_STRENGTH = 80;
+    private static final double VERTICAL_STRENGTH = 40;
+    private static final double FALLOFF = 5;
+
+    @Test
+    public void findsTheSamePlayersAsCheckingEveryone() {
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            PositionSnapshot positions = randomPositions(random, 1 + random.nextInt(300), 1000);
+            double cellSize = 1 + random.nextInt(200);
+            ProximityGrid grid = new ProximityGrid(positions, cellSize);
+
+            for (int player = 0; player < positions.size(); player++) {
+                // also look further than the cells are wide
+                double horizontal = random.nextDouble() * cellSize * (random.nextInt(4) == 0 ? 3 : 1);
+                double vertical = random.nextDouble() * 100;
+                assertEquals(bruteForceNearby(positions, player, horizontal, vertical),
+                        indexes(grid.getNearby(player, horizontal, vertical)));
+            }
+        }
+    }
+
+    @Test
+    public void findsPlayersOnCellBorders() {
+        double cellSize = 10;
+        PositionSnapshot.Builder builder = new PositionSnapshot.Builder(0);
+        for (int x = -20; x <= 20; x += 5) {
+            for (int z = -20; z <= 20; z += 5) {
+                builder.add(UUID.randomUUID(), "player", "world", x, 64, z, false);
+            }
+        }
+        PositionSnapshot positions = builder.build();
+        ProximityGrid grid = new ProximityGrid(positions, cellSize);
+
+        for (int player = 0; player < positions.size(); player++) {
+            assertEquals(bruteForceNearby(positions, player, cellSize, 0), indexes(grid.getNearby(player, cellSize, 0)));
+        }
+    }
+
+    @Test
+    public void buildsTheSameNetworksAsCheckingEveryNetwork() {
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            PositionSnapshot startPositions = randomPositions(random, 2 + random.nextInt(200), 600);
+            List<Set<UUID>> expectedNetworks = new ArrayList<>();
+            Set<Network> networks = new HashSet<>();
+
+            for (int tick = 0; tick < 10; tick++) {
+                PositionSnapshot positions = tick == 0 ? startPositions : move(random, startPositions);
+                ProximityGrid grid = new ProximityGrid(positions, HORIZONTAL_STRENGTH + FALLOFF);
+                List<UUID> dirtyPlayers = new ArrayList<>();
+                for (int player = 0; player < positions.size(); player++) {
+                    if (random.nextInt(3) != 0) dirtyPlayers.add(positions.getUniqueId(player));
+                }
+
+                tickNetworks(expectedNetworks, dirtyPlayers, positions);
+                for (UUID uuid : dirtyPlayers) {
+                    VoiceModule.updateNetworks(networks, positions, grid, positions.indexOf(uuid),
+                            HORIZONTAL_STRENGTH, VERTICAL_STRENGTH, FALLOFF,
+                            p -> true, players -> new Network(players, null), message -> {});
+                }
+                assertEquals(new HashSet<>(expectedNetworks), players(networks, positions));
+            }
+        }
+    }
+
+    /**
+     * The network changes {@link VoiceModule} made in a tick before the grid, measuring the distance to the players in
+     * every network & to every player
+     */
+    private static void tickNetworks(List<Set<UUID>> networks, List<UUID> dirtyPlayers, PositionSnapshot positions) {
+        for (UUID uuid : dirtyPlayers) {
+            int player = positions.indexOf(uuid);
+
+            networks.stream()
+                    .filter(network -> network.stream().anyMatch(p -> isInRange(positions, player, positions.indexOf(p),
+                            HORIZONTAL_STRENGTH, VERTICAL_STRENGTH)))
+                    .reduce((network1, network2) -> {
+                        Set<UUID> engulfing = network1.size() > network2.size() ? network1 : network2;
+                        Set<UUID> engulfed = engulfing == network1 ? network2 : network1;
+                        engulfing.addAll(engulfed);
+                        engulfed.clear();
+                        return engulfing;
+                    })
+                    .ifPresent(network -> network.add(uuid));
+
+            networks.stream()
+                    .filter(network -> network.contains(uuid))
+                    .filter(network -> network.stream().noneMatch(p -> isInRange(positions, player, positions.indexOf(p),
+                            HORIZONTAL_STRENGTH + FALLOFF, VERTICAL_STRENGTH + FALLOFF)))
+                    .forEach(network -> {
+                        network.remove(uuid);
+                        if (network.size() == 1) network.clear();
+                    });
+
+            Set<UUID> playersWithinRange = new TreeSet<>();
+            for (int other = 0; other < positions.size(); other++) {
+                UUID otherUuid = positions.getUniqueId(other);
+                if (positions.isDead(other) || networks.stream().anyMatch(network -> network.contains(otherUuid))) continue;
+                if (isInRange(positions, player, other, HORIZONTAL_STRENGTH, VERTICAL_STRENGTH)) playersWithinRange.add(otherUuid);
+            }
+            if (!playersWithinRange.isEmpty()) {
+                playersWithinRange.add(uuid);
+                networks.add(playersWithinRange);
+            }
+        }
+        networks.removeIf(Set::isEmpty);
+    }
+
+    private static Set<Set<UUID>> players(Set<Network> networks, PositionSnapshot positions) {
+        Set<Set<UUID>> players = new HashSet<>();
+        for (Network network : networks) {
+            Set<UUID> networkPlayers = new TreeSet<>();
+            for (int player = 0; player < positions.size(); player++) {
+                if (network.contains(positions.getUniqueId(player))) networkPlayers.add(positions.getUniqueId(player));
+            }
+            if (!networkPlayers.isEmpty()) players.add(networkPlayers);
+        }
+        return players;
+    }
+
+    private static boolean isInRange(PositionSnapshot positions, int player, int other, double horizontal, double vertical) {
+        if (other == player || !positions.getWorldName(other).equals(positions.getWorldName(player))) return false;
+        double dx = positions.getX(other) - positions.getX(player);
+        double dy = positions.getY(other) - positions.getY(player);
+        double dz = positions.getZ(other) - positions.getZ(player);
+        return Math.sqrt(dx * dx + dz * dz) <= horizontal && Math.abs(dy) <= vertical;
+    }
+
+    private static Set<Integer> bruteForceNearby(PositionSnapshot positions, int around, double horizontal, double vertical) {
+        Set<Integer> nearby = new TreeSet<>();
+        for (int other = 0; other < positions.size(); other++) {
+            if (isInRange(positions, around, other, horizontal, vertical)) nearby.add(other);
+        }
+        return nearby;
+    }
+
+    private static Set<Integer> indexes(int[] players) {
+        Set<Integer> indexes = new TreeSet<>();
+        for (int player : players) indexes.add(player);
+        assertEquals("players found more than once", players.length, indexes.size());
+        return indexes;
+    }
+
+    private static PositionSnapshot randomPositions(Random random, int count, double spread) {
+        PositionSnapshot.Builder builder = new PositionSnapshot.Builder(count);
+        for (int i = 0; i < count; i++) {
+            builder.add(new UUID(random.nextLong(), random.nextLong()), "player" + i,
+                    WORLDS[random.nextInt(WORLDS.length)],
+                    (random.nextDouble() - 0.5) * spread, random.nextDouble() * 256, (random.nextDouble() - 0.5) * spread,
+                    random.nextInt(20) == 0);
+        }
+        return builder.build();
+    }
+
+    private static PositionSnapshot move(Random random, PositionSnapshot positions) {
+        PositionSnapshot.Builder builder = new PositionSnapshot.Builder(positions.size());
+        for (int i = 0; i < positions.size(); i++) {
+            builder.add(positions.getUniqueId(i), positions.getName(i), positions.getWorldName(i),
+                    positions.getX(i) + random.nextGaussian() * 30, positions.getY(i) + random.nextGaussian() * 5,
+                    positions.getZ(i) + random.nextGaussian() * 30, random.nextInt(20) == 0);
+        }
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,156 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ConsoleMessageQueueTest {
+
+    private static final int PRODUCERS = 16;
+    private static final int LINES_PER_PRODUCER = 50000;
+
+    @Test
+    public void dropNewestAccountsForEveryLine() throws InterruptedException {
+        ConsoleMessageQueue queue = new ConsoleMessageQueue(1024, ConsoleMessageQueue.OverflowPolicy.DROP_NEWEST);
+        long consumed = stress(queue, false);
+        assertEquals((long) PRODUCERS * LINES_PER_PRODUCER, consumed + queue.getDroppedCount());
+        assertEquals(consumed, queue.getEnqueuedCount());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void dropOldestAccountsForEveryLine() throws InterruptedException {
+        ConsoleMessageQueue queue = new ConsoleMessageQueue(1024, ConsoleMessageQueue.OverflowPolicy.DROP_OLDEST);
+        long consumed = stress(queue, false);
+        assertEquals((long) PRODUCERS * LINES_PER_PRODUCER, consumed + queue.getDroppedCount());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void coalesceCountsRepeatedLines() throws InterruptedException {
+        // small enough to be full most of the time
+        ConsoleMessageQueue queue = new ConsoleMessageQueue(16, ConsoleMessageQueue.OverflowPolicy.COALESCE);
+        long consumed = stress(queue, true);
+        assertEquals((long) PRODUCERS * LINES_PER_PRODUCER, consumed + queue.getDroppedCount());
+        assertTrue(queue.getCoalescedCount() > 0);
+    }
+
+    @Test
+    public void coalescesDuplicatesOnlyWhenFull() {
+        ConsoleMessageQueue queue = new ConsoleMessageQueue(2, ConsoleMessageQueue.OverflowPolicy.COALESCE);
+        queue.offer(new ConsoleLine(0, "INFO", "a", 1));
+        queue.offer(new ConsoleLine(1, "INFO", "b", 1));
+        assertTrue(queue.offer(new ConsoleLine(2, "INFO", "b", 1)));
+        assertFalse(queue.offer(new ConsoleLine(3, "WARN", "b", 1)));
+
+        assertEquals("a", queue.poll().getMessage());
+        ConsoleLine repeated = queue.poll();
+        assertEquals("b", repeated.getMessage());
+        assertEquals(2, repeated.getRepeats());
+        assertNull(queue.poll());
+        assertEquals(1, queue.getCoalescedCount());
+        assertEquals(1, queue.getDroppedCount());
+    }
+
+    @Test
+    public void queuesDuplicatesWhileThereIsRoom() {
+        ConsoleMessageQueue queue = new ConsoleMessageQueue(4, ConsoleMessageQueue.OverflowPolicy.COALESCE);
+        queue.offer(new ConsoleLine(0, "INFO", "b", 1));
+        queue.offer(new ConsoleLine(1, "INFO", "b", 1));
+
+        assertEquals(1, queue.poll().getRepeats());
+        assertEquals(1, queue.poll().getRepeats());
+        assertNull(queue.poll());
+        assertEquals(0, queue.getCoalescedCount());
+    }
+
+    /**
+     * Offer lines from many threads at once while a single consumer drains the queue, checking that lines of the
+     * same producer are never reordered
+     * @return the amount of lines consumed, counting coalesced repeats
+     */
+    private long stress(ConsoleMessageQueue queue, boolean repeatLines) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            String producer = String.valueOf(p);
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < LINES_PER_PRODUCER; i++) {
+                    String line = repeatLines ? producer + " repeated" : producer + " " + i;
+                    queue.offer(new ConsoleLine(0, "INFO", line, 1));
+                }
+            });
+            producers.add(thread);
+            thread.start();
+        }
+
+        AtomicBoolean producing = new AtomicBoolean(true);
+        long[] consumed = new long[1];
+        AtomicBoolean ordered = new AtomicBoolean(true);
+        Thread consumer = new Thread(() -> {
+            int[] lastSeen = new int[PRODUCERS];
+            Arrays.fill(lastSeen, -1);
+            while (true) {
+                ConsoleLine line = queue.poll();
+                if (line == null) {
+                    if (!producing.get() && queue.isEmpty()) return;
+                    Thread.yield();
+                    continue;
+                }
+
+                if (repeatLines) {
+                    consumed[0] += line.getRepeats();
+                } else {
+                    String[] parts = line.getMessage().split(" ");
+                    int producer = Integer.parseInt(parts[0]), index = Integer.parseInt(parts[1]);
+                    if (index <= lastSeen[producer]) ordered.set(false);
+                    lastSeen[producer] = index;
+                    consumed[0]++;
+                }
+            }
+        });
+        consumer.start();
+
+        start.countDown();
+        for (Thread producer : producers) producer.join();
+        producing.set(false);
+        consumer.join();
+
+        assertTrue("lines of a producer were reordered", ordered.get());
+        return consumed[0];
+    }
+
+}
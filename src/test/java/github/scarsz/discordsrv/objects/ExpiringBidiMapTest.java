@@ -0,0 +1,114 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class ExpiringBidiMapTest {
+
+    private final AtomicLong time = new AtomicLong(1_000_000);
+    private final ExpiringBidiMap<String, String> map = new ExpiringBidiMap<>(TimeUnit.SECONDS.toMillis(10), true, time::get);
+
+    private void advance(long millis) {
+        time.addAndGet(millis);
+        map.expireEntries();
+    }
+
+    @Test
+    public void entriesExpireAfterTheDelay() {
+        map.put("a", "1");
+        advance(9000);
+        assertEquals("1", map.get("a"));
+        assertEquals("a", map.getKey("1"));
+
+        advance(2000);
+        assertFalse(map.containsKey("a"));
+        assertFalse(map.containsValue("1"));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void keepsBothDirectionsConsistent() {
+        map.put("a", "1");
+        map.put("b", "1"); // takes the value from a
+        assertNull(map.get("a"));
+        assertEquals("b", map.getKey("1"));
+
+        map.put("b", "2");
+        assertFalse(map.containsValue("1"));
+        assertEquals("b", map.removeValue("2"));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void nullValuesAreCached() {
+        map.put("a", null);
+        assertTrue(map.containsKey("a"));
+        assertTrue(map.containsValue(null));
+        assertNull(map.get("a"));
+    }
+
+    @Test
+    public void expiryTimeCanBeMovedEitherWay() {
+        map.put("a", "1");
+        map.put("b", "2");
+        long now = time.get();
+
+        assertTrue(map.setExpiryTime("a", now + TimeUnit.MINUTES.toMillis(5)));
+        assertTrue(map.setExpiryTime("b", now + 500));
+        advance(2000);
+        assertFalse(map.containsKey("b"));
+        advance(TimeUnit.MINUTES.toMillis(4));
+        assertEquals(now + TimeUnit.MINUTES.toMillis(5), map.getExpiryTime("a"));
+        advance(TimeUnit.MINUTES.toMillis(1));
+        assertFalse(map.containsKey("a"));
+
+        // no longer there, nothing to throw over
+        assertEquals(-1, map.getExpiryTime("a"));
+        assertFalse(map.setExpiryTime("a", now));
+    }
+
+    @Test
+    public void notExpiringEntriesStay() {
+        map.putNotExpiring("a", "1");
+        advance(TimeUnit.DAYS.toMillis(1));
+        assertEquals("1", map.get("a"));
+        assertEquals(Long.MAX_VALUE, map.getExpiryTime("a"));
+    }
+
+    @Test
+    public void unindexedValuesDontHaveToBeUnique() {
+        ExpiringBidiMap<String, String> plain = new ExpiringBidiMap<>(1000, false, time::get);
+        plain.put("a", "1");
+        plain.put("b", "1");
+        assertEquals("1", plain.get("a"));
+        assertEquals("1", plain.get("b"));
+        assertEquals(2, plain.size());
+    }
+
+}
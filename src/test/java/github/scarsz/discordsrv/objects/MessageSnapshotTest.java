@@ -0,0 +1,138 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects;
+
+import github.scarsz.configuralize.DynamicConfig;
+import github.scarsz.configuralize.Language;
+import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.util.LangUtil;
+import github.scarsz.discordsrv.util.MessageFormatResolver;
+import github.scarsz.discordsrv.util.MessageUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class MessageSnapshotTest {
+
+    private static final String JOIN_MESSAGE = "MinecraftPlayerJoinMessage";
+
+    @Rule public final TemporaryFolder folder = new TemporaryFolder();
+    private DynamicConfig config;
+
+    @Before
+    public void loadConfig() throws Exception {
+        config = new DynamicConfig();
+        for (String source : new String[] {"config", "messages", "voice", "linking", "synchronization", "alerts"}) {
+            config.addSource(DiscordSRV.class, source, new File(folder.getRoot(), source + ".yml"));
+        }
+        config.setLanguage(Language.EN);
+        config.saveAllDefaults();
+        config.loadAll();
+        MessageSnapshot.invalidate();
+    }
+
+    @After
+    public void invalidate() {
+        MessageSnapshot.invalidate();
+    }
+
+    @Test
+    public void keepsTheSnapshotUntilInvalidated() {
+        MessageSnapshot snapshot = MessageSnapshot.get(() -> config);
+        assertSame(snapshot, MessageSnapshot.get(() -> config));
+
+        MessageSnapshot.invalidate();
+        assertNotSame(snapshot, MessageSnapshot.get(() -> config));
+    }
+
+    @Test
+    public void doesNotKeepASnapshotInvalidatedWhileItWasMade() {
+        MessageSnapshot stale = MessageSnapshot.get(() -> {
+            // the config being reloaded while the snapshot reads it
+            MessageSnapshot.invalidate();
+            return config;
+        });
+
+        MessageSnapshot snapshot = MessageSnapshot.get(() -> config);
+        assertNotSame(stale, snapshot);
+        assertSame(snapshot, MessageSnapshot.get(() -> config));
+    }
+
+    @Test
+    public void matchesTheConfig() {
+        MessageSnapshot snapshot = MessageSnapshot.get(() -> config);
+        for (LangUtil.Message message : LangUtil.Message.values()) {
+            String raw = config.getString(message.getKeyName());
+            assertEquals(raw, snapshot.getMessage(message, false));
+            assertEquals(MessageUtil.translateLegacy(raw), snapshot.getMessage(message, true));
+        }
+
+        MessageFormat expected = MessageFormatResolver.getMessageFromConfiguration(config, JOIN_MESSAGE);
+        MessageFormat actual = snapshot.getMessageFormat(JOIN_MESSAGE);
+        assertNotNull(actual);
+        assertEquals(expected.getContent(), actual.getContent());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getAuthorName(), actual.getAuthorName());
+        assertEquals(expected.getColor(), actual.getColor());
+    }
+
+    /**
+     * Not a test, times reading the join message format & a message from the config (like before the snapshot) against
+     * reading them from the snapshot. Run it by hand (add @Test) to compare them.
+     */
+    //@Test
+    public void benchmarkJoinMessage() {
+        MessageSnapshot snapshot = MessageSnapshot.get(() -> config);
+        LangUtil.Message message = LangUtil.Message.CHAT_TO_DISCORD;
+        int iterations = 100_000;
+
+        for (int round = 0; round < 5; round++) {
+            long started = System.nanoTime();
+            int sink = 0;
+            for (int i = 0; i < iterations; i++) {
+                MessageFormat messageFormat = MessageFormatResolver.getMessageFromConfiguration(config, JOIN_MESSAGE);
+                String format = config.getString(message.getKeyName());
+                sink += (messageFormat != null ? 1 : 0) + format.length();
+            }
+            long configNanos = System.nanoTime() - started;
+
+            started = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                MessageFormat messageFormat = snapshot.getMessageFormat(JOIN_MESSAGE);
+                String format = snapshot.getMessage(message, message.isTranslateColors());
+                sink += (messageFormat != null ? 1 : 0) + format.length();
+            }
+            long snapshotNanos = System.nanoTime() - started;
+
+            System.out.println("Round " + round + ": config " + (configNanos / iterations) + "ns/op, snapshot "
+                    + (snapshotNanos / iterations) + "ns/op (" + sink + ")");
+        }
+    }
+
+}
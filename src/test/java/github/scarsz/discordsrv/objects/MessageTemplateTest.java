@@ -0,0 +1,55 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MessageTemplateTest {
+
+    private final MessageTemplate.Parser parser = new MessageTemplate.Parser("name", "message");
+
+    private String render(String format) {
+        return parser.get(format).render(placeholder -> placeholder.equals("name") ? "Notch" : "%name% hi");
+    }
+
+    @Test
+    public void replacesKnownPlaceholders() {
+        assertEquals("<Notch> %name% hi", render("<%name%> %message%"));
+        assertEquals("100% Notch", render("100% %name%"));
+        assertEquals("%Notch%", render("%%name%%"));
+        assertEquals("no placeholders", render("no placeholders"));
+    }
+
+    @Test
+    public void keepsOtherPlaceholders() {
+        assertEquals("%player_ping% Notch", render("%player_ping% %name%"));
+        assertEquals("%unknownNotch", render("%unknown%name%"));
+        assertTrue(parser.get("%player_ping% %name%").hasOtherPlaceholders());
+        assertFalse(parser.get("%name%: %message%").hasOtherPlaceholders());
+    }
+
+}
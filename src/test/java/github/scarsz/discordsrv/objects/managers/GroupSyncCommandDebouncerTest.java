@@ -0,0 +1,104 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects.managers;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+public class GroupSyncCommandDebouncerTest {
+
+    private static final long WINDOW_MILLIS = 100;
+    private static final long MAX_DELAY_MILLIS = 500;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final List<String> resyncs = Collections.synchronizedList(new ArrayList<>());
+    private final GroupSyncCommandDebouncer debouncer =
+            new GroupSyncCommandDebouncer(WINDOW_MILLIS, MAX_DELAY_MILLIS, executor, resyncs::add);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (debouncer.getPendingCount() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertEquals(0, debouncer.getPendingCount());
+    }
+
+    @Test
+    public void collapsesABurstIntoOneResync() throws InterruptedException {
+        for (int i = 0; i < 200; i++) debouncer.submit(i % 2 == 0 ? "Notch" : "notch");
+        assertTrue(resyncs.isEmpty());
+
+        awaitIdle();
+        assertEquals(1, resyncs.size());
+        assertEquals("notch", resyncs.get(0).toLowerCase(Locale.ROOT));
+    }
+
+    @Test
+    public void resyncsEveryPlayerOnce() throws InterruptedException {
+        for (int round = 0; round < 10; round++) {
+            for (int player = 0; player < 50; player++) debouncer.submit("player" + player);
+        }
+
+        awaitIdle();
+        assertEquals(50, resyncs.size());
+        assertEquals(50, new HashSet<>(resyncs).size());
+    }
+
+    @Test
+    public void waitsForTheWindowAfterTheLastCommand() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            debouncer.submit("Notch");
+            Thread.sleep(WINDOW_MILLIS / 2);
+        }
+        awaitIdle();
+        assertEquals(1, resyncs.size());
+        assertTrue(System.currentTimeMillis() - start >= WINDOW_MILLIS / 2 * 2 + WINDOW_MILLIS);
+
+        // a command after the resync gets its own
+        debouncer.submit("Notch");
+        awaitIdle();
+        assertEquals(2, resyncs.size());
+    }
+
+    @Test
+    public void resyncsAfterTheMaxDelayWhenCommandsKeepComing() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (resyncs.isEmpty() && System.currentTimeMillis() - start < MAX_DELAY_MILLIS * 4) {
+            debouncer.submit("Notch");
+            Thread.sleep(WINDOW_MILLIS / 5);
+        }
+        assertEquals(1, resyncs.size());
+        assertTrue(System.currentTimeMillis() - start < MAX_DELAY_MILLIS * 2);
+    }
+
+}
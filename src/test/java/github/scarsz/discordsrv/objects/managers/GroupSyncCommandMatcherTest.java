@@ -0,0 +1,86 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects.managers;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GroupSyncCommandMatcherTest {
+
+    private final GroupSyncCommandMatcher matcher = new GroupSyncCommandMatcher();
+
+    @Test
+    public void findsTheTargetOfGroupCommands() {
+        assertEquals("Notch", matcher.getTarget("/manuadd Notch admin"));
+        assertEquals("Notch", matcher.getTarget("manuaddsub Notch vip"));
+        assertEquals("Notch", matcher.getTarget("/manudel Notch"));
+        assertEquals("Notch", matcher.getTarget("/manupromote Notch"));
+        assertEquals("Notch", matcher.getTarget("/pex user Notch group add vip"));
+        assertEquals("Notch", matcher.getTarget("/pex user Notch group timed add vip 3600"));
+        assertEquals("Notch", matcher.getTarget("pex user Notch group remove vip"));
+        assertEquals("Notch", matcher.getTarget("/permissions player Notch setgroup vip"));
+        assertEquals("Notch", matcher.getTarget("/setrank Notch vip"));
+        assertEquals("Notch", matcher.getTarget("/unsetrank Notch"));
+        assertEquals("Notch", matcher.getTarget("/promote Notch"));
+        assertEquals("Notch", matcher.getTarget("/pex demote Notch"));
+    }
+
+    @Test
+    public void ignoresCaseNamespacesAndUuids() {
+        assertEquals("Notch", matcher.getTarget("/MANUADD Notch admin"));
+        assertEquals("Notch", matcher.getTarget("/groupmanager:manuadd Notch admin"));
+        assertEquals("Notch", matcher.getTarget("PermissionsEx:pex user Notch group set vip"));
+        assertEquals("069a79f4-44e9-4726-a5be-fca90e38aaf5",
+                matcher.getTarget("/manuadd 069a79f4-44e9-4726-a5be-fca90e38aaf5 admin"));
+    }
+
+    @Test
+    public void ignoresOtherCommands() {
+        assertNull(matcher.getTarget(""));
+        assertNull(matcher.getTarget("/"));
+        assertNull(matcher.getTarget("/help"));
+        assertNull(matcher.getTarget("/say manuadd Notch admin"));
+        assertNull(matcher.getTarget("/tell Notch pex user Notch group add vip"));
+        assertNull(matcher.getTarget("/promotes Notch"));
+        assertNull(matcher.getTarget("/manuadd"));
+        assertNull(matcher.getTarget("/pex reload"));
+        assertNull(matcher.getTarget("/pex user Notch add some.permission"));
+        assertNull(matcher.getTarget("/pex user Notch group list"));
+        assertNull(matcher.getTarget("/permissions player Notch set some.permission"));
+        assertNull(matcher.getTarget("/manuadd ThisNameIsWayTooLong admin"));
+        assertNull(matcher.getTarget("/lp user Notch parent add vip")); // LuckPerms is handled through its API
+    }
+
+    @Test
+    public void prefixCheckOnlyPassesPermissionCommands() {
+        assertTrue(matcher.isCandidate("/pex user Notch group add vip"));
+        assertTrue(matcher.isCandidate("/pex reload"));
+        assertTrue(matcher.isCandidate("/groupmanager:manudel Notch"));
+        assertFalse(matcher.isCandidate("/pexx user Notch group add vip"));
+        assertFalse(matcher.isCandidate("/pe user Notch group add vip"));
+        assertFalse(matcher.isCandidate("/spawn"));
+        assertFalse(matcher.isCandidate("/msg Notch manuadd Notch admin"));
+    }
+
+}
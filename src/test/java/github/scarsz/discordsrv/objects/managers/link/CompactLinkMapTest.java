@@ -0,0 +1,104 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.objects.managers.link;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CompactLinkMapTest {
+
+    @Test
+    public void matchesBidiMapUnderRandomLinksAndUnlinks() {
+        Random random = new Random(42);
+        CompactLinkMap links = new CompactLinkMap();
+        Map<String, UUID> expected = new HashMap<>();
+
+        // small id spaces so relinks & unlinks of existing entries happen constantly
+        for (int i = 0; i < 50000; i++) {
+            String discordId = String.valueOf(100000000000000000L + random.nextInt(2000));
+            UUID uuid = new UUID(random.nextInt(2000), 7);
+            switch (random.nextInt(3)) {
+                case 0:
+                    links.removeByDiscordId(discordId);
+                    expected.remove(discordId);
+                    break;
+                case 1:
+                    links.removeByUuid(uuid);
+                    expected.values().remove(uuid);
+                    break;
+                default:
+                    links.put(discordId, uuid);
+                    expected.remove(discordId);
+                    expected.values().remove(uuid);
+                    expected.put(discordId, uuid);
+            }
+        }
+
+        assertEquals(expected, links.toMap());
+        assertEquals(expected.size(), links.size());
+        for (Map.Entry<String, UUID> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), links.getUuid(entry.getKey()));
+            assertEquals(entry.getKey(), links.getDiscordId(entry.getValue()));
+        }
+    }
+
+    @Test
+    public void ignoresNonSnowflakeLookups() {
+        CompactLinkMap links = new CompactLinkMap();
+        assertNull(links.getUuid("not a snowflake"));
+        assertNull(links.removeByDiscordId(""));
+    }
+
+    @Test
+    public void journalReplaysOverSnapshot() throws Exception {
+        File directory = Files.createTempDirectory("discordsrv-links").toFile();
+        File snapshot = new File(directory, "linkedaccounts.dat");
+        File journalFile = new File(directory, "linkedaccounts.journal");
+
+        CompactLinkMap links = new CompactLinkMap();
+        UUID first = UUID.randomUUID(), second = UUID.randomUUID();
+        links.put(1L, first);
+        try (LinkJournal journal = new LinkJournal(snapshot, journalFile)) {
+            journal.compact(links);
+            links.put(2L, second);
+            journal.appendLink(2L, second);
+            links.removeByUuid(first);
+            journal.appendUnlink(1L, first);
+        }
+
+        CompactLinkMap loaded = new CompactLinkMap();
+        new LinkJournal(snapshot, journalFile).load(loaded);
+        assertEquals(links.toMap(), loaded.toMap());
+
+        snapshot.delete();
+        journalFile.delete();
+        directory.delete();
+    }
+
+}
@@ -0,0 +1,114 @@
+/*-
+ * LICENSE
+ * DiscordSRV
+ * -------------
+ * Copyright (C) 2016 - 2021 Austin "Scarsz" Shapiro
+ * -------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * END
+ */
+
+package github.scarsz.discordsrv.util;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class TimeUtilTest {
+
+    private static final String PATTERN = "EEE, d. MMM yyyy HH:mm:ss z";
+    private static final TimeZone ZONE = TimeZone.getTimeZone("America/New_York");
+
+    private static String expected(String pattern, long time) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        format.setTimeZone(ZONE);
+        return format.format(new Date(time));
+    }
+
+    private static String expected(long time) {
+        return expected(PATTERN, time);
+    }
+
+    @Test
+    public void formatsWithinTheSameSecondAlike() {
+        TimeUtil.CachedFormat format = TimeUtil.CachedFormat.of(PATTERN, ZONE);
+        long second = 1_600_000_000_000L;
+        assertEquals(expected(second), format.format(second + 10));
+        assertSame(format.format(second + 10), format.format(second + 999));
+        assertEquals(expected(second + 1000), format.format(second + 1000));
+        assertEquals(expected(second - 1000), format.format(second - 1));
+    }
+
+    @Test
+    public void fractionsOfSecondsAreNotCached() {
+        TimeUtil.CachedFormat format = TimeUtil.CachedFormat.of("HH:mm:ss.SSS", ZONE);
+        long second = 1_600_000_000_000L;
+        assertNotEquals(format.format(second + 1), format.format(second + 2));
+
+        // a quoted S is text, not milliseconds
+        TimeUtil.CachedFormat quoted = TimeUtil.CachedFormat.of("HH:mm:ss 'SS'", ZONE);
+        assertSame(quoted.format(second + 1), quoted.format(second + 2));
+    }
+
+    @Test
+    public void keepsSimpleDateFormatPatterns() {
+        // u is the day of the week for SimpleDateFormat, but the year for DateTimeFormatter
+        String pattern = "u yyyy-MM-dd";
+        TimeUtil.CachedFormat format = TimeUtil.CachedFormat.of(pattern, ZONE);
+        long time = 1_609_300_000_000L; // Tuesday the 29th of December 2020
+        assertEquals(expected(pattern, time), format.format(time));
+        assertEquals("2 2020-12-29", format.format(time));
+    }
+
+    @Test
+    public void formatsCorrectlyFromManyThreads() throws Exception {
+        TimeUtil.CachedFormat format = TimeUtil.CachedFormat.of(PATTERN, ZONE);
+        long start = 1_600_000_000_000L;
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch ready = new CountDownLatch(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                int seed = thread;
+                results.add(executor.submit(() -> {
+                    ready.countDown();
+                    ready.await();
+                    int checked = 0;
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 20_000; i++) {
+                        // a handful of seconds so threads keep replacing each other's cached second
+                        long time = start + (seed + i) % 5 * 1000 + random.nextInt(1000);
+                        String text = format.format(time);
+                        if (!expected(time).equals(text)) throw new AssertionError("Got " + text + " for " + time);
+                        checked++;
+                    }
+                    return checked;
+                }));
+            }
+            for (Future<Integer> result : results) assertEquals(20_000, (int) result.get(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}